@@ -0,0 +1,144 @@
+package drawshop.client;
+
+import drawshop.shapes.drawing.Drawing;
+import drawshop.shapes.drawing.export.StreamingPngWriter;
+import drawshop.shapes.drawing.serialization.DrawingSerializationHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cette classe permet d'exporter au format .png un grand nombre de dessins
+ * sans ouvrir l'éditeur. Les dessins peuvent être donnés un par un ou via
+ * des dossiers, dont tous les fichiers .draw sont alors exportés.
+ *
+ * <p>Les dessins sont exportés en parallèle par un nombre limité de threads
+ * (par défaut, le nombre de processeurs disponibles). Chaque dessin est écrit
+ * par un StreamingPngWriter, la mémoire utilisée par chaque thread reste donc
+ * limitée, quelle que soit la taille des dessins. Le temps d'export de chaque
+ * dessin est affiché.</p>
+ *
+ * <p>Chaque image porte le nom de son dessin. Si deux dessins devaient
+ * être exportés vers la même image, par exemple deux fichiers de même nom
+ * placés dans des dossiers différents avec l'option -o, aucun dessin n'est
+ * exporté.</p>
+ *
+ * <p>Elle ne peut être appelée qu'avec un invité de commande.</p>
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ *
+ * @see drawshop.shapes.drawing.export.StreamingPngWriter
+ */
+
+public class Render {
+
+    public static void main(String[] args) {
+
+        System.setProperty("java.awt.headless", "true");
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        File outputDirectory = null;
+        List<File> files = new ArrayList<File>();
+
+        try {
+            for(int i = 0; i < args.length; i++) {
+                if(args[i].equals("-t")) threads = Integer.parseInt(args[++i]);
+                else if(args[i].equals("-o")) outputDirectory = new File(args[++i]);
+                else addDrawings(new File(args[i]), files);
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            files.clear();
+        }
+
+        if(files.isEmpty() || threads < 1) {
+            System.out.println("usage : java Render [-t threads] [-o output_directory] drawing_file_or_directory...");
+            System.exit(1);
+        }
+
+        // les images sont nommées avant tout export, pour qu'aucun thread n'écrive dans l'image d'un autre
+        Map<File, File> outputs = new LinkedHashMap<File, File>();
+
+        for(File file : files) {
+            String name = file.getName().replaceFirst("\\.draw$", "") + ".png";
+            File output = new File(outputDirectory != null ? outputDirectory : file.getAbsoluteFile().getParentFile(), name).getAbsoluteFile();
+
+            File other = outputs.put(output, file);
+            if(other != null) {
+                System.out.println(other.getPath() + " and " + file.getPath() + " would both be rendered to " + output.getPath());
+                System.exit(1);
+            }
+        }
+
+        if(outputDirectory != null) outputDirectory.mkdirs();
+
+        final AtomicInteger failures = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        long start = System.nanoTime();
+
+        for(final Map.Entry<File, File> entry : outputs.entrySet()) {
+
+            final File file = entry.getValue();
+            final File output = entry.getKey();
+
+            pool.execute(new Runnable() {
+                public void run() {
+                    long fileStart = System.nanoTime();
+
+                    try {
+                        Drawing drawing = DrawingSerializationHandler.loadDrawing(file.getPath());
+                        new StreamingPngWriter(drawing).write(output.getPath());
+
+                        System.out.println(file.getPath() + " -> " + output.getPath()
+                                + " : " + (System.nanoTime() - fileStart)/1000000 + " ms");
+
+                    } catch (IOException | ClassNotFoundException | RuntimeException e) {
+                        failures.incrementAndGet();
+                        System.out.println(file.getPath() + " : failed (" + e + ")");
+                    }
+                }
+            });
+        }
+
+        pool.shutdown();
+
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+
+        System.out.println((files.size() - failures.get()) + "/" + files.size() + " drawings rendered with "
+                + threads + " threads in " + (System.nanoTime() - start)/1000000 + " ms");
+
+        if(failures.get() > 0) System.exit(1);
+    }
+
+    /* Ajoute à la liste le dessin entré en paramètre, ou tous les fichiers
+     * .draw qu'il contient s'il s'agit d'un dossier.
+     */
+    private static void addDrawings(File file, List<File> files) {
+
+        if(!file.isDirectory()) {
+            files.add(file);
+            return;
+        }
+
+        File[] content = file.listFiles();
+        if(content == null) return;
+
+        for(File f : content)
+            if(f.isFile() && f.getName().endsWith(".draw")) files.add(f);
+    }
+}
@@ -1,21 +1,42 @@
 package drawshop.editor;
 
 import drawshop.shapes.drawing.Drawing;
+import drawshop.shapes.drawing.DrawingListener;
+import drawshop.shapes.drawing.DrawingSnapshot;
+import drawshop.shapes.drawing.ShapeListChange;
 import drawshop.shapes.drawing.serialization.DrawingSerializationHandler;
+import drawshop.shapes.drawing.serialization.LoadListener;
+import drawshop.shapes.drawing.serialization.IndexedDrawingFile;
 import drawshop.shapes.EShape;
 import drawshop.shapes.Shape;
 import drawshop.shapes.factories.DrawingType;
 import drawshop.shapes.factories.HanddrawnFactory;
 import drawshop.shapes.factories.PerfectFactory;
 import drawshop.shapes.factories.ShapeFactory;
+import drawshop.shapes.visitors.ShapeBatchingVisitor;
 import drawshop.shapes.visitors.ShapeDrawingVisitor;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Cette classe permet d'instancier un JPanel constituant la partie principale
@@ -32,8 +53,33 @@ import java.util.List;
  *     <li>La dernière forme dessinée</li>
  *     <li>La couleur actuelle (autrement dit la couleur à utiliser lors de la
  *     génération d'une forme)</li>
+ *     <li>L'historique des modifications du dessin</li>
  * </ul>
  *
+ * <p>Le dessin est conservé dans une image tampon : l'affichage du panel se
+ * limite alors à copier cette image. Les formes ajoutées au dessin sont
+ * dessinées directement sur l'image tampon, tandis que les autres modifications
+ * entrainent la reconstruction de l'image en arrière plan. Cette reconstruction
+ * utilise les lots de formes de même couleur d'un ShapeBatchingVisitor, qui sont
+ * conservés tant que le dessin n'est modifié que par l'ajout de formes.</p>
+ *
+ * <p>L'éditeur est un DrawingListener de son dessin : l'image tampon et la
+ * fenêtre sont mises à jour une seule fois par modification ou par lot de
+ * modifications du dessin (voir {@link #beginBatch()}), chaque modification
+ * de l'historique formant un lot.</p>
+ *
+ * <p>Le dessin peut être agrandi ou réduit avec la molette de la souris et
+ * déplacé en le faisant glisser avec le bouton droit ou le bouton du milieu.
+ * Hors de l'échelle 1:1, l'image tampon n'est pas utilisée : seules les formes
+ * visibles sont dessinées, et en zoom arrière les formes plus petites qu'un
+ * pixel sont ignorées et les courbes sont simplifiées, afin que le temps
+ * d'affichage ne dépende pas de la taille du dessin.</p>
+ *
+ * <p>Les dessins sont chargés en arrière plan (voir {@link #loadDrawing(String)}) :
+ * les formes d'un fichier indexé sont affichées et peuvent être modifiées au
+ * fur et à mesure de leur lecture, tandis que l'ancien dessin reste affiché
+ * mais ne peut plus être modifié pendant la lecture d'un autre fichier.</p>
+ *
  * @author Evan Lajusticia
  * @author Pauline Rugliano
  *
@@ -43,6 +89,21 @@ import java.util.List;
  */
 public class DrawingEditor extends JPanel {
 
+    private static final double MIN_ZOOM = 1.0/64;
+    private static final double MAX_ZOOM = 32;
+    private static final double ZOOM_STEP = 1.25;
+
+    private static final int LOAD_CHUNK_SIZE = 2048; // nombre de formes lues avant de les ajouter au dessin
+
+    // les dessins sont enregistrés en arrière plan, l'un après l'autre (voir awaitSaves())
+    private static final ExecutorService SAVER = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "drawing-saver");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
     private Drawing drawing;
     private String fileName;
 
@@ -51,8 +112,36 @@ public class DrawingEditor extends JPanel {
 
     private Color color;
 
+    private final EditHistory history;
+
     private int[] selectionCoords; // x0, y0, x1, y1
 
+    private BufferedImage canvas;
+    private ShapeBatchingVisitor batches;
+    private boolean canvasValid;
+    private SwingWorker<BufferedImage, Void> canvasBuilder;
+    private boolean canvasRebuildPending;
+
+    private SwingWorker<Drawing, List<Shape>> loader; // null si aucun dessin n'est en cours de chargement
+
+    // les fichiers en cours de lecture, y compris par un chargement annulé qui n'est pas encore arrêté
+    private final List<Path> reading = Collections.synchronizedList(new ArrayList<Path>());
+
+    private double zoom;
+    private double offsetX, offsetY; // position du dessin sur le panel
+    private Point panStart;
+
+    // met à jour l'image tampon et rafraichit la zone modifiée du dessin
+    private final DrawingListener repainter = new DrawingListener() {
+        public void drawingChanged(Drawing drawing, Rectangle2D area, List<Shape> appended, List<ShapeListChange> changes) {
+            if(appended == null) rebuildCanvas();
+            else for(Shape s : appended) drawOnCanvas(s);
+
+            if(area == null) repaint();
+            else repaintArea(area);
+        }
+    };
+
     /**
      * Ce constructeur sert à initialiser un DrawingEditor pour un nouveau
      * dessin qui n'a pas de fichier associé.
@@ -85,14 +174,21 @@ public class DrawingEditor extends JPanel {
         this.drawing = drawing;
         this.fileName = fileName;
         this.mode = EShape.RECTANGLE;
+        this.zoom = 1;
+        this.history = new EditHistory();
         selectionCoords = new int[4];
 
         setPreferredSize(new Dimension(drawing.getWidth(), drawing.getHeight()));
-        setMinimumSize(new Dimension(drawing.getWidth(), drawing.getHeight()));
+        setMinimumSize(new Dimension(1, 1));
 
         initSelection();
+        initViewport();
+
+        setBackground(new Color(235,235,235));
 
-        setBackground(new Color(255,255,255));
+        drawing.setSpatialIndex(true);
+        drawing.addDrawingListener(repainter);
+        rebuildCanvas();
     }
 
     /* Ajoute la gestion d'évenement de la souris.
@@ -104,13 +200,17 @@ public class DrawingEditor extends JPanel {
         this.addMouseListener(new MouseAdapter() {
 
             public void mousePressed(MouseEvent e) {
-                selectionCoords[0] = e.getX();
-                selectionCoords[1] = e.getY();
+                if(!SwingUtilities.isLeftMouseButton(e)) return;
+
+                selectionCoords[0] = toDrawingX(e.getX());
+                selectionCoords[1] = toDrawingY(e.getY());
             }
 
             public void mouseReleased(MouseEvent e) {
-                selectionCoords[2] = e.getX();
-                selectionCoords[3] = e.getY();
+                if(!SwingUtilities.isLeftMouseButton(e)) return;
+
+                selectionCoords[2] = toDrawingX(e.getX());
+                selectionCoords[3] = toDrawingY(e.getY());
 
                 drawShape();
             }
@@ -118,10 +218,126 @@ public class DrawingEditor extends JPanel {
 
     }
 
+    /* Ajoute la gestion du zoom avec la molette de la souris, du déplacement
+     * du dessin avec les boutons droit et du milieu, et recentre le dessin
+     * lorsque le panel est redimensionné.
+     */
+    private void initViewport() {
+
+        MouseAdapter viewportListener = new MouseAdapter() {
+
+            public void mousePressed(MouseEvent e) {
+                if(!SwingUtilities.isLeftMouseButton(e)) panStart = e.getPoint();
+            }
+
+            public void mouseDragged(MouseEvent e) {
+                if(panStart == null) return;
+
+                offsetX += e.getX() - panStart.x;
+                offsetY += e.getY() - panStart.y;
+                panStart = e.getPoint();
+
+                updateViewport();
+            }
+
+            public void mouseReleased(MouseEvent e) {
+                panStart = null;
+            }
+
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                zoomAt(zoom*Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()), e.getX(), e.getY());
+            }
+        };
+
+        addMouseListener(viewportListener);
+        addMouseMotionListener(viewportListener);
+        addMouseWheelListener(viewportListener);
+
+        addComponentListener(new ComponentAdapter() {
+            public void componentResized(ComponentEvent e) { updateViewport(); }
+        });
+    }
+
+    /**
+     *
+     * @return le facteur d'agrandissement actuel du dessin
+     */
+    public double getZoom() { return zoom; }
+
+    /**
+     * Remplace le facteur d'agrandissement du dessin en conservant le centre
+     * de la zone affichée.
+     *
+     * @param zoom le nouveau facteur d'agrandissement, 1 pour afficher le
+     *             dessin à sa taille réelle
+     */
+    public void setZoom(double zoom) {
+        zoomAt(zoom, getWidth()/2.0, getHeight()/2.0);
+    }
+
+    /**
+     * Agrandit le dessin d'un cran.
+     */
+    public void zoomIn() { setZoom(zoom*ZOOM_STEP); }
+
+    /**
+     * Réduit le dessin d'un cran.
+     */
+    public void zoomOut() { setZoom(zoom/ZOOM_STEP); }
+
+    /**
+     * Choisit le facteur d'agrandissement permettant d'afficher le dessin
+     * entier dans le panel.
+     */
+    public void zoomToFit() {
+        if(getWidth() == 0 || getHeight() == 0) return;
+
+        setZoom(Math.min((double) getWidth()/drawing.getWidth(), (double) getHeight()/drawing.getHeight()));
+    }
+
+    /* Change le facteur d'agrandissement en gardant immobile le point du
+     * dessin se trouvant sous le point (x, y) du panel.
+     */
+    private void zoomAt(double newZoom, double x, double y) {
+        newZoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, newZoom));
+
+        offsetX = x - (x - offsetX)/zoom*newZoom;
+        offsetY = y - (y - offsetY)/zoom*newZoom;
+        zoom = newZoom;
+
+        updateViewport();
+    }
+
+    /* Replace le dessin dans le panel après un changement de taille, de zoom
+     * ou de position : un dessin plus petit que le panel est centré, un dessin
+     * plus grand ne peut pas être déplacé au delà de ses bords. La position est
+     * arrondie au pixel afin que l'image tampon soit copiée telle quelle.
+     */
+    private void updateViewport() {
+        offsetX = Math.round(clampOffset(offsetX, drawing.getWidth()*zoom, getWidth()));
+        offsetY = Math.round(clampOffset(offsetY, drawing.getHeight()*zoom, getHeight()));
+
+        repaint();
+    }
+
+    private static double clampOffset(double offset, double size, double viewSize) {
+        if(size <= viewSize) return (viewSize - size)/2;
+
+        return Math.max(viewSize - size, Math.min(0, offset));
+    }
+
+    private int toDrawingX(int x) { return (int) Math.floor((x - offsetX)/zoom); }
+
+    private int toDrawingY(int y) { return (int) Math.floor((y - offsetY)/zoom); }
+
     /**
      * Méthode héritée de JPanel.
      * S'assure de dessiner les formes du dessin en cours d'édition sur le
-     * panel de l'éditeur.
+     * panel de l'éditeur. Si le dessin est affiché à l'échelle 1:1 et que
+     * l'image tampon est à jour elle est simplement copiée, sinon seules les
+     * formes touchant la zone à rafraichir sont dessinées, grâce à l'index
+     * spatial du dessin. En zoom arrière, les formes plus petites qu'un pixel
+     * sont ignorées.
      *
      * @param g
      */
@@ -129,11 +345,116 @@ public class DrawingEditor extends JPanel {
 
         super.paintComponent(g);
 
-        Graphics2D graphics = (Graphics2D) g;
-        drawing.acceptVisitor(new ShapeDrawingVisitor(graphics));
+        Graphics2D graphics = (Graphics2D) g.create();
+
+        graphics.translate(offsetX, offsetY);
+        graphics.scale(zoom, zoom);
+
+        Rectangle page = new Rectangle(0, 0, drawing.getWidth(), drawing.getHeight());
+        graphics.clip(page);
+        graphics.setColor(Color.WHITE);
+        graphics.fill(page);
+
+        if(canvasValid && zoom == 1) graphics.drawImage(canvas, 0, 0, null);
+        else {
+            double pixelSize = zoom < 1 ? 1/zoom : 0;
+
+            Rectangle2D area = graphics.getClip().getBounds2D();
+            double margin = Math.max(1, pixelSize);
+            area.setRect(area.getX() - margin, area.getY() - margin,
+                    area.getWidth() + 2*margin, area.getHeight() + 2*margin);
+
+            drawing.acceptVisitor(new ShapeDrawingVisitor(graphics, pixelSize), area,
+                    pixelSize*ShapeDrawingVisitor.MIN_PROJECTED_SIZE);
+        }
+
         graphics.dispose();
     }
 
+    /* Dessine la forme entrée en paramètre par dessus l'image tampon et
+     * l'ajoute aux lots de formes. Si l'image tampon est en cours de
+     * reconstruction, une nouvelle reconstruction est demandée afin de ne
+     * pas oublier la forme.
+     */
+    private void drawOnCanvas(Shape s) {
+
+        if(!canvasValid) {
+            rebuildCanvas();
+            return;
+        }
+
+        Graphics2D g = canvas.createGraphics();
+        s.acceptVisitor(new ShapeDrawingVisitor(g));
+        g.dispose();
+
+        if(batches != null) s.acceptVisitor(batches);
+    }
+
+    /* Invalide l'image tampon et la reconstruit en arrière plan. Les lots de
+     * formes sont préparés puis dessinés en arrière plan, à partir d'un
+     * instantané du dessin. Si une reconstruction est déjà en cours, une nouvelle
+     * reconstruction sera lancée dès qu'elle sera terminée.
+     *
+     * Si l'image tampon risque de ne pas tenir en mémoire, elle n'est pas
+     * construite et le dessin est toujours affiché forme par forme.
+     */
+    private void rebuildCanvas() {
+
+        canvasValid = false;
+        batches = null;
+        canvas = null;
+
+        if(4L*drawing.getWidth()*drawing.getHeight() > Runtime.getRuntime().maxMemory()/4) return;
+
+        if(canvasBuilder != null) {
+            canvasRebuildPending = true;
+            return;
+        }
+
+        final ShapeBatchingVisitor shapes = new ShapeBatchingVisitor();
+        final DrawingSnapshot snapshot = drawing.snapshot();
+
+        final int width = drawing.getWidth();
+        final int height = drawing.getHeight();
+
+        canvasBuilder = new SwingWorker<BufferedImage, Void>() {
+
+            protected BufferedImage doInBackground() {
+                snapshot.acceptVisitor(shapes);
+
+                BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+                Graphics2D g = image.createGraphics();
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, width, height);
+
+                shapes.draw(g);
+
+                g.dispose();
+                return image;
+            }
+
+            protected void done() {
+                canvasBuilder = null;
+
+                if(canvasRebuildPending) {
+                    canvasRebuildPending = false;
+                    rebuildCanvas();
+                    return;
+                }
+
+                try {
+                    canvas = get();
+                    batches = shapes;
+                    canvasValid = true;
+                    repaint();
+                } catch (InterruptedException | ExecutionException e) { e.printStackTrace(); }
+            }
+        };
+
+        canvasBuilder.execute();
+    }
+
     /**
      *  Cette méthode permet d'appeler la méthode de sauvegarde de dessin 
      *  présente dans la classe DrawingSerializationHandler avec les bon paramètres.
@@ -143,18 +464,65 @@ public class DrawingEditor extends JPanel {
      *  <p>En plus de cela, le nom du fichier sera sauvegardé afin de pouvoir sauvegarder
      *  le dessin sans avoir à redemander à l'utilisateur le nom du fichier.</p>
      *
+     *  <p>Le dessin est enregistré en arrière plan à partir d'un instantané :
+     *  il peut continuer d'être modifié pendant l'enregistrement. Le nom du
+     *  fichier n'est conservé qu'une fois l'enregistrement réussi, et un
+     *  échec est signalé à l'utilisateur. Un fichier en cours de chargement
+     *  ne peut pas être remplacé avant la fin de sa lecture.</p>
+     *
      * @param fileName le chemin du fichier dans lequel enregistrer le dessin en cours d'édition.
-     *                 
+     * @return le SwingWorker effectuant l'enregistrement, ou null si le dessin
+     * ne peut pas être enregistré
+     *
      * @see DrawingSerializationHandler#saveDrawing(Drawing drawing, String fileName)
      */
-    public void saveDrawingAs(String fileName) {
-        if (this.drawing == null) return;
-        if (fileName == null || fileName.equals("")) return;
+    public SwingWorker<Void, Void> saveDrawingAs(final String fileName) {
+        if (this.drawing == null) return null;
+        if (fileName == null || fileName.equals("")) return null;
+
+        if (reading.contains(pathOf(fileName))) {
+            JOptionPane.showMessageDialog(this, fileName + " is still being loaded and cannot be overwritten yet.",
+                    "Save", JOptionPane.WARNING_MESSAGE);
+            return null;
+        }
+
+        final Drawing source = this.drawing;
+        final DrawingSnapshot snapshot = source.snapshot();
+
+        SwingWorker<Void, Void> saver = new SwingWorker<Void, Void>() {
+
+            protected Void doInBackground() throws IOException {
+                DrawingSerializationHandler.saveDrawing(snapshot.toDrawing(), fileName);
+                return null;
+            }
+
+            protected void done() {
+                try {
+                    get();
+                    if(drawing == source) DrawingEditor.this.fileName = fileName;
+                } catch (InterruptedException e) { e.printStackTrace(); }
+                catch (ExecutionException e) {
+                    JOptionPane.showMessageDialog(DrawingEditor.this, "The drawing could not be saved to " + fileName
+                            + ":\n" + e.getCause().getMessage(), "Save", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+
+        SAVER.execute(saver);
+        return saver;
+    }
+
+    /**
+     * Attend la fin des enregistrements en cours et refuse les suivants.
+     * Cette méthode est appelée avant de quitter l'application, afin de ne
+     * pas interrompre l'écriture d'un fichier.
+     */
+    public static void awaitSaves() {
+        SAVER.shutdown();
 
         try {
-            DrawingSerializationHandler.saveDrawing(this.drawing, fileName);
-            this.fileName = fileName;
-        } catch (IOException e) { e.printStackTrace(); }
+            SAVER.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+        } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
     }
 
     /**
@@ -177,26 +545,176 @@ public class DrawingEditor extends JPanel {
      *  remplace l'ancien dessin de l'éditeur et l'éditeur prend la taille du
      *  nouveau dessin.
      *
+     *  <p>Le chargement a lieu en arrière plan. Lorsque le fichier a un index
+     *  (voir {@link IndexedDrawingFile}), un dessin vide remplace immédiatement
+     *  l'ancien, puis ses formes y sont ajoutées par morceaux dans leur ordre
+     *  d'affichage : le dessin peut être affiché et modifié pendant le
+     *  chargement, les formes lues ensuite étant placées au dessus de celles
+     *  dessinées entre temps. Sinon l'ancien dessin n'est remplacé qu'une fois
+     *  le fichier entièrement lu, et son historique est en lecture seule
+     *  jusque là afin qu'aucune modification ne soit perdue au remplacement.</p>
+     *
+     *  <p>Le nom du fichier n'est conservé qu'une fois le chargement terminé,
+     *  afin qu'un dessin incomplet ne puisse pas le remplacer ; l'ancien dessin
+     *  garde le sien tant qu'il n'est pas remplacé. Le chargement peut être
+     *  annulé avec {@link #cancelLoading()} : les formes déjà lues d'un
+     *  fichier indexé restent dans le dessin, et l'ancien dessin d'un fichier
+     *  sans index redevient modifiable. Un fichier qui ne peut pas être lu est
+     *  signalé à l'utilisateur.</p>
+     *
      * @param fileName le nom du fichier depuis lequel charger un nouveau dessin.
+     * @return le SwingWorker effectuant le chargement, dont la progression
+     * est celle de la lecture du fichier, ou null si le fichier ne peut pas être ouvert
+     */
+    public SwingWorker<Drawing, List<Shape>> loadDrawing(final String fileName) {
+
+        cancelLoading();
+
+        final IndexedDrawingFile file;
+
+        try {
+            file = IndexedDrawingFile.open(fileName);
+        } catch (IOException e) {
+            showLoadError(fileName, e);
+            return null;
+        }
+
+        // l'ouverture ne lit que l'en-tête et l'index, le dessin vide peut être affiché tout de suite
+        final Drawing target = file == null ? null : new Drawing(file.getWidth(), file.getHeight(), file.getType());
+
+        if(target != null) {
+            target.setStorage(file.getStorage());
+            setDrawing(target);
+            this.fileName = null;
+        } else history.setReadOnly(true); // l'ancien dessin sera remplacé, voir done
+
+        final Path path = pathOf(fileName);
+        final AtomicBoolean started = new AtomicBoolean();
+        reading.add(path);
+
+        loader = new SwingWorker<Drawing, List<Shape>>() {
+
+            protected Drawing doInBackground() throws IOException, ClassNotFoundException {
+                // un chargement annulé avant de commencer a déjà libéré le fichier (voir done)
+                if(!started.compareAndSet(false, true)) return null;
+
+                try {
+                    if(file == null) return DrawingSerializationHandler.loadDrawing(fileName, new LoadListener() {
+                        public void bytesRead(long read, long total) throws IOException {
+                            if(isCancelled()) throw new InterruptedIOException("Loading cancelled");
+                            if(total > 0) setProgress((int) Math.min(100, read*100/total));
+                        }
+                    });
+
+                    int count = file.getShapeCount();
+
+                    for(int from = 0; from < count && !isCancelled(); from += LOAD_CHUNK_SIZE) {
+                        int to = Math.min(count, from + LOAD_CHUNK_SIZE);
+
+                        publish(file.readShapes(from, to));
+                        setProgress((int) (to*100L/count));
+                    }
+
+                    return target;
+                } finally {
+                    release(file, path);
+                }
+            }
+
+            // les morceaux publiés depuis le dernier appel sont ajoutés en un seul lot
+            protected void process(List<List<Shape>> chunks) {
+                if(loader != this || drawing != target) return;
+
+                drawing.beginBatch();
+
+                try {
+                    for(List<Shape> chunk : chunks) {
+                        for(Shape s : chunk) drawing.addShape(s);
+                    }
+                } finally {
+                    drawing.endBatch();
+                }
+            }
+
+            protected void done() {
+                if(started.compareAndSet(false, true)) release(file, path);
+                if(loader != this) return;
+                loader = null;
+                history.setReadOnly(false);
+
+                try {
+                    Drawing loaded = get();
+                    if(file == null) setDrawing(loaded);
+
+                    DrawingEditor.this.fileName = fileName;
+                } catch (InterruptedException e) { e.printStackTrace(); }
+                catch (ExecutionException e) { showLoadError(fileName, e.getCause()); }
+            }
+        };
+
+        loader.execute();
+        return loader;
+    }
+
+    /**
+     * Annule le chargement en cours, s'il y en a un. Les formes déjà ajoutées
+     * au dessin y restent, et le dessin n'a pas de fichier associé. Si
+     * l'ancien dessin n'a pas encore été remplacé, il redevient modifiable.
      */
-    public void loadDrawing(String fileName) {
+    public void cancelLoading() {
+        if(loader == null) return;
+
+        // done est appelé pendant cancel, il ne doit plus voir ce chargement comme le chargement en cours
+        SwingWorker<Drawing, List<Shape>> cancelled = loader;
+        loader = null;
+        history.setReadOnly(false);
 
+        cancelled.cancel(false);
+    }
+
+    /**
+     *
+     * @return true si un dessin est en cours de chargement
+     */
+    public boolean isLoading() { return loader != null; }
+
+    // Ferme le fichier lu par un chargement terminé, qui peut de nouveau être remplacé.
+    private void release(IndexedDrawingFile file, Path path) {
         try {
-            this.drawing = DrawingSerializationHandler.loadDrawing(fileName);
+            if(file != null) file.close();
+        } catch (IOException e) { e.printStackTrace(); }
 
-            List<Shape> shapes = this.drawing.getShapes();
+        reading.remove(path);
+    }
 
-            for(Shape s : shapes)
-                EditorFrame.getCurrentEditor().getShapeList().addShape(s);
+    // Signale à l'utilisateur un fichier qui n'a pas pu être ouvert ou lu en entier.
+    private void showLoadError(String fileName, Throwable e) {
+        JOptionPane.showMessageDialog(this, "The drawing could not be loaded from " + fileName
+                + ":\n" + (e.getMessage() != null ? e.getMessage() : e), "Open", JOptionPane.ERROR_MESSAGE);
+    }
+
+    // Retourne le chemin absolu du fichier, afin de comparer les fichiers désignés par des noms différents.
+    private static Path pathOf(String fileName) {
+        return Paths.get(fileName).toAbsolutePath().normalize();
+    }
 
-            setPreferredSize(new Dimension(drawing.getWidth(), drawing.getHeight()));
-            setMinimumSize(new Dimension(drawing.getWidth(), drawing.getHeight()));
-            revalidate();
-            repaint();
+    /* Remplace le dessin édité par le dessin entré en paramètre, qui est
+     * affiché dans la liste des formes, et oublie l'historique de l'ancien.
+     */
+    private void setDrawing(Drawing loaded) {
+        this.drawing.removeDrawingListener(repainter);
+        this.drawing = loaded;
+        this.drawing.setSpatialIndex(true);
+        this.drawing.addDrawingListener(repainter);
+        this.history.discardAllEdits();
 
-            this.fileName = fileName;
+        EditorFrame.getCurrentEditor().getShapeList().setDrawing(this.drawing);
 
-        } catch (IOException | ClassNotFoundException e) { e.printStackTrace(); }
+        setPreferredSize(new Dimension(drawing.getWidth(), drawing.getHeight()));
+        zoom = 1;
+        updateViewport();
+        rebuildCanvas();
+        revalidate();
     }
 
 
@@ -243,10 +761,6 @@ public class DrawingEditor extends JPanel {
             case RECTANGLE:
                 sortCoords();
                 lastShape = factory.createRectangle(selectionCoords[0], selectionCoords[1], selectionCoords[2], selectionCoords[3], color);
-                drawing.addShape(lastShape);
-
-                EditorFrame.getCurrentEditor().getShapeList().addShape(lastShape);
-
                 break;
             case CIRCLE:
                 sortCoords();
@@ -255,49 +769,172 @@ public class DrawingEditor extends JPanel {
                 center[1] = (selectionCoords[3] - selectionCoords[1])/2 + selectionCoords[1];
                 int radius = (selectionCoords[3] - selectionCoords[1])/2;
                 lastShape = factory.createCircle(center[0], center[1], radius, color);
-                drawing.addShape(lastShape);
-
-                EditorFrame.getCurrentEditor().getShapeList().addShape(lastShape);
-
                 break;
             case LINE:
                 lastShape = factory.createLine(selectionCoords[0], selectionCoords[1], selectionCoords[2], selectionCoords[3], color);
-                drawing.addShape(lastShape);
-
-                EditorFrame.getCurrentEditor().getShapeList().addShape(lastShape);
-
                 break;
             default:
                 return;
         }
 
-        revalidate();
-        repaint();
+        history.perform(new ReplaceShapesEdit(this, "Draw", Collections.<Shape>emptyList(), Collections.singletonList(lastShape)));
+    }
+
+    /**
+     *
+     * @return l'historique des modifications du dessin
+     */
+    public EditHistory getHistory() { return history; }
+
+    /**
+     * Annule la dernière modification du dessin, s'il y en a une.
+     */
+    public void undo() {
+        if(history.canUndo()) history.undo();
+    }
 
+    /**
+     * Refait la dernière modification annulée du dessin, s'il y en a une.
+     */
+    public void redo() {
+        if(history.canRedo()) history.redo();
+    }
+
+    /**
+     * Commence un lot de modifications du dessin : la fenêtre n'est
+     * rafraichie qu'une fois, à la fin du lot, quel que soit le nombre de
+     * formes modifiées.
+     *
+     * @see Drawing#beginBatch()
+     */
+    public void beginBatch() {
+        drawing.beginBatch();
+    }
+
+    /**
+     * Termine un lot de modifications du dessin, et rafraichit la zone de la
+     * fenêtre touchée par ses modifications.
+     *
+     * @see Drawing#endBatch()
+     */
+    public void endBatch() {
+        drawing.endBatch();
     }
 
     /**
-     * Retire la forme entrée en paramètre au dessin et rafraichit la fenêtre
-     * pour afficher le changement.
+     * Retire la forme entrée en paramètre au dessin et rafraichit la zone
+     * de la fenêtre qu'elle occupait.
      *
      * @param s la forme à retirer du dessin
      */
     public void removeShape(Shape s) {
         drawing.removeShape(s);
-        revalidate();
-        repaint();
     }
 
     /**
-     * Ajoute la forme entrée en paramètre au dessin et rafraichit la fenêtre
-     * pour afficher le changement.
+     * Retire les formes entrées en paramètre au dessin, en un seul parcours
+     * de ses formes, puis rafraichit une seule fois la zone de la fenêtre
+     * qu'elles occupaient.
+     *
+     * @param shapes les formes à retirer du dessin
+     */
+    public void removeShapes(List<Shape> shapes) {
+        drawing.removeShapes(shapes);
+    }
+
+    /**
+     * Ajoute la forme entrée en paramètre au dessin et rafraichit la zone
+     * de la fenêtre qu'elle occupe.
      *
      * @param s la forme à ajouter au dessin
+     * @return la forme telle qu'elle est stockée dans le dessin, qui peut être
+     * une copie de s selon le stockage du dessin
      */
-    public void addShape(Shape s) {
+    public Shape addShape(Shape s) {
         drawing.addShape(s);
-        revalidate();
-        repaint();
+
+        List<Shape> shapes = drawing.getShapes();
+        return shapes.get(shapes.size()-1);
+    }
+
+    /**
+     * Insère la forme entrée en paramètre dans le dessin, à l'indice entré
+     * en paramètre, et rafraichit la zone de la fenêtre qu'elle occupe.
+     *
+     * @param i l'indice auquel insérer la forme
+     * @param s la forme à insérer dans le dessin
+     * @return la forme telle qu'elle est stockée dans le dessin, qui peut être
+     * une copie de s selon le stockage du dessin
+     */
+    public Shape addShape(int i, Shape s) {
+        drawing.addShape(i, s);
+        return drawing.getShapes().get(i);
+    }
+
+    /**
+     * Déplace la forme entrée en paramètre et rafraichit les zones de la
+     * fenêtre qu'elle occupait et qu'elle occupe désormais.
+     *
+     * @param s la forme à déplacer
+     * @param dx le décalage sur l'axe X
+     * @param dy le décalage sur l'axe Y
+     */
+    public void moveShape(Shape s, int dx, int dy) {
+        drawing.moveShape(s, dx, dy);
+    }
+
+    /**
+     * Réalise le miroir de la forme entrée en paramètre sur l'axe X passant
+     * par son centre, puis rafraichit la zone de la fenêtre concernée.
+     *
+     * @param s la forme à inverser
+     */
+    public void mirrorShapeX(Shape s) {
+        mirrorShapeX(s, s.getCenterX());
+    }
+
+    /**
+     * Réalise le miroir de la forme entrée en paramètre sur l'axe X entré en
+     * paramètre, puis rafraichit la zone de la fenêtre concernée.
+     *
+     * @param s la forme à inverser
+     * @param x position de l'axe
+     */
+    public void mirrorShapeX(Shape s, double x) {
+        drawing.mirrorShapeX(s, x);
+    }
+
+    /**
+     * Réalise le miroir de la forme entrée en paramètre sur l'axe Y passant
+     * par son centre, puis rafraichit la zone de la fenêtre concernée.
+     *
+     * @param s la forme à inverser
+     */
+    public void mirrorShapeY(Shape s) {
+        mirrorShapeY(s, s.getCenterY());
+    }
+
+    /**
+     * Réalise le miroir de la forme entrée en paramètre sur l'axe Y entré en
+     * paramètre, puis rafraichit la zone de la fenêtre concernée.
+     *
+     * @param s la forme à inverser
+     * @param y position de l'axe
+     */
+    public void mirrorShapeY(Shape s, double y) {
+        drawing.mirrorShapeY(s, y);
+    }
+
+    /* Rafraichit uniquement la zone de la fenêtre occupée par la zone du dessin
+     * entrée en paramètre, agrandie pour prendre en compte l'épaisseur du trait
+     * des formes.
+     */
+    private void repaintArea(Rectangle2D area) {
+        Rectangle dirty = new Rectangle2D.Double(
+                area.getX()*zoom + offsetX, area.getY()*zoom + offsetY,
+                area.getWidth()*zoom, area.getHeight()*zoom).getBounds();
+        dirty.grow(2, 2);
+        repaint(dirty);
     }
 
     /* S'assure que les coordonnées récupérées lors des interactions de
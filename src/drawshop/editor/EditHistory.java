@@ -0,0 +1,146 @@
+package drawshop.editor;
+
+import javax.swing.undo.UndoManager;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * Cette classe est l'historique des modifications d'un dessin, permettant de
+ * les annuler et de les refaire.
+ *
+ * <p>L'historique n'est pas limité en nombre de modifications mais en
+ * mémoire : lorsque la mémoire estimée des modifications conservées dépasse
+ * le budget de l'historique, les plus anciennes sont oubliées. La dernière
+ * modification est toujours conservée.</p>
+ *
+ * <p>L'historique peut être mis en lecture seule (voir
+ * {@link #setReadOnly(boolean)}) : les modifications ne sont alors ni
+ * réalisées, ni annulées, ni refaites.</p>
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ *
+ * @see ShapeEdit
+ */
+public class EditHistory extends UndoManager {
+
+    /**
+     * Le budget par défaut de l'historique, en octets.
+     */
+    public static final long DEFAULT_BUDGET = 32L*1024*1024;
+
+    private long budget;
+    private long size;
+    private boolean readOnly;
+
+    /**
+     * Instancie un historique vide ayant le budget par défaut.
+     */
+    public EditHistory() {
+        this(DEFAULT_BUDGET);
+    }
+
+    /**
+     * Instancie un historique vide.
+     *
+     * @param budget la mémoire, en octets, que peuvent retenir les modifications de l'historique
+     */
+    public EditHistory(long budget) {
+        this.budget = budget;
+        setLimit(-1);
+    }
+
+    /**
+     * Réalise la modification entrée en paramètre, puis l'ajoute à l'historique.
+     *
+     * @param edit la modification à réaliser
+     */
+    public void perform(ShapeEdit edit) {
+        if(isReadOnly()) return;
+
+        edit.performBatch();
+        addEdit(edit);
+    }
+
+    /**
+     * Met l'historique en lecture seule ou l'en sort. En lecture seule, les
+     * modifications passées à {@link #perform(ShapeEdit)} sont ignorées et
+     * aucune modification ne peut être annulée ou refaite.
+     *
+     * @param readOnly true pour empêcher toute modification du dessin
+     */
+    public synchronized void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    /**
+     *
+     * @return true si l'historique est en lecture seule
+     */
+    public synchronized boolean isReadOnly() { return readOnly; }
+
+    public synchronized boolean canUndo() {
+        return !readOnly && super.canUndo();
+    }
+
+    public synchronized boolean canRedo() {
+        return !readOnly && super.canRedo();
+    }
+
+    public synchronized boolean canUndoOrRedo() {
+        return !readOnly && super.canUndoOrRedo();
+    }
+
+    public synchronized boolean addEdit(UndoableEdit anEdit) {
+        boolean added = super.addEdit(anEdit);
+
+        // une modification regroupée avec la précédente n'est pas ajoutée à la liste
+        if(added && lastEdit() == anEdit) size += sizeOf(anEdit);
+
+        trimForBudget();
+        return added;
+    }
+
+    /**
+     * Change le budget de l'historique, en oubliant si besoin les plus
+     * anciennes modifications.
+     *
+     * @param budget la mémoire, en octets, que peuvent retenir les modifications de l'historique
+     */
+    public synchronized void setBudget(long budget) {
+        this.budget = budget;
+        trimForBudget();
+    }
+
+    /**
+     *
+     * @return la mémoire, en octets, que peuvent retenir les modifications de l'historique
+     */
+    public synchronized long getBudget() { return budget; }
+
+    /**
+     *
+     * @return l'estimation de la mémoire retenue par les modifications de l'historique
+     */
+    public synchronized long getSize() { return size; }
+
+    public synchronized void discardAllEdits() {
+        super.discardAllEdits();
+        size = 0;
+    }
+
+    protected void trimEdits(int from, int to) {
+        for(int i = from; i <= to; i++) size -= sizeOf(edits.get(i));
+        super.trimEdits(from, to);
+    }
+
+    // Oublie les plus anciennes modifications tant que le budget est dépassé.
+    private void trimForBudget() {
+        while(size > budget && edits.size() > 1) trimEdits(0, 0);
+    }
+
+    private static long sizeOf(UndoableEdit edit) {
+        return edit instanceof ShapeEdit ? ((ShapeEdit) edit).getSize() : 0;
+    }
+}
@@ -1,18 +1,28 @@
 package drawshop.editor;
 
 import drawshop.shapes.drawing.Drawing;
+import drawshop.shapes.drawing.export.RenderListener;
+import drawshop.shapes.drawing.export.StreamingPngWriter;
+import drawshop.shapes.drawing.export.TiledRenderer;
 import drawshop.shapes.factories.DrawingType;
-import drawshop.shapes.visitors.ShapeDrawingVisitor;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
+import javax.swing.event.MenuEvent;
+import javax.swing.event.MenuListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.awt.image.BufferedImage;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Cette classe permet d'instancier une JFrame constituée de toutes les parties
@@ -41,6 +51,8 @@ public final class EditorFrame extends JFrame {
     private JMenuBar menuBar;
 
     private JMenu fileMenu;
+    private JMenu editMenu;
+    private JMenu viewMenu;
     private JMenu exitMenu;
 
     private JPanel viewer;
@@ -74,7 +86,10 @@ public final class EditorFrame extends JFrame {
 
         setSize(WIDTH, HEIGHT);
         setLocationRelativeTo(null);
-        setDefaultCloseOperation(EXIT_ON_CLOSE);
+        setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            public void windowClosing(WindowEvent e) { exit(); }
+        });
         setIconImage(new ImageIcon(getClass().getResource("/resources/img/icon.png")).getImage());
 
         initMenuBar();
@@ -150,16 +165,88 @@ public final class EditorFrame extends JFrame {
         });
         fileMenu.add(export);
 
+        //Edit Menu
+
+        editMenu = new JMenu("Edit");
+
+        //voir DrawingEditor.undo()
+        final JMenuItem undo = new JMenuItem("Undo");
+        undo.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK));
+        undo.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) { if(drawing != null) drawing.undo(); }
+        });
+        editMenu.add(undo);
+
+        //voir DrawingEditor.redo()
+        final JMenuItem redo = new JMenuItem("Redo");
+        redo.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK));
+        redo.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) { if(drawing != null) drawing.redo(); }
+        });
+        editMenu.add(redo);
+
+        //met à jour le nom des modifications à annuler et à refaire à l'ouverture du menu
+        editMenu.addMenuListener(new MenuListener() {
+            public void menuSelected(MenuEvent e) {
+                EditHistory history = drawing != null ? drawing.getHistory() : null;
+
+                undo.setEnabled(history != null && history.canUndo());
+                undo.setText(history != null ? history.getUndoPresentationName() : "Undo");
+                redo.setEnabled(history != null && history.canRedo());
+                redo.setText(history != null ? history.getRedoPresentationName() : "Redo");
+            }
+
+            public void menuDeselected(MenuEvent e) {
+                // les raccourcis restent actifs lorsque le menu est fermé
+                undo.setEnabled(true);
+                redo.setEnabled(true);
+            }
+
+            public void menuCanceled(MenuEvent e) { menuDeselected(e); }
+        });
+
+        //View Menu
+
+        viewMenu = new JMenu("View");
+
+        //voir DrawingEditor.zoomIn()
+        JMenuItem zoomIn = new JMenuItem("Zoom in");
+        zoomIn.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) { if(drawing != null) drawing.zoomIn(); }
+        });
+        viewMenu.add(zoomIn);
+
+        //voir DrawingEditor.zoomOut()
+        JMenuItem zoomOut = new JMenuItem("Zoom out");
+        zoomOut.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) { if(drawing != null) drawing.zoomOut(); }
+        });
+        viewMenu.add(zoomOut);
+
+        viewMenu.addSeparator();
+
+        //voir DrawingEditor.setZoom()
+        JMenuItem actualSize = new JMenuItem("Actual size");
+        actualSize.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) { if(drawing != null) drawing.setZoom(1); }
+        });
+        viewMenu.add(actualSize);
+
+        //voir DrawingEditor.zoomToFit()
+        JMenuItem fit = new JMenuItem("Fit to window");
+        fit.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) { if(drawing != null) drawing.zoomToFit(); }
+        });
+        viewMenu.add(fit);
+
         //Exit Menu
 
         exitMenu = new JMenu("Exit");
         JMenuItem exit = new JMenuItem("Exit");
 
-        //quitte l'application
+        //voir exit()
         exit.addActionListener(new ActionListener() {
-            public void actionPerformed(ActionEvent e) {
-                System.exit(0);
-            }
+            public void actionPerformed(ActionEvent e) { exit(); }
         });
         exitMenu.add(exit);
 
@@ -169,11 +256,19 @@ public final class EditorFrame extends JFrame {
         menuBar.setBorder(BorderFactory.createEmptyBorder(1,1,1,1));
 
         menuBar.add(fileMenu);
+        menuBar.add(editMenu);
+        menuBar.add(viewMenu);
         menuBar.add(exitMenu);
 
         this.add(menuBar, BorderLayout.NORTH);
     }
 
+    // Quitte l'application une fois les dessins en cours d'enregistrement écrits.
+    private void exit() {
+        DrawingEditor.awaitSaves();
+        System.exit(0);
+    }
+
     /* Ouvre un explorateur de fichier afin de choisir un fichier dans lequel
      * sauvegarder le dessin actuellement édité. Le nom du fichier est ensuite
      * passé dans la méthode saveDrawing() de DrawingEditor.
@@ -195,15 +290,28 @@ public final class EditorFrame extends JFrame {
             String fileName = f.getAbsolutePath();
 
             if(!f.exists() && !fileName.endsWith(".draw")) fileName += ".draw";
-            drawing.saveDrawingAs(fileName);
 
-            setTitle("Drawshop - " + drawing.getFileName());
+            final DrawingEditor editor = drawing;
+            final SwingWorker<Void, Void> saver = editor.saveDrawingAs(fileName);
+            if(saver == null) return;
+
+            // le titre n'indique le fichier qu'une fois le dessin enregistré
+            saver.addPropertyChangeListener(new PropertyChangeListener() {
+                public void propertyChange(PropertyChangeEvent e) {
+                    if(saver.isDone() && editor == drawing && editor.getFileName() != null)
+                        setTitle("Drawshop - " + editor.getFileName());
+                }
+            });
         }
     }
 
     /* Ouvre un explorateur de fichier afin de choisir un dessin à charger.
      * Le nom du fichier est ensuite passé dans la méthode loadDrawing()
      * de DrawingEditor.
+     *
+     * Le dessin est chargé en arrière plan, et une fenêtre permet de suivre
+     * la lecture des formes et de l'annuler. Le titre de la fenêtre n'indique
+     * le fichier qu'une fois celui-ci entièrement chargé.
      */
     private void openDrawing() {
 
@@ -220,9 +328,28 @@ public final class EditorFrame extends JFrame {
 
             File f = chooser.getSelectedFile();
 
-            shapeListPanel.removeAll();
-            drawing.loadDrawing(f.getAbsolutePath());
-            setTitle("Drawshop - " + drawing.getFileName());
+            final SwingWorker<Drawing, ?> loader = drawing.loadDrawing(f.getAbsolutePath());
+            if(loader == null) return;
+
+            setTitle("Drawshop - Loading " + f.getName());
+
+            final DrawingEditor editor = drawing;
+            final ProgressMonitor monitor = new ProgressMonitor(this, "Loading " + f.getName(), null, 0, 100);
+
+            loader.addPropertyChangeListener(new PropertyChangeListener() {
+                public void propertyChange(PropertyChangeEvent e) {
+                    if("progress".equals(e.getPropertyName())) {
+                        monitor.setProgress(loader.getProgress());
+                        if(monitor.isCanceled()) editor.cancelLoading();
+                    }
+
+                    if(loader.isDone()) {
+                        monitor.close();
+                        if(editor == drawing && !editor.isLoading())
+                            setTitle("Drawshop - " + (editor.getFileName() != null ? editor.getFileName() : "Unsaved file"));
+                    }
+                }
+            });
         }
     }
 
@@ -235,15 +362,23 @@ public final class EditorFrame extends JFrame {
      * @param type le type de forme à ajouter au dessin.
      */
     public void newDrawing(int width, int height, DrawingType type) {
-        if(drawing != null) viewer.remove(drawing);
+        if(drawing != null) {
+            drawing.cancelLoading();
+            viewer.remove(drawing);
+        }
 
         Drawing d = new Drawing(width, height, type);
         drawing = new DrawingEditor(d);
 
-        shapeListPanel.removeAll();
+        shapeListPanel.setDrawing(d);
 
         drawing.setColor(toolbar.getCurrentColor());
-        viewer.add(drawing, new GridBagConstraints());
+        GridBagConstraints constraints = new GridBagConstraints();
+        constraints.fill = GridBagConstraints.BOTH;
+        constraints.weightx = 1;
+        constraints.weighty = 1;
+
+        viewer.add(drawing, constraints);
         revalidate();
         repaint();
 
@@ -253,18 +388,15 @@ public final class EditorFrame extends JFrame {
     /* Ouvre un explorateur de fichier afin de choisir un fichier dans lequel
      * exporter le dessin actuellement édité.
      *
-     * Le dessin sera exporter au format .png
+     * Le dessin sera exporter au format .png. Le rendu est réalisé en arrière
+     * plan, et une fenêtre permet de suivre son avancement et de l'annuler.
+     * Si l'image entière risque de ne pas tenir en mémoire, elle est écrite
+     * par bandes grâce à un StreamingPngWriter, sinon elle est dessinée en
+     * parallèle par un TiledRenderer. Le fichier choisi n'est remplacé qu'une
+     * fois l'image complète, un export annulé le laisse donc intact.
      */
     private void exportDrawing() {
 
-        Drawing d = drawing.getDrawing();
-
-        BufferedImage bImg = new BufferedImage(d.getWidth(), d.getHeight(), BufferedImage.TYPE_INT_RGB);
-        Graphics2D g = bImg.createGraphics();
-        g.setColor(Color.WHITE);
-        g.fillRect(0,0,d.getWidth(),d.getHeight());
-        d.acceptVisitor(new ShapeDrawingVisitor(g));
-
         JFileChooser chooser = new JFileChooser();
 
         FileNameExtensionFilter filter = new FileNameExtensionFilter(".png files (*.png)", "png");
@@ -284,8 +416,59 @@ public final class EditorFrame extends JFrame {
 
         if(!f.exists() && !fileName.endsWith(".png")) fileName += ".png";
 
-        try { ImageIO.write(bImg, "png", new File(fileName));
-        } catch (IOException e) { e.printStackTrace(); }
+        final File file = new File(fileName);
+        final Drawing d = drawing.getDrawing();
+        final ProgressMonitor monitor = new ProgressMonitor(this, "Exporting " + file.getName(), null, 0, 100);
+
+        boolean streaming = 4L * d.getWidth() * d.getHeight() > Runtime.getRuntime().maxMemory() / 4;
+
+        final TiledRenderer renderer = streaming ? null : new TiledRenderer(d);
+        final StreamingPngWriter writer = streaming ? new StreamingPngWriter(d) : null;
+
+        final SwingWorker<Void, Void> export = new SwingWorker<Void, Void>() {
+
+            protected Void doInBackground() throws IOException {
+                RenderListener progress = new RenderListener() {
+                    public void partRendered(int rendered, int total) {
+                        setProgress(rendered * 100 / total);
+                    }
+                };
+
+                if(writer != null) {
+                    writer.setListener(progress);
+                    writer.write(file.getAbsolutePath());
+                } else {
+                    renderer.setListener(progress);
+                    renderer.write(file.getAbsolutePath());
+                }
+                return null;
+            }
+
+            protected void done() {
+                monitor.close();
+
+                try { get();
+                } catch (CancellationException e) { // export annulé par l'utilisateur
+                } catch (InterruptedException | ExecutionException e) {
+                    if(!(e.getCause() instanceof CancellationException)) e.printStackTrace();
+                }
+            }
+        };
+
+        export.addPropertyChangeListener(new PropertyChangeListener() {
+            public void propertyChange(PropertyChangeEvent e) {
+                if(!"progress".equals(e.getPropertyName())) return;
+
+                monitor.setProgress(export.getProgress());
+
+                if(monitor.isCanceled()) {
+                    if(writer != null) writer.cancel();
+                    else renderer.cancel();
+                }
+            }
+        });
+
+        export.execute();
     }
 
     DrawingEditor getDrawingEditor() { return this.drawing; }
@@ -0,0 +1,58 @@
+package drawshop.editor;
+
+import drawshop.shapes.Shape;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cette classe représente le miroir de plusieurs formes du dessin, chacune
+ * sur l'axe passant par son centre. Elle est annulée en réalisant de nouveau
+ * le miroir sur les mêmes axes.
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ */
+class MirrorShapesEdit extends ShapeEdit {
+
+    private final List<Shape> shapes;
+    private final double[] axes;
+    private final boolean vertical;
+
+    /**
+     * Instancie le miroir des formes entrées en paramètre. La position des
+     * axes est celle du centre des formes lors de l'instanciation.
+     *
+     * @param editor l'éditeur dont le dessin est modifié
+     * @param shapes les formes à inverser
+     * @param vertical true pour inverser les formes sur l'axe X, false pour l'axe Y
+     */
+    MirrorShapesEdit(DrawingEditor editor, List<Shape> shapes, boolean vertical) {
+        super(editor);
+        this.shapes = new ArrayList<Shape>(shapes);
+        this.axes = new double[shapes.size()];
+        this.vertical = vertical;
+
+        for(int i = 0; i < axes.length; i++)
+            axes[i] = vertical ? shapes.get(i).getCenterX() : shapes.get(i).getCenterY();
+    }
+
+    public void perform() {
+        for(int i = 0; i < axes.length; i++) {
+            if(vertical) editor.mirrorShapeX(shapes.get(i), axes[i]);
+            else editor.mirrorShapeY(shapes.get(i), axes[i]);
+        }
+    }
+
+    protected void revert() {
+        perform();
+    }
+
+    public long getSize() {
+        return EDIT_SIZE + shapes.size()*(REFERENCE_SIZE + 8);
+    }
+
+    public String getPresentationName() { return "Mirror"; }
+}
@@ -0,0 +1,76 @@
+package drawshop.editor;
+
+import drawshop.shapes.Shape;
+
+import javax.swing.undo.UndoableEdit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cette classe représente le déplacement de plusieurs formes du dessin.
+ * Elle est annulée en déplaçant les formes dans l'autre sens.
+ *
+ * <p>Les déplacements successifs des mêmes formes sont regroupés en une
+ * seule modification.</p>
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ */
+class MoveShapesEdit extends ShapeEdit {
+
+    private final List<Shape> shapes;
+    private int dx, dy;
+
+    /**
+     * Instancie le déplacement des formes entrées en paramètre.
+     *
+     * @param editor l'éditeur dont le dessin est modifié
+     * @param shapes les formes à déplacer
+     * @param dx le décalage sur l'axe X
+     * @param dy le décalage sur l'axe Y
+     */
+    MoveShapesEdit(DrawingEditor editor, List<Shape> shapes, int dx, int dy) {
+        super(editor);
+        this.shapes = new ArrayList<Shape>(shapes);
+        this.dx = dx;
+        this.dy = dy;
+    }
+
+    public void perform() {
+        for(Shape s : shapes) editor.moveShape(s, dx, dy);
+    }
+
+    protected void revert() {
+        for(Shape s : shapes) editor.moveShape(s, -dx, -dy);
+    }
+
+    public long getSize() {
+        return EDIT_SIZE + shapes.size()*REFERENCE_SIZE;
+    }
+
+    /**
+     * Regroupe le déplacement entré en paramètre avec celui-ci s'il porte
+     * sur les mêmes formes.
+     *
+     * @param anEdit la modification suivante
+     * @return true si la modification a été regroupée avec celle-ci
+     */
+    public boolean addEdit(UndoableEdit anEdit) {
+        if(!(anEdit instanceof MoveShapesEdit) || !canUndo()) return false;
+
+        MoveShapesEdit next = (MoveShapesEdit) anEdit;
+        if(next.shapes.size() != shapes.size()) return false;
+
+        for(int i = 0; i < shapes.size(); i++)
+            if(next.shapes.get(i) != shapes.get(i)) return false;
+
+        dx += next.dx;
+        dy += next.dy;
+
+        return true;
+    }
+
+    public String getPresentationName() { return "Move"; }
+}
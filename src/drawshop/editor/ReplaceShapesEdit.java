@@ -0,0 +1,100 @@
+package drawshop.editor;
+
+import drawshop.shapes.Shape;
+import drawshop.shapes.drawing.Drawing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Cette classe représente le remplacement de formes du dessin par d'autres
+ * formes : ajouter, supprimer, fusionner ou dégrouper des formes. Les formes
+ * ajoutées sont dessinées par dessus les autres, et les formes retirées
+ * retrouvent leur place dans l'ordre de dessin lorsque la modification est
+ * annulée.
+ *
+ * <p>Les formes sont retirées ensemble, en un seul parcours des formes du
+ * dessin (voir {@link DrawingEditor#removeShapes(List)}).</p>
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ */
+class ReplaceShapesEdit extends ShapeEdit {
+
+    private final String name;
+    private final List<Shape> removed;
+    private final int[] indices; // indice de chaque forme retirée avant le retrait, dans l'ordre croissant
+    private final List<Shape> added;
+    private final long size;
+
+    /**
+     * Instancie le remplacement des formes entrées en paramètre.
+     *
+     * @param editor l'éditeur dont le dessin est modifié
+     * @param name le nom de la modification, affiché dans le menu
+     * @param removed les formes à retirer du dessin
+     * @param added les formes à ajouter au dessin
+     */
+    ReplaceShapesEdit(DrawingEditor editor, String name, List<Shape> removed, List<Shape> added) {
+        super(editor);
+        this.name = name;
+        this.removed = new ArrayList<Shape>(removed);
+        this.indices = new int[removed.size()];
+        this.added = new ArrayList<Shape>(added);
+
+        long size = EDIT_SIZE + removed.size()*(REFERENCE_SIZE + 4) + added.size()*REFERENCE_SIZE;
+        for(Shape s : removed) size += sizeOf(s);
+        for(Shape s : added) size += sizeOf(s);
+
+        this.size = size;
+    }
+
+    public void perform() {
+        Drawing drawing = editor.getDrawing();
+
+        for(int i = 0; i < removed.size(); i++) indices[i] = drawing.indexOf(removed.get(i));
+        sortRemoved();
+
+        List<Shape> present = new ArrayList<Shape>(removed.size());
+        for(int i = 0; i < removed.size(); i++) if(indices[i] >= 0) present.add(removed.get(i));
+
+        editor.removeShapes(present);
+
+        for(int i = 0; i < added.size(); i++) added.set(i, editor.addShape(added.get(i)));
+    }
+
+    protected void revert() {
+        editor.removeShapes(added);
+
+        // les formes sont remises dans l'ordre croissant de leur indice d'origine
+        for(int i = 0; i < removed.size(); i++) {
+            if(indices[i] >= 0) removed.set(i, editor.addShape(indices[i], removed.get(i)));
+        }
+    }
+
+    // Trie les formes retirées selon leur indice dans le dessin.
+    private void sortRemoved() {
+        Integer[] order = new Integer[removed.size()];
+        for(int i = 0; i < order.length; i++) order[i] = i;
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer i1, Integer i2) { return Integer.compare(indices[i1], indices[i2]); }
+        });
+
+        List<Shape> shapes = new ArrayList<Shape>(removed);
+        int[] sorted = indices.clone();
+
+        for(int i = 0; i < order.length; i++) {
+            removed.set(i, shapes.get(order[i]));
+            indices[i] = sorted[order[i]];
+        }
+    }
+
+    public long getSize() { return size; }
+
+    public String getPresentationName() { return name; }
+}
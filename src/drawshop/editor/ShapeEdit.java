@@ -0,0 +1,94 @@
+package drawshop.editor;
+
+import drawshop.shapes.Shape;
+import drawshop.shapes.ShapeGroup;
+
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+
+/**
+ * Cette classe représente une modification du dessin pouvant être annulée.
+ * Une modification n'enregistre pas l'état du dessin, mais seulement ce qui
+ * permet de la refaire et de l'annuler : annuler un déplacement revient par
+ * exemple à déplacer les formes dans l'autre sens. Le coût de l'annulation
+ * dépend donc de la modification et non de la taille du dessin.
+ *
+ * <p>Chaque modification estime la mémoire qu'elle retient, afin que
+ * l'historique puisse respecter son budget.</p>
+ *
+ * <p>Une modification est réalisée et annulée en un seul lot de modifications
+ * du dessin : l'éditeur et la liste des formes ne sont mis à jour qu'une fois,
+ * quel que soit le nombre de formes concernées.</p>
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ *
+ * @see EditHistory
+ */
+public abstract class ShapeEdit extends AbstractUndoableEdit {
+
+    // estimations de la mémoire retenue, en octets
+    static final long EDIT_SIZE = 64;
+    static final long REFERENCE_SIZE = 8;
+    static final long SHAPE_SIZE = 96;
+
+    protected final DrawingEditor editor;
+
+    /**
+     * Instancie une modification du dessin affiché par l'éditeur entré en
+     * paramètre.
+     *
+     * @param editor l'éditeur dont le dessin est modifié
+     */
+    protected ShapeEdit(DrawingEditor editor) {
+        this.editor = editor;
+    }
+
+    /**
+     * Réalise la modification pour la première fois.
+     */
+    public abstract void perform();
+
+    /**
+     * Annule la modification, après qu'elle ait été réalisée.
+     */
+    protected abstract void revert();
+
+    /**
+     *
+     * @return une estimation, en octets, de la mémoire retenue par la modification
+     */
+    public abstract long getSize();
+
+    public void undo() throws CannotUndoException {
+        super.undo();
+
+        editor.beginBatch();
+        try { revert(); }
+        finally { editor.endBatch(); }
+    }
+
+    public void redo() throws CannotRedoException {
+        super.redo();
+        performBatch();
+    }
+
+    // Réalise la modification en un seul lot de modifications du dessin.
+    void performBatch() {
+        editor.beginBatch();
+        try { perform(); }
+        finally { editor.endBatch(); }
+    }
+
+    /* Estime la mémoire occupée par une forme. Les symboles des instances sont
+     * partagés et ne sont pas comptés.
+     */
+    static long sizeOf(Shape s) {
+        if(!(s instanceof ShapeGroup)) return SHAPE_SIZE;
+
+        return EDIT_SIZE + ((ShapeGroup) s).countShapes()*SHAPE_SIZE;
+    }
+}
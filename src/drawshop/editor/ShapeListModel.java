@@ -0,0 +1,162 @@
+package drawshop.editor;
+
+import drawshop.shapes.Shape;
+import drawshop.shapes.drawing.Drawing;
+import drawshop.shapes.drawing.DrawingListener;
+import drawshop.shapes.drawing.ShapeListChange;
+
+import javax.swing.*;
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Cette classe est le modèle de la liste des formes affichée par le
+ * ShapeListPanel. Elle ne conserve pas les formes mais lit directement celles
+ * du dessin, de la dernière dessinée à la première, et est prévenue de ses
+ * modifications en tant que DrawingListener : un lot de modifications du
+ * dessin ne coûte qu'une notification de la liste, quel que soit le nombre
+ * de formes du dessin et de formes modifiées.
+ *
+ * <p>Chaque forme reçoit un identifiant numérique lors de son ajout, qu'elle
+ * conserve même si elle est retirée puis remise dans le dessin, par exemple
+ * lors de l'annulation d'une modification. Les éléments de la liste sont ces
+ * identifiants, seules les lignes visibles étant dessinées par la JList.</p>
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ *
+ * @see ShapeListPanel
+ */
+class ShapeListModel extends AbstractListModel<Long> {
+
+    private Drawing drawing;
+    private int rows; // nombre de lignes connues de la JList
+
+    private final DrawingListener updater = new DrawingListener() {
+        public void drawingChanged(Drawing drawing, Rectangle2D area, List<Shape> appended, List<ShapeListChange> changes) {
+            if(changes == null || !changes.isEmpty()) update(changes);
+        }
+    };
+
+    // les formes qui ne sont plus utilisées nulle part oublient leur identifiant
+    private Map<Shape, Long> ids = new WeakHashMap<Shape, Long>();
+    private long lastId;
+
+    /**
+     * Remplace le dessin dont les formes sont affichées. Les formes du
+     * nouveau dessin reçoivent un identifiant dans leur ordre de dessin.
+     *
+     * @param drawing le dessin à afficher, ou null pour vider la liste
+     */
+    void setDrawing(Drawing drawing) {
+        if(this.drawing != null) this.drawing.removeDrawingListener(updater);
+
+        this.drawing = drawing;
+        this.ids = new WeakHashMap<Shape, Long>();
+        this.lastId = 0;
+
+        if(rows > 0) fireIntervalRemoved(this, 0, rows-1);
+        rows = 0;
+
+        if(drawing == null) return;
+
+        drawing.addDrawingListener(updater);
+
+        for(Shape s : drawing.getShapes()) getId(s);
+        update(null);
+    }
+
+    public int getSize() {
+        return drawing == null ? 0 : drawing.getShapes().size();
+    }
+
+    public Long getElementAt(int row) {
+        return getId(getShape(row));
+    }
+
+    /**
+     *
+     * @param row la ligne de la liste
+     * @return la forme du dessin affichée à cette ligne
+     */
+    Shape getShape(int row) {
+        List<Shape> shapes = drawing.getShapes();
+        return shapes.get(shapes.size()-1 - row);
+    }
+
+    /**
+     *
+     * @param s une forme du dessin
+     * @return l'identifiant de la forme, qui lui est attribué lors du premier appel
+     */
+    long getId(Shape s) {
+        Long id = ids.get(s);
+
+        if(id == null) {
+            id = ++lastId;
+            ids.put(s, id);
+        }
+
+        return id;
+    }
+
+    /* Prévient la JList des ajouts et retraits de formes, dans leur ordre :
+     * seules les lignes concernées sont ajoutées ou retirées, les autres
+     * restant sélectionnées. Lorsque toutes les formes du dessin sont
+     * remplacées (changes est null), toutes les lignes le sont aussi, ce qui
+     * vide la sélection.
+     */
+    private void update(List<ShapeListChange> changes) {
+        List<Shape> shapes = drawing.getShapes();
+        int size = shapes.size();
+
+        // les formes ajoutées à la fin du dessin reçoivent leur identifiant dans leur ordre de dessin
+        int first = size;
+        while(first > 0 && !ids.containsKey(shapes.get(first-1))) first--;
+        for(int i = first; i < size; i++) getId(shapes.get(i));
+
+        // les modifications sont vérifiées avant d'être transmises
+        if(changes != null && replay(changes, false) == size) {
+            replay(changes, true);
+            rows = size;
+            return;
+        }
+
+        if(rows > 0) fireIntervalRemoved(this, 0, rows-1);
+        if(size > 0) fireIntervalAdded(this, 0, size-1);
+
+        rows = size;
+    }
+
+    /* Applique les ajouts et retraits aux lignes de la JList, la ligne d'une
+     * forme étant son indice compté à partir de la fin du dessin, et la
+     * prévient de chacun si notify est true. Retourne le nombre de lignes
+     * obtenu, ou -1 si une modification ne correspond pas aux lignes.
+     */
+    private int replay(List<ShapeListChange> changes, boolean notify) {
+        int count = rows;
+
+        for(ShapeListChange change : changes) {
+            int i = change.getIndex(), n = change.getCount();
+
+            if(change.isInsertion()) {
+                if(i > count) return -1;
+
+                count += n;
+                if(notify) fireIntervalAdded(this, count-i-n, count-i-1);
+            }
+            else {
+                if(i + n > count) return -1;
+
+                if(notify) fireIntervalRemoved(this, count-i-n, count-i-1);
+                count -= n;
+            }
+        }
+
+        return count;
+    }
+}
@@ -2,14 +2,17 @@ package drawshop.editor;
 
 import drawshop.shapes.Shape;
 import drawshop.shapes.ShapeGroup;
+import drawshop.shapes.ShapeInstance;
+import drawshop.shapes.drawing.Drawing;
 
 import javax.swing.*;
 import javax.swing.border.TitledBorder;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.HashMap;
 
 /**
  * Cette classe permet d'instancier un JPanel constituant une partie
@@ -21,11 +24,21 @@ import java.util.HashMap;
  * <ul>
  *     <li>Fusionner plusieurs formes en un seul ShapeGroup</li>
  *     <li>Degrouper le contenu d'un ShapeGroup</li>
+ *     <li>Placer une nouvelle instance d'un ShapeGroup</li>
  *     <li>Réaliser le miroir d'une ou plusieurs formes</li>
  *     <li>Supprimer une forme</li>
  *     <li>Déplacer une forme</li>
  * </ul>
  *
+ * <p>Chaque action est enregistrée dans l'historique du dessin afin de pouvoir
+ * être annulée.</p>
+ *
+ * <p>La liste lit directement les formes du dessin (voir {@link ShapeListModel}),
+ * et ses lignes ont toutes la même taille : seules les lignes visibles sont
+ * dessinées, et l'ajout ou le retrait d'une forme ne dépend pas du nombre de
+ * formes du dessin. Chaque action ne met à jour la liste et l'éditeur qu'une
+ * seule fois, quel que soit le nombre de formes sélectionnées.</p>
+ *
  * @author Evan Lajusticia
  * @author Pauline Rugliano
  *
@@ -33,14 +46,15 @@ import java.util.HashMap;
  */
 public class ShapeListPanel extends JPanel {
 
-    private DefaultListModel<String> shapeList;
-    private JList<String> list;
+    private static final int INSTANCE_OFFSET = 20;
+    private static final Long PROTOTYPE_ID = 9999999L; // taille des lignes de la liste
 
-    private HashMap<String, Shape> shapeMap;
-    private int nbShapes;
+    private ShapeListModel shapeList;
+    private JList<Long> list;
 
     private JButton mergeShapeButton;
     private JButton unmergeShapeButton;
+    private JButton instanceShapeButton;
     private JButton mirrorXShapeButton;
     private JButton mirrorYShapeButton;
     private JButton removeShapeButton;
@@ -57,9 +71,6 @@ public class ShapeListPanel extends JPanel {
      */
     public ShapeListPanel() {
 
-        this.shapeMap = new HashMap<String, Shape>();
-        this.nbShapes = 0;
-
         this.setLayout(new BorderLayout());
         this.setBackground(new Color(255,255,255));
 
@@ -74,10 +85,18 @@ public class ShapeListPanel extends JPanel {
         listPanel.setBackground(new Color(255,255,255));
         listPanel.setBorder(BorderFactory.createTitledBorder(BorderFactory.createMatteBorder(1, 0, 0, 0, new Color(180,180,180)), "Shape list", TitledBorder.CENTER, TitledBorder.TOP));
 
-        this.shapeList = new DefaultListModel<String>();
-        this.list = new JList<String>(shapeList);
+        this.shapeList = new ShapeListModel();
+        this.list = new JList<Long>(shapeList);
         this.list.setBackground(new Color(235,235,235));
 
+        // le nom d'une forme n'est construit que lorsque sa ligne est dessinée
+        this.list.setCellRenderer(new DefaultListCellRenderer() {
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+                return super.getListCellRendererComponent(list, "Shape " + value, index, isSelected, cellHasFocus);
+            }
+        });
+        this.list.setPrototypeCellValue(PROTOTYPE_ID);
+
         JScrollPane listScroller = new JScrollPane(list);
         listScroller.setPreferredSize(new Dimension(100, 140));
         listScroller.setBorder(BorderFactory.createLineBorder(new Color(180,180,180), 1));
@@ -106,6 +125,10 @@ public class ShapeListPanel extends JPanel {
         unmergeShapeButton.setBackground(new Color(235,235,235));
         unmergeShapeButton.setAlignmentX(Component.CENTER_ALIGNMENT);
 
+        instanceShapeButton = new JButton("Place instance");
+        instanceShapeButton.setBackground(new Color(235,235,235));
+        instanceShapeButton.setAlignmentX(Component.CENTER_ALIGNMENT);
+
         mirrorXShapeButton = new JButton("Mirror vertically");
         mirrorXShapeButton.setBackground(new Color(235,235,235));
         mirrorXShapeButton.setAlignmentX(Component.CENTER_ALIGNMENT);
@@ -128,6 +151,8 @@ public class ShapeListPanel extends JPanel {
         actionPanel.add(mergeShapeButton);
         actionPanel.add(Box.createRigidArea(new Dimension(0, 5)));
         actionPanel.add(unmergeShapeButton);
+        actionPanel.add(Box.createRigidArea(new Dimension(0, 5)));
+        actionPanel.add(instanceShapeButton);
 
         add(actionPanel, BorderLayout.CENTER);
 
@@ -164,161 +189,148 @@ public class ShapeListPanel extends JPanel {
         mergeShapeButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
 
-                List<String> names = list.getSelectedValuesList();
-                if(names.size() < 2) return;
+                List<Shape> shapes = getSelectedShapes();
+                if(shapes.size() < 2) return;
 
                 DrawingEditor editor = EditorFrame.getCurrentEditor().getDrawingEditor();
 
                 ShapeGroup sg = new ShapeGroup();
-                for (String name : names) {
-                    sg.addShape(shapeMap.get(name));
-                    editor.removeShape(shapeMap.get(name));
-                    removeShape(name);
-                }
-                editor.addShape(sg);
-                addShape(sg);
+                for (Shape shape : shapes) sg.addShape(shape);
+
+                editor.getHistory().perform(new ReplaceShapesEdit(editor, "Merge", shapes, Collections.<Shape>singletonList(sg)));
             }
         });
 
         unmergeShapeButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
 
-                List<String> names = list.getSelectedValuesList();
-                if(names.size() < 1) return;
+                List<Shape> groups = new ArrayList<Shape>();
+                List<Shape> shapes = new ArrayList<Shape>();
 
-                DrawingEditor editor = EditorFrame.getCurrentEditor().getDrawingEditor();
-
-                for (String name : names) {
-                    if(shapeMap.get(name) instanceof ShapeGroup) {
-                        for(Shape shape : ((ShapeGroup) shapeMap.get(name)).getShapes()) {
-                            editor.addShape(shape);
-                            addShape(shape);
-                        }
-                        editor.removeShape(shapeMap.get(name));
-                        removeShape(name);
+                for (Shape shape : getSelectedShapes()) {
+                    if(shape instanceof ShapeGroup) {
+                        groups.add(shape);
+                        shapes.addAll(((ShapeGroup) shape).copyShapes());
                     }
                 }
+                if(groups.size() < 1) return;
+
+                DrawingEditor editor = EditorFrame.getCurrentEditor().getDrawingEditor();
+                editor.getHistory().perform(new ReplaceShapesEdit(editor, "Unmerge", groups, shapes));
             }
         });
 
-        removeShapeButton.addActionListener(new ActionListener() {
+        instanceShapeButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
 
-                List<String> names = list.getSelectedValuesList();
-                if(names.size() < 1) return;
+                List<Shape> removed = new ArrayList<Shape>();
+                List<Shape> added = new ArrayList<Shape>();
 
-                DrawingEditor editor = EditorFrame.getCurrentEditor().getDrawingEditor();
+                for (Shape shape : getSelectedShapes()) {
+                    ShapeInstance instance;
+
+                    // un groupe devient le symbole de sa première instance
+                    if(shape instanceof ShapeGroup) {
+                        instance = new ShapeInstance((ShapeGroup) shape);
+                        removed.add(shape);
+                        added.add(instance);
+                    }
+                    else if(shape instanceof ShapeInstance) instance = (ShapeInstance) shape;
+                    else continue;
 
-                for (String name : names) {
-                    editor.removeShape(shapeMap.get(name));
-                    removeShape(name);
+                    added.add(instance.place(INSTANCE_OFFSET, INSTANCE_OFFSET));
                 }
+                if(added.size() < 1) return;
+
+                DrawingEditor editor = EditorFrame.getCurrentEditor().getDrawingEditor();
+                editor.getHistory().perform(new ReplaceShapesEdit(editor, "Place instance", removed, added));
             }
         });
 
-        mirrorXShapeButton.addActionListener(new ActionListener() {
+        removeShapeButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
 
-                List<String> names = list.getSelectedValuesList();
-                if(names.size() < 1) return;
+                List<Shape> shapes = getSelectedShapes();
+                if(shapes.size() < 1) return;
 
                 DrawingEditor editor = EditorFrame.getCurrentEditor().getDrawingEditor();
+                editor.getHistory().perform(new ReplaceShapesEdit(editor, "Remove", shapes, Collections.<Shape>emptyList()));
+            }
+        });
 
-                for (String name : names) shapeMap.get(name).mirrorX(shapeMap.get(name).getCenterX());
+        mirrorXShapeButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
 
-                editor.revalidate();
-                editor.repaint();
+                List<Shape> shapes = getSelectedShapes();
+                if(shapes.size() < 1) return;
 
+                DrawingEditor editor = EditorFrame.getCurrentEditor().getDrawingEditor();
+                editor.getHistory().perform(new MirrorShapesEdit(editor, shapes, true));
             }
         });
 
         mirrorYShapeButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
 
-                List<String> names = list.getSelectedValuesList();
-                if(names.size() < 1) return;
+                List<Shape> shapes = getSelectedShapes();
+                if(shapes.size() < 1) return;
 
                 DrawingEditor editor = EditorFrame.getCurrentEditor().getDrawingEditor();
-
-                for (String name : names) shapeMap.get(name).mirrorY(shapeMap.get(name).getCenterY());
-
-                editor.revalidate();
-                editor.repaint();
-
+                editor.getHistory().perform(new MirrorShapesEdit(editor, shapes, false));
             }
         });
 
         submitMoveButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
 
-                List<String> names = list.getSelectedValuesList();
-                if(names.size() < 1) return;
+                List<Shape> shapes = getSelectedShapes();
+                if(shapes.size() < 1) return;
 
                 DrawingEditor editor = EditorFrame.getCurrentEditor().getDrawingEditor();
 
                 int x = Integer.parseInt(dx.getText());
                 int y = Integer.parseInt(dy.getText());
 
-                for (String name : names) shapeMap.get(name).move(x, y);
-                editor.revalidate();
-                editor.repaint();
+                editor.getHistory().perform(new MoveShapesEdit(editor, shapes, x, y));
             }
         });
     }
 
-    /**
-     * Ajoute une forme à la liste de forme affichée dans le JPanel.
-     *
-     * @param s la forme à ajouter à la liste
-     */
-    public void addShape(Shape s) {
-
-        String shapeName = "Shape " + (++nbShapes);
-
-        shapeMap.put(shapeName, s);
-        shapeList.add(0, shapeName);
+    // Retourne les formes sélectionnées dans la liste, dans l'ordre de la liste.
+    private List<Shape> getSelectedShapes() {
+        int[] rows = list.getSelectedIndices();
 
-        this.revalidate();
-        this.repaint();
+        List<Shape> shapes = new ArrayList<Shape>(rows.length);
+        for (int row : rows) shapes.add(shapeList.getShape(row));
+        return shapes;
     }
 
     /**
-     * Renvoie la forme associée au nom entré en paramètre. Le nom de la forme
-     * peut être récupéré dans la liste affichée dans le JPanel.
+     * Affiche les formes du dessin entré en paramètre. Les formes reçoivent
+     * un nouvel identifiant, dans leur ordre de dessin, et la liste suit
+     * ensuite les modifications du dessin.
      *
-     * @param shapeName le nom de la forme à récupérer, présent dans la liste affichée.
-     * @return la forme associée au nom entré en paramètre.
+     * @param drawing le dessin dont les formes sont affichées
      */
-    public Shape getShape(String shapeName) {
-        return shapeMap.get(shapeName);
+    public void setDrawing(Drawing drawing) {
+        shapeList.setDrawing(drawing);
     }
 
     /**
-     * Supprime de la liste la forme associée au nom entré en paramètre. Le nom
-     * de la forme peut être récupéré dans la liste affichée dans le JPanel.
+     * Renvoie l'identifiant de la forme entrée en paramètre, affiché dans la
+     * liste. Une forme garde le même identifiant tant qu'elle existe.
      *
-     * @param shapeName le nom de la forme à supprimer, présent dans la liste affichée.
+     * @param s une forme du dessin affiché
+     * @return l'identifiant de la forme
      */
-    public void removeShape(String shapeName) {
-
-        shapeList.removeElement(shapeName);
-        shapeMap.remove(shapeName);
-
-        this.revalidate();
-        this.repaint();
-
+    public long getShapeId(Shape s) {
+        return shapeList.getId(s);
     }
 
     /**
      * Supprime tous les élements de la liste affichée dans le JPanel.
      */
     public void removeAll() {
-
-        this.shapeMap = new HashMap<String, Shape>();
-        this.nbShapes = 0;
-        this.shapeList.removeAllElements();
-
-        this.revalidate();
-        this.repaint();
+        shapeList.setDrawing(null);
     }
 }
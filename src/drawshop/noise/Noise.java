@@ -1,26 +1,158 @@
 package drawshop.noise;
 
-import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Cette classe permet de retourner des valeurs aléatoires.
  *
+ * <p>Chaque instance est une suite de valeurs déterminée par sa graine : la
+ * k-ième valeur de la suite est calculée directement à partir de la graine et
+ * de k (voir {@link #getNoise(long, long)}), comme dans SplittableRandom. Deux
+ * suites de même graine donnent donc toujours les mêmes valeurs.</p>
+ *
+ * <p>Une suite peut fournir des suites indépendantes, par exemple une par
+ * forme (voir {@link #stream(long)}) : des formes peuvent ainsi être créées en
+ * parallèle, et recevoir les mêmes valeurs quel que soit l'ordre dans lequel
+ * elles sont créées. Une instance ne doit être utilisée que par un seul thread.</p>
+ *
+ * <p>La méthode statique {@link #getNoise()} utilise une suite propre à chaque
+ * thread : les threads créant des formes ne se partagent aucun générateur.</p>
+ *
  * @author Evan Lajusticia
  * @author Pauline Rugliano
  *
  * @version 1.0
  */
 
-public class Noise {
+public final class Noise {
+
+	private static final double AMPLITUDE = 5;
+	private static final long GAMMA = 0x9e3779b97f4a7c15L; // écart entre deux graines successives
 
-	private static Random r=new Random();
+	// seule la création de la suite d'un thread modifie une valeur partagée
+	private static final AtomicLong SEEDS = new AtomicLong(mix(System.nanoTime()));
+
+	private static final ThreadLocal<Noise> CURRENT = new ThreadLocal<Noise>() {
+		protected Noise initialValue() { return new Noise(mix(SEEDS.addAndGet(GAMMA))); }
+	};
+
+	private final long seed;
+	private long index; // indice de la prochaine valeur de la suite
 
 	/**
+	 * Instancie la suite de valeurs de la graine entrée en paramètre.
 	 *
-	 * @return une valeur aléatoire comprise entre -5 et 5.
+	 * @param seed la graine de la suite
+	 */
+	public Noise(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 *
+	 * @return une valeur aléatoire comprise entre -5 et 5, tirée de la suite du thread courant.
 	 */
 	public static double getNoise() {
-		return 5-10*r.nextDouble();
+		return CURRENT.get().next();
+	}
+
+	/**
+	 *
+	 * @return la suite de valeurs propre au thread courant
+	 */
+	public static Noise current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Calcule une valeur d'une suite sans instancier la suite.
+	 *
+	 * @param seed la graine de la suite
+	 * @param k l'indice de la valeur dans la suite
+	 * @return la k-ième valeur de la suite de graine seed, comprise entre -5 et 5
+	 */
+	public static double getNoise(long seed, long k) {
+		return AMPLITUDE - 2*AMPLITUDE*toUnit(mix(seed + (k+1)*GAMMA));
+	}
+
+	/**
+	 *
+	 * @return la graine de la suite
+	 */
+	public long getSeed() { return seed; }
+
+	/**
+	 *
+	 * @return la valeur suivante de la suite, comprise entre -5 et 5
+	 */
+	public double next() {
+		return getNoise(seed, index++);
+	}
+
+	/**
+	 * Remplit le tableau entré en paramètre avec les valeurs suivantes de la suite.
+	 *
+	 * @param values le tableau à remplir
+	 */
+	public void fill(double[] values) {
+		fill(values, 0, values.length);
+	}
+
+	/**
+	 * Remplit une partie du tableau entré en paramètre avec les valeurs
+	 * suivantes de la suite.
+	 *
+	 * @param values le tableau à remplir
+	 * @param from l'indice de la première case à remplir
+	 * @param to l'indice suivant la dernière case à remplir
+	 */
+	public void fill(double[] values, int from, int to) {
+		for(int i = from; i < to; i++) values[i] = getNoise(seed, index++);
+	}
+
+	/**
+	 * Retourne la suite d'indice id dérivée de cette suite. Elle ne dépend que
+	 * de la graine de cette suite et de id, et non des valeurs déjà tirées :
+	 * la suite d'indice i peut par exemple servir à créer la i-ème forme d'un
+	 * dessin, quel que soit le thread qui la crée.
+	 *
+	 * @param id l'indice de la suite dérivée
+	 * @return une suite indépendante de cette suite et des autres suites dérivées
+	 */
+	public Noise stream(long id) {
+		return new Noise(mix(mix(seed) + (id+1)*GAMMA));
+	}
+
+	/**
+	 * Retourne une nouvelle suite, indépendante de celle-ci, par exemple pour
+	 * la confier à un autre thread. La graine de la nouvelle suite est tirée
+	 * de cette suite.
+	 *
+	 * @return une nouvelle suite
+	 */
+	public Noise split() {
+		return new Noise(nextSeed());
 	}
-}
 
+	/**
+	 * Tire de la suite une graine, par exemple celle d'une forme qui
+	 * recalcule ses déformations à partir de sa graine.
+	 *
+	 * @return une nouvelle graine
+	 */
+	public long nextSeed() {
+		return mix(mix(seed + (++index)*GAMMA));
+	}
+
+	// Convertit les 53 bits de poids fort en une valeur comprise entre 0 et 1.
+	private static double toUnit(long bits) {
+		return (bits >>> 11) * 0x1.0p-53;
+	}
+
+	// Mélange les bits de la valeur entrée en paramètre (fonction de SplitMix64).
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
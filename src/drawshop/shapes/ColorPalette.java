@@ -0,0 +1,96 @@
+package drawshop.shapes;
+
+import java.awt.*;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cette classe représente une palette de couleurs : chaque couleur différente
+ * n'y est présente qu'une fois, et est identifiée par son indice.
+ *
+ * <p>La palette permet aussi de ne conserver qu'une seule instance de chaque
+ * couleur : toutes les formes d'un dessin utilisant des couleurs égales peuvent
+ * ainsi partager le même objet Color (voir {@link #intern(Color)}).</p>
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ */
+public class ColorPalette implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final List<Color> colors;
+	private transient Map<Color, Integer> indexes;
+
+	/**
+	 * Instancie une palette vide.
+	 */
+	public ColorPalette() {
+		this.colors = new ArrayList<Color>();
+		this.indexes = new HashMap<Color, Integer>();
+	}
+
+	/**
+	 * Retourne l'indice de la couleur entrée en paramètre, en l'ajoutant à la
+	 * palette si elle n'y est pas encore.
+	 *
+	 * @param c la couleur recherchée
+	 * @return l'indice de la couleur dans la palette
+	 */
+	public int indexOf(Color c) {
+		Integer index = indexes.get(c);
+
+		if(index == null) {
+			index = colors.size();
+			colors.add(c);
+			indexes.put(c, index);
+		}
+
+		return index;
+	}
+
+	/**
+	 * Retourne l'instance de la palette égale à la couleur entrée en paramètre,
+	 * en ajoutant la couleur à la palette si elle n'y est pas encore.
+	 *
+	 * @param c la couleur à partager
+	 * @return la couleur de la palette égale à c
+	 */
+	public Color intern(Color c) {
+		return colors.get(indexOf(c));
+	}
+
+	/**
+	 *
+	 * @param index l'indice de la couleur
+	 * @return la couleur d'indice index
+	 */
+	public Color get(int index) { return colors.get(index); }
+
+	/**
+	 *
+	 * @return le nombre de couleurs de la palette
+	 */
+	public int size() { return colors.size(); }
+
+	/**
+	 *
+	 * @return les couleurs de la palette, dans l'ordre de leurs indices
+	 */
+	public List<Color> getColors() { return Collections.unmodifiableList(colors); }
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+
+		indexes = new HashMap<Color, Integer>();
+		for(int i = 0; i < colors.size(); i++) indexes.put(colors.get(i), i);
+	}
+}
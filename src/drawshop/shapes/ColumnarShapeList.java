@@ -0,0 +1,170 @@
+package drawshop.shapes;
+
+import java.awt.*;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Cette classe est une liste de formes stockées en colonnes : au lieu d'un
+ * objet par forme, chaque forme occupe une ligne de quelques tableaux
+ * primitifs (son type, l'indice de sa couleur dans une palette et le début de
+ * ses coordonnées), et toutes les coordonnées sont rangées à la suite dans un
+ * unique tableau de float.
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ *
+ * @see PackedShapeList
+ */
+public class ColumnarShapeList extends PackedShapeList {
+
+	private static final long serialVersionUID = 1L;
+
+	private byte[] types;
+	private int[] refs;
+	private int[] offsets; // début des coordonnées de la forme dans coords
+	private float[] coords;
+	private int coordCount;
+
+	/**
+	 * Instancie une liste vide.
+	 */
+	public ColumnarShapeList() {
+		this.types = new byte[16];
+		this.refs = new int[16];
+		this.offsets = new int[16];
+		this.coords = new float[64];
+	}
+
+	/**
+	 * Instancie une liste contenant une copie des formes entrées en paramètre.
+	 *
+	 * @param shapes les formes à copier dans la liste
+	 */
+	public ColumnarShapeList(Collection<? extends Shape> shapes) {
+		this();
+		addAll(shapes);
+		trimToSize();
+	}
+
+	// Instancie une liste vide partageant les colonnes entrées en paramètre, voir copyList().
+	private ColumnarShapeList(byte[] types, int[] refs, int[] offsets, float[] coords, int coordCount) {
+		this.types = types;
+		this.refs = refs;
+		this.offsets = offsets;
+		this.coords = coords;
+		this.coordCount = coordCount;
+	}
+
+	byte type(int i) { return types[i]; }
+
+	int ref(int i) { return refs[i]; }
+
+	void setRef(int i, int ref) { refs[i] = ref; }
+
+	void insertRow(int i, byte type, int ref) {
+		int stride = STRIDE[type];
+
+		if(size + 1 > types.length) {
+			int capacity = Math.max(size + 1, types.length*2);
+			types = Arrays.copyOf(types, capacity);
+			refs = Arrays.copyOf(refs, capacity);
+			offsets = Arrays.copyOf(offsets, capacity);
+		}
+
+		if(coordCount + stride > coords.length)
+			coords = Arrays.copyOf(coords, Math.max(coordCount + stride, coords.length*2));
+
+		int offset = i < size ? offsets[i] : coordCount;
+
+		System.arraycopy(types, i, types, i+1, size - i);
+		System.arraycopy(refs, i, refs, i+1, size - i);
+		System.arraycopy(offsets, i, offsets, i+1, size - i);
+		System.arraycopy(coords, offset, coords, offset + stride, coordCount - offset);
+
+		for(int row = i+1; row <= size; row++) offsets[row] += stride;
+
+		types[i] = type;
+		refs[i] = ref;
+		offsets[i] = offset;
+		coordCount += stride;
+	}
+
+	void deleteRow(int i) {
+		int stride = STRIDE[types[i]];
+		int offset = offsets[i];
+
+		System.arraycopy(coords, offset + stride, coords, offset, coordCount - offset - stride);
+		System.arraycopy(types, i+1, types, i, size - i - 1);
+		System.arraycopy(refs, i+1, refs, i, size - i - 1);
+		System.arraycopy(offsets, i+1, offsets, i, size - i - 1);
+
+		for(int row = i; row < size-1; row++) offsets[row] -= stride;
+
+		coordCount -= stride;
+	}
+
+	void compactRows(boolean[] removed) {
+		int row = 0, offset = 0;
+
+		for(int i = 0; i < size; i++) {
+			if(removed[i]) continue;
+
+			int stride = STRIDE[types[i]];
+			System.arraycopy(coords, offsets[i], coords, offset, stride);
+
+			types[row] = types[i];
+			refs[row] = refs[i];
+			offsets[row] = offset;
+
+			row++;
+			offset += stride;
+		}
+
+		coordCount = offset;
+	}
+
+	void clearRows() { coordCount = 0; }
+
+	void load(int i, Shape s, Color c) { loadShape(types[i], s, coords, offsets[i], c); }
+
+	void store(int i, Shape s) { storeShape(types[i], s, coords, offsets[i]); }
+
+	void translate(int i, int dx, int dy) {
+		byte[] axes = AXES[types[i]];
+		int offset = offsets[i];
+
+		for(int k = 0; k < axes.length; k++) {
+			if(axes[k] == X) coords[offset + k] += dx;
+			else if(axes[k] == Y) coords[offset + k] += dy;
+		}
+	}
+
+	PackedShapeList shareRows() {
+		return new ColumnarShapeList(types, refs, offsets, coords, coordCount);
+	}
+
+	void copyRows() {
+		types = types.clone();
+		refs = refs.clone();
+		offsets = offsets.clone();
+		coords = coords.clone();
+	}
+
+	public void trimToSize() {
+		compactObjects();
+		types = Arrays.copyOf(types, size);
+		refs = Arrays.copyOf(refs, size);
+		offsets = Arrays.copyOf(offsets, size);
+		coords = Arrays.copyOf(coords, coordCount);
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		trimToSize();
+		out.defaultWriteObject();
+	}
+}
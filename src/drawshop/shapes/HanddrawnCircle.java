@@ -4,6 +4,10 @@ import drawshop.noise.Noise;
 import drawshop.shapes.visitors.ShapeVisitor;
 
 import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * Cette classe permet de représenter un cercle fait à la main.
@@ -14,6 +18,9 @@ import java.awt.*;
  * @version 1.0
  */
 public class HanddrawnCircle implements Circle {
+
+	private static final long serialVersionUID = 1035708394306648388L;
+
 	private double cx, cy, height, width, rad;
 	private Color c;
 
@@ -26,14 +33,80 @@ public class HanddrawnCircle implements Circle {
 	 * @param c la couleur du perimètre du cercle
 	 */
 	public HanddrawnCircle(double cx, double cy, double rad, Color c) {
-		this.cx = cx+Noise.getNoise();
-		this.cy = cy+Noise.getNoise(); 
-		this.height = rad+Noise.getNoise();
-		this.width = rad+Noise.getNoise();
+		this(cx, cy, rad, c, Noise.current());
+	}
+
+	/**
+	 * Instancie un cercle dont les déformations sont tirées de la suite de
+	 * valeurs entrée en paramètre.
+	 *
+	 * @param cx la coordonnée x du centre du cercle
+	 * @param cy la coordonnée y du centre du cercle
+	 * @param rad le radius du cercle
+	 * @param c la couleur du perimètre du cercle
+	 * @param noise la suite de valeurs aléatoires à utiliser
+	 */
+	public HanddrawnCircle(double cx, double cy, double rad, Color c, Noise noise) {
+		this.cx = cx+noise.next();
+		this.cy = cy+noise.next();
+		this.height = rad+noise.next();
+		this.width = rad+noise.next();
 		this.rad = rad;
 		this.c = c;
 	}
 
+	// Instancie un cercle vide, destiné à être rempli par un ColumnarShapeList.
+	HanddrawnCircle() {}
+
+	/* Charge le cercle depuis les coordonnées d'une PackedShapeList, à partir de
+	 * l'indice offset : le centre déformé (cx, cy), les rayons déformés
+	 * vertical et horizontal (height, width), puis le rayon d'origine.
+	 */
+	void load(float[] coords, int offset, Color c) {
+		cx = coords[offset];
+		cy = coords[offset + 1];
+		height = coords[offset + 2];
+		width = coords[offset + 3];
+		rad = coords[offset + 4];
+		this.c = c;
+	}
+
+	// Écrit le centre, les deux rayons déformés et le rayon d'origine du cercle, dans l'ordre de load.
+	void store(float[] coords, int offset) {
+		coords[offset] = (float) cx;
+		coords[offset + 1] = (float) cy;
+		coords[offset + 2] = (float) height;
+		coords[offset + 3] = (float) width;
+		coords[offset + 4] = (float) rad;
+	}
+
+	// Lit les coordonnées du cercle dans un fichier .draw, dans l'ordre cx, cy, height, width, rad.
+	void read(DataInput in, Color c) throws IOException {
+		cx = in.readDouble();
+		cy = in.readDouble();
+		height = in.readDouble();
+		width = in.readDouble();
+		rad = in.readDouble();
+		this.c = c;
+	}
+
+	// Écrit les coordonnées du cercle dans un fichier .draw.
+	void write(DataOutput out) throws IOException {
+		out.writeDouble(cx);
+		out.writeDouble(cy);
+		out.writeDouble(height);
+		out.writeDouble(width);
+		out.writeDouble(rad);
+	}
+
+	// Retourne une copie indépendante du cercle.
+	HanddrawnCircle copy() {
+		HanddrawnCircle copy = new HanddrawnCircle();
+		copy.cx = cx; copy.cy = cy; copy.height = height; copy.width = width; copy.rad = rad;
+		copy.c = c;
+		return copy;
+	}
+
 	/**
 	 * Puisque le cercle n'est pas parfait, la hauteur peut être différente
 	 * de la largeur.
@@ -80,6 +153,10 @@ public class HanddrawnCircle implements Circle {
 	public double getCenterX() { return cx; }
 	public double getCenterY() { return cy; }
 
+	public Rectangle2D getBounds() {
+		return new Rectangle2D.Double(cx-rad, cy-rad, width*2, height*2);
+	}
+
 	public Shape toStandard() {
 		return new PerfectCircle(cx, cy, rad, c);
 	}
@@ -4,6 +4,10 @@ import drawshop.noise.Noise;
 import drawshop.shapes.visitors.ShapeVisitor;
 
 import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * Cette classe permet de représenter une ligne dessinée à main levée
@@ -14,6 +18,9 @@ import java.awt.*;
  * @version 1.0
  */
 public class HanddrawnLine implements Line {
+
+	private static final long serialVersionUID = -4702226194202375566L;
+
 	private double x0, y0, x1, y1, x2, y2;
 	private Color c;
 
@@ -28,13 +35,87 @@ public class HanddrawnLine implements Line {
 	 * @param c couleur de la ligne
 	 */
 	public HanddrawnLine(double x0, double y0, double x1, double y1, Color c) {
-		this.x0 = x0+Noise.getNoise(); this.y0 = y0+Noise.getNoise();
-		this.x1 = x1+Noise.getNoise(); this.y1 = y1+Noise.getNoise();
-		this.x2 = (x0+x1)/2 + Noise.getNoise();
-		this.y2 = (y0+y1)/2 + Noise.getNoise();
+		this(x0, y0, x1, y1, c, Noise.current());
+	}
+
+	/**
+	 * Ce constructeur permet de créer une ligne dont les déformations sont
+	 * tirées de la suite de valeurs entrée en paramètre
+	 *
+	 * @param x0 coordonnée x du premier point de la ligne
+	 * @param y0 coordonnée y du premier point de la ligne
+	 * @param x1 coordonnée x du second point de la ligne
+	 * @param y1 coordonnée y du second point de la ligne
+	 * @param c couleur de la ligne
+	 * @param noise la suite de valeurs aléatoires à utiliser
+	 */
+	public HanddrawnLine(double x0, double y0, double x1, double y1, Color c, Noise noise) {
+		double[] n = new double[6];
+		noise.fill(n);
+
+		this.x0 = x0+n[0]; this.y0 = y0+n[1];
+		this.x1 = x1+n[2]; this.y1 = y1+n[3];
+		this.x2 = (x0+x1)/2 + n[4];
+		this.y2 = (y0+y1)/2 + n[5];
 		this.c = c;
 	}
 
+	// Instancie une ligne vide, destinée à être remplie par un ColumnarShapeList.
+	HanddrawnLine() {}
+
+	/* Charge la ligne depuis les coordonnées d'une PackedShapeList, à partir de
+	 * l'indice offset : ses deux extrémités déformées, puis le point de
+	 * contrôle (x2, y2) de sa courbe, proche de son milieu.
+	 */
+	void load(float[] coords, int offset, Color c) {
+		x0 = coords[offset];
+		y0 = coords[offset + 1];
+		x1 = coords[offset + 2];
+		y1 = coords[offset + 3];
+		x2 = coords[offset + 4];
+		y2 = coords[offset + 5];
+		this.c = c;
+	}
+
+	// Écrit les extrémités puis le point de contrôle de la ligne, dans l'ordre de load.
+	void store(float[] coords, int offset) {
+		coords[offset] = (float) x0;
+		coords[offset + 1] = (float) y0;
+		coords[offset + 2] = (float) x1;
+		coords[offset + 3] = (float) y1;
+		coords[offset + 4] = (float) x2;
+		coords[offset + 5] = (float) y2;
+	}
+
+	// Lit les coordonnées de la ligne dans un fichier .draw, dans l'ordre x0, y0, x1, y1, x2, y2.
+	void read(DataInput in, Color c) throws IOException {
+		x0 = in.readDouble();
+		y0 = in.readDouble();
+		x1 = in.readDouble();
+		y1 = in.readDouble();
+		x2 = in.readDouble();
+		y2 = in.readDouble();
+		this.c = c;
+	}
+
+	// Écrit les coordonnées de la ligne dans un fichier .draw.
+	void write(DataOutput out) throws IOException {
+		out.writeDouble(x0);
+		out.writeDouble(y0);
+		out.writeDouble(x1);
+		out.writeDouble(y1);
+		out.writeDouble(x2);
+		out.writeDouble(y2);
+	}
+
+	// Retourne une copie indépendante de la ligne.
+	HanddrawnLine copy() {
+		HanddrawnLine copy = new HanddrawnLine();
+		copy.x0 = x0; copy.y0 = y0; copy.x1 = x1; copy.y1 = y1; copy.x2 = x2; copy.y2 = y2;
+		copy.c = c;
+		return copy;
+	}
+
 	public double getLength() {
 		double dx=Math.abs(x1-x0);
 		double dy=Math.abs(y1-y0);
@@ -115,6 +196,15 @@ public class HanddrawnLine implements Line {
 	}
 	public double getCenterY() { return y0 + (y1 - y0)/2; }
 
+	public Rectangle2D getBounds() {
+		double minX = QuadCurves.min(x0, x2, x1);
+		double minY = QuadCurves.min(y0, y2, y1);
+		double maxX = QuadCurves.max(x0, x2, x1);
+		double maxY = QuadCurves.max(y0, y2, y1);
+
+		return new Rectangle2D.Double(minX, minY, maxX-minX, maxY-minY);
+	}
+
 	public Shape toStandard() {
 		return new PerfectLine(x0, y0, x1, y1, c);
 	}
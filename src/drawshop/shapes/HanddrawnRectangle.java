@@ -4,22 +4,51 @@ import drawshop.noise.Noise;
 import drawshop.shapes.visitors.ShapeVisitor;
 
 import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * Cette classe permet de représenter un rectangle fait à la main.
  *
+ * <p>Un rectangle conserve les 16 coordonnées déformées de ses coins et des
+ * milieux de ses côtés. Il peut aussi, sur demande, ne conserver que ses
+ * coins de base et la graine de ses déformations (voir
+ * {@link #HanddrawnRectangle(double, double, double, double, Color, long)}).
+ * Ses coordonnées sont alors recalculées à chaque utilisation à partir de la
+ * graine (voir {@link Noise#getNoise(long, long)}), et sont identiques à
+ * celles d'un rectangle créé avec la suite de valeurs de même graine. Le
+ * rectangle occupe ainsi environ trois fois moins de mémoire, et de place
+ * dans un fichier .draw, mais chaque lecture de ses coordonnées, lors du
+ * dessin comme de la recherche des formes, recalcule ses déformations.</p>
+ *
  * @author Evan Lajusticia
  * @author Pauline Rugliano
  *
  * @version 1.0
  */
 public class HanddrawnRectangle implements Rectangle {
-	private double[] x;
+
+	private static final long serialVersionUID = 8053969342761114501L;
+
+	// ordre des coins et des milieux des côtés après un miroir, comme dans mirrorX et mirrorY
+	private static final int[] MIRROR_X = { 1, 0, 3, 2 };
+	private static final int[] MIRROR_MIDX = { 0, 3, 2, 1 };
+	private static final int[] MIRROR_Y = { 3, 2, 1, 0 };
+	private static final int[] MIRROR_MIDY = { 2, 1, 0, 3 };
+
+	private double[] x; // null lorsque le rectangle ne conserve que sa graine
 	private double[] y;
 	private double[] midx;
 	private double[] midy;
 	private Color c;
 
+	// coins de base du rectangle déplacés et inversés, lorsque le rectangle ne conserve que sa graine
+	private double x0, y0, x1, y1;
+	private long seed;
+	private boolean flippedX, flippedY; // les déformations sont de signe opposé après un miroir
+
 	/**
 	 * Instancie un rectangle fait à la main.
 	 *
@@ -30,43 +59,202 @@ public class HanddrawnRectangle implements Rectangle {
 	 * @param c la couleur du perimètre du rectangle
 	 */
 	public HanddrawnRectangle(double x0, double y0, double x1, double y1, Color c) {
+		this(x0, y0, x1, y1, c, Noise.current());
+	}
+
+	/**
+	 * Instancie un rectangle fait à la main ne conservant que ses coins de
+	 * base et la graine de ses déformations. Il est identique au rectangle
+	 * créé avec la suite de valeurs {@code new Noise(seed)}.
+	 *
+	 * @param x0 la coordonnée x du coin supérieur gauche du rectangle
+	 * @param y0 la coordonnée y du coin supérieur gauche du rectangle
+	 * @param x1 la coordonnée x du coin inférieur droit du rectangle
+	 * @param y1 la coordonnée y du coin inférieur droit du rectangle
+	 * @param c la couleur du perimètre du rectangle
+	 * @param seed la graine des déformations du rectangle
+	 */
+	public HanddrawnRectangle(double x0, double y0, double x1, double y1, Color c, long seed) {
+		this.x0 = x0;
+		this.y0 = y0;
+		this.x1 = x1;
+		this.y1 = y1;
+		this.seed = seed;
+		this.c = c;
+	}
+
+	/**
+	 * Instancie un rectangle fait à la main dont les déformations sont tirées
+	 * de la suite de valeurs entrée en paramètre.
+	 *
+	 * @param x0 la coordonnée x du coin supérieur gauche du rectangle
+	 * @param y0 la coordonnée y du coin supérieur gauche du rectangle
+	 * @param x1 la coordonnée x du coin inférieur droit du rectangle
+	 * @param y1 la coordonnée y du coin inférieur droit du rectangle
+	 * @param c la couleur du perimètre du rectangle
+	 * @param noise la suite de valeurs aléatoires à utiliser
+	 */
+	public HanddrawnRectangle(double x0, double y0, double x1, double y1, Color c, Noise noise) {
 		
 		this.x = new double[4];
 		this.y = new double[4];
 		this.midx = new double[4];
 		this.midy = new double[4];
+
+		double[] n = new double[16];
+		noise.fill(n);
 		
-		this.x[0] = x0+Noise.getNoise(); 
-		this.y[0] = y0+Noise.getNoise();
+		this.x[0] = x0+n[0]; 
+		this.y[0] = y0+n[1];
 		
-		this.x[1] = x0+Noise.getNoise(); 
-		this.y[1] = y1+Noise.getNoise();
+		this.x[1] = x0+n[2]; 
+		this.y[1] = y1+n[3];
 		
-		this.x[2] = x1+Noise.getNoise();
-		this.y[2] = y1+Noise.getNoise();
+		this.x[2] = x1+n[4];
+		this.y[2] = y1+n[5];
 		
-		this.x[3] = x1+Noise.getNoise(); 
-		this.y[3] = y0+Noise.getNoise();
+		this.x[3] = x1+n[6]; 
+		this.y[3] = y0+n[7];
 		
-		this.midx[0] = (x[0]+x[1])/2 + Noise.getNoise();
-		this.midy[0] = (y[0]+y[1])/2 + Noise.getNoise();
+		this.midx[0] = (x[0]+x[1])/2 + n[8];
+		this.midy[0] = (y[0]+y[1])/2 + n[9];
 		
-		this.midx[1] = (x[1]+x[2])/2 + Noise.getNoise();
-		this.midy[1] = (y[1]+y[2])/2 + Noise.getNoise();
+		this.midx[1] = (x[1]+x[2])/2 + n[10];
+		this.midy[1] = (y[1]+y[2])/2 + n[11];
 		
-		this.midx[2] = (x[2]+x[3])/2 + Noise.getNoise();
-		this.midy[2] = (y[2]+y[3])/2 + Noise.getNoise();
+		this.midx[2] = (x[2]+x[3])/2 + n[12];
+		this.midy[2] = (y[2]+y[3])/2 + n[13];
 		
-		this.midx[3] = (x[3]+x[0])/2 + Noise.getNoise();
-		this.midy[3] = (y[3]+y[0])/2 + Noise.getNoise();
+		this.midx[3] = (x[3]+x[0])/2 + n[14];
+		this.midy[3] = (y[3]+y[0])/2 + n[15];
 		
 		this.c = c;
 
 	}
+
+	// Instancie un rectangle vide, destiné à être rempli par un ColumnarShapeList.
+	HanddrawnRectangle() {
+		this.x = new double[4];
+		this.y = new double[4];
+		this.midx = new double[4];
+		this.midy = new double[4];
+	}
+
+	/* Charge le rectangle depuis les coordonnées d'une PackedShapeList, à partir de
+	 * l'indice offset : les x puis les y de ses quatre coins déformés, puis
+	 * les x et les y des points de contrôle des milieux de ses côtés.
+	 */
+	void load(float[] coords, int offset, Color c) {
+		for(int i = 0; i < 4; i++) {
+			x[i] = coords[offset + i];
+			y[i] = coords[offset + 4 + i];
+			midx[i] = coords[offset + 8 + i];
+			midy[i] = coords[offset + 12 + i];
+		}
+		this.c = c;
+	}
+
+	// Écrit les 16 coordonnées du rectangle dans l'ordre de load, calculées depuis la graine s'il est compact.
+	void store(float[] coords, int offset) {
+		for(int i = 0; i < 4; i++) {
+			coords[offset + i] = (float) getX(i);
+			coords[offset + 4 + i] = (float) getY(i);
+			coords[offset + 8 + i] = (float) getMidX(i);
+			coords[offset + 12 + i] = (float) getMidY(i);
+		}
+	}
+
+	/* Lit les coordonnées du rectangle dans un fichier .draw : les coins puis
+	 * les milieux des côtés, dans le même ordre que load.
+	 */
+	void read(DataInput in, Color c) throws IOException {
+		if(x == null) {
+			x = new double[4]; y = new double[4];
+			midx = new double[4]; midy = new double[4];
+		}
+
+		for(int i = 0; i < 4; i++) x[i] = in.readDouble();
+		for(int i = 0; i < 4; i++) y[i] = in.readDouble();
+		for(int i = 0; i < 4; i++) midx[i] = in.readDouble();
+		for(int i = 0; i < 4; i++) midy[i] = in.readDouble();
+		this.c = c;
+	}
+
+	/* Lit dans un fichier .draw un rectangle ne conservant que sa graine :
+	 * x0, y0, x1, y1, la graine, puis les miroirs.
+	 */
+	void readCompact(DataInput in, Color c) throws IOException {
+		x = y = midx = midy = null;
+		x0 = in.readDouble();
+		y0 = in.readDouble();
+		x1 = in.readDouble();
+		y1 = in.readDouble();
+		seed = in.readLong();
+
+		byte flips = in.readByte();
+		flippedX = (flips & 1) != 0;
+		flippedY = (flips & 2) != 0;
+		this.c = c;
+	}
+
+	// Écrit le rectangle dans un fichier .draw, tel qu'il est lu par read ou readCompact.
+	void write(DataOutput out) throws IOException {
+		if(x == null) {
+			out.writeDouble(x0);
+			out.writeDouble(y0);
+			out.writeDouble(x1);
+			out.writeDouble(y1);
+			out.writeLong(seed);
+			out.writeByte((flippedX ? 1 : 0) | (flippedY ? 2 : 0));
+			return;
+		}
+
+		for(int i = 0; i < 4; i++) out.writeDouble(x[i]);
+		for(int i = 0; i < 4; i++) out.writeDouble(y[i]);
+		for(int i = 0; i < 4; i++) out.writeDouble(midx[i]);
+		for(int i = 0; i < 4; i++) out.writeDouble(midy[i]);
+	}
+
+	// Retourne une copie indépendante du rectangle.
+	HanddrawnRectangle copy() {
+		if(x == null) {
+			HanddrawnRectangle copy = new HanddrawnRectangle(x0, y0, x1, y1, c, seed);
+			copy.flippedX = flippedX;
+			copy.flippedY = flippedY;
+			return copy;
+		}
+
+		HanddrawnRectangle copy = new HanddrawnRectangle();
+		copy.x = x.clone(); copy.y = y.clone(); copy.midx = midx.clone(); copy.midy = midy.clone();
+		copy.c = c;
+		return copy;
+	}
+
+	/**
+	 *
+	 * @return true si le rectangle ne conserve que ses coins de base et la
+	 * graine de ses déformations
+	 */
+	public boolean isCompact() { return x == null; }
+
+	/* Les coordonnées d'un rectangle ne conservant que sa graine, avant les
+	 * échanges dus aux miroirs. Les déformations sont les valeurs de la suite
+	 * de la graine, dans l'ordre du constructeur : les coins, puis les milieux
+	 * des côtés, en alternant x et y.
+	 */
+
+	private double noise(int k, boolean flipped) {
+		double n = Noise.getNoise(seed, k);
+		return flipped ? -n : n;
+	}
+
+	private double cornerX(int i) { return (i < 2 ? x0 : x1) + noise(2*i, flippedX); }
+
+	private double cornerY(int i) { return (i == 0 || i == 3 ? y0 : y1) + noise(2*i + 1, flippedY); }
 	
 	// Méthodes propres à Rectangle :
-	public double getWidth() { return Math.abs(midx[2]-midx[0]); }
-	public double getHeight() { return Math.abs(midy[2]-midy[0]); }
+	public double getWidth() { return Math.abs(getMidX(2)-getMidX(0)); }
+	public double getHeight() { return Math.abs(getMidY(2)-getMidY(0)); }
 
 	/**
 	 * Retourne la coordonnée x du coin dont l'indice est entré en paramètre.
@@ -78,8 +266,10 @@ public class HanddrawnRectangle implements Rectangle {
 	 * @return la coordonnée x du coin dont l'indice est entré en paramètre.
 	 */
 	public double getX(int pos) {
-		if(pos < 0 || pos >= x.length) return -1;
-		return x[pos];
+		if(pos < 0 || pos >= 4) return -1;
+		if(x != null) return x[pos];
+
+		return cornerX(flippedX ? MIRROR_X[pos] : pos);
 	}
 
 	/**
@@ -92,8 +282,10 @@ public class HanddrawnRectangle implements Rectangle {
 	 * @return la coordonnée y du coin dont l'indice est entré en paramètre.
 	 */
 	public double getY(int pos) {
-		if(pos < 0 || pos >= y.length) return -1;
-		return y[pos];
+		if(pos < 0 || pos >= 4) return -1;
+		if(y != null) return y[pos];
+
+		return cornerY(flippedY ? MIRROR_Y[pos] : pos);
 	}
 
 	/**
@@ -106,8 +298,11 @@ public class HanddrawnRectangle implements Rectangle {
 	 * @return la coordonnée x du milieu de la ligne dont l'indice est entré en paramètre.
 	 */
 	public double getMidX(int pos) {
-		if(pos < 0 || pos >= midx.length) return -1;
-		return midx[pos];		
+		if(pos < 0 || pos >= 4) return -1;
+		if(midx != null) return midx[pos];
+
+		int i = flippedX ? MIRROR_MIDX[pos] : pos;
+		return (cornerX(i) + cornerX((i+1)%4))/2 + noise(8 + 2*i, flippedX);
 	}
 
 	/**
@@ -120,8 +315,11 @@ public class HanddrawnRectangle implements Rectangle {
 	 * @return la coordonnée y du milieu de la ligne dont l'indice est entré en paramètre.
 	 */
 	public double getMidY(int pos) {
-		if(pos < 0 || pos >= midy.length) return -1;
-		return midy[pos];	
+		if(pos < 0 || pos >= 4) return -1;
+		if(midy != null) return midy[pos];
+
+		int i = flippedY ? MIRROR_MIDY[pos] : pos;
+		return (cornerY(i) + cornerY((i+1)%4))/2 + noise(9 + 2*i, flippedY);
 	}
 
 	/**
@@ -136,6 +334,12 @@ public class HanddrawnRectangle implements Rectangle {
 	}
 	
 	public void move(int dx, int dy) {
+
+		if(x == null) {
+			x0 += dx; x1 += dx;
+			y0 += dy; y1 += dy;
+			return;
+		}
 		
 		for(int xp = 0; xp < x.length; xp++) x[xp] += dx;
 		for(int yp = 0; yp < x.length; yp++) y[yp] += dy;
@@ -146,70 +350,84 @@ public class HanddrawnRectangle implements Rectangle {
 	}
 
 	public void mirrorX(double x) {
-
-		double[] newX = new  double[4];
-		double[] newMidX = new  double[4];
-
-		for(int i = 0; i < 4; i++)
-			newX[i] = x + (x - this.x[i]);
-
-		for(int i = 0; i < 4; i++)
-			newMidX[i] = x + (x - this.midx[i]);
-
-		double tempX = newX[0];
-		newX[0] = newX[1];
-		newX[1] = tempX;
-
-		tempX = newX[2];
-		newX[2] = newX[3];
-		newX[3] = tempX;
-
-		tempX = newMidX[1];
-		newMidX[1] = newMidX[3];
-		newMidX[3] = tempX;
-
-		this.x = newX;
-		this.midx = newMidX;
+		if(this.x == null) {
+			x0 = x + (x - x0);
+			x1 = x + (x - x1);
+			flippedX = !flippedX;
+			return;
+		}
+
+		for(int i = 0; i < 4; i++) {
+			this.x[i] = x + (x - this.x[i]);
+			this.midx[i] = x + (x - this.midx[i]);
+		}
+
+		swap(this.x, 0, 1);
+		swap(this.x, 2, 3);
+		swap(this.midx, 1, 3);
 	}
 
 	public void mirrorY(double y) {
-		double[] newY = new  double[4];
-		double[] newMidY = new  double[4];
+		if(this.y == null) {
+			y0 = y + (y - y0);
+			y1 = y + (y - y1);
+			flippedY = !flippedY;
+			return;
+		}
+
+		for(int i = 0; i < 4; i++) {
+			this.y[i] = y + (y - this.y[i]);
+			this.midy[i] = y + (y - this.midy[i]);
+		}
+
+		swap(this.y, 0, 3);
+		swap(this.y, 2, 1);
+		swap(this.midy, 0, 2);
+	}
 
-		for(int i = 0; i < 4; i++)
-			newY[i] = y + (y - this.y[i]);
+	// Échange les valeurs d'indices i et j du tableau.
+	private static void swap(double[] a, int i, int j) {
+		double temp = a[i];
+		a[i] = a[j];
+		a[j] = temp;
+	}
 
-		for(int i = 0; i < 4; i++)
-			newMidY[i] = y + (y - this.midy[i]);
+	public double getCenterX() {
+		double x0 = getX(0);
+		return x0 + (getX(3) - x0)/2;
+	}
+	public double getCenterY() {
+		double y0 = getY(0);
+		return y0 + (getY(2) - y0)/2;
+	}
 
-		double tempY = newY[0];
-		newY[0] = newY[3];
-		newY[3] = tempY;
+	public Rectangle2D getBounds() {
+		double[] x = new double[4], y = new double[4], midx = new double[4], midy = new double[4];
 
-		tempY = newY[2];
-		newY[2] = newY[1];
-		newY[1] = tempY;
+		for(int i = 0; i < 4; i++) {
+			x[i] = getX(i); y[i] = getY(i);
+			midx[i] = getMidX(i); midy[i] = getMidY(i);
+		}
 
-		tempY = newMidY[0];
-		newMidY[0] = newMidY[2];
-		newMidY[2] = tempY;
+		double minX = x[0], minY = y[0], maxX = x[0], maxY = y[0];
 
-		this.y = newY;
-		this.midy = newMidY;
-	}
+		// chaque côté est une courbe allant du coin i au coin i+1
+		for(int i = 0; i < 4; i++) {
+			int j = (i+1)%4;
+			minX = Math.min(minX, QuadCurves.min(x[i], midx[i], x[j]));
+			minY = Math.min(minY, QuadCurves.min(y[i], midy[i], y[j]));
+			maxX = Math.max(maxX, QuadCurves.max(x[i], midx[i], x[j]));
+			maxY = Math.max(maxY, QuadCurves.max(y[i], midy[i], y[j]));
+		}
 
-	public double getCenterX() {
-		return x[0] + (x[3] - x[0])/2;
-	}
-	public double getCenterY() {
-		return y[0] + (y[2] - y[0])/2;
+		return new Rectangle2D.Double(minX, minY, maxX-minX, maxY-minY);
 	}
 
 	public Shape toStandard() {
 
 
 
-		return new PerfectRectangle(x[0], y[0], x[2], y[2], c);
+		return new PerfectRectangle(getX(0), getY(0), getX(2), getY(2), c);
 	}
 
 }
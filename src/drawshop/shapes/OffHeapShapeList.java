@@ -0,0 +1,180 @@
+package drawshop.shapes;
+
+import java.awt.*;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Collection;
+
+/**
+ * Cette classe est une liste de formes stockées hors du tas de la JVM, dans un
+ * ByteBuffer direct. Chaque forme y occupe un enregistrement de taille fixe :
+ * son type, l'indice de sa couleur dans une palette, puis la place pour
+ * {@value #MAX_STRIDE} coordonnées en float.
+ *
+ * <p>Les coordonnées des formes n'étant pas des objets, le ramasse-miettes n'a
+ * pas à les parcourir : son travail ne dépend plus du nombre de formes de la
+ * liste, mais seulement des vues créées et des formes qui ne sont pas des
+ * formes simples.</p>
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ *
+ * @see PackedShapeList
+ */
+public class OffHeapShapeList extends PackedShapeList {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int HEADER = 2; // type et référence, en nombre de valeurs de 4 octets
+	private static final int RECORD = (HEADER + MAX_STRIDE)*4;
+	private static final int CHUNK_SIZE = 64*1024;
+
+	// Les coordonnées d'un enregistrement, copiées pour être lues ou écrites, propres à chaque thread.
+	private static final ThreadLocal<float[]> ROW = new ThreadLocal<float[]>() {
+		protected float[] initialValue() { return new float[MAX_STRIDE]; }
+	};
+
+	private transient ByteBuffer buffer;
+	private transient FloatBuffer floats;
+
+	/**
+	 * Instancie une liste vide.
+	 */
+	public OffHeapShapeList() {
+		allocate(16);
+	}
+
+	/**
+	 * Instancie une liste contenant une copie des formes entrées en paramètre.
+	 *
+	 * @param shapes les formes à copier dans la liste
+	 */
+	public OffHeapShapeList(Collection<? extends Shape> shapes) {
+		allocate(Math.max(shapes.size(), 16));
+		addAll(shapes);
+	}
+
+	// Instancie une liste vide partageant le buffer entré en paramètre, voir copyList().
+	private OffHeapShapeList(ByteBuffer buffer, FloatBuffer floats) {
+		this.buffer = buffer;
+		this.floats = floats;
+	}
+
+	// Remplace le buffer par un buffer pouvant contenir le nombre de formes entré en paramètre.
+	private void allocate(int capacity) {
+		ByteBuffer previous = buffer;
+
+		buffer = ByteBuffer.allocateDirect(capacity*RECORD);
+		floats = buffer.asFloatBuffer();
+
+		if(previous != null) buffer.put(0, previous, 0, size*RECORD);
+	}
+
+	byte type(int i) { return (byte) buffer.getInt(i*RECORD); }
+
+	int ref(int i) { return buffer.getInt(i*RECORD + 4); }
+
+	void setRef(int i, int ref) { buffer.putInt(i*RECORD + 4, ref); }
+
+	void insertRow(int i, byte type, int ref) {
+		if((size + 1)*RECORD > buffer.capacity()) allocate(Math.max(size + 1, size*2));
+
+		buffer.put((i+1)*RECORD, buffer, i*RECORD, (size - i)*RECORD);
+		buffer.putInt(i*RECORD, type);
+		buffer.putInt(i*RECORD + 4, ref);
+	}
+
+	void deleteRow(int i) {
+		buffer.put(i*RECORD, buffer, (i+1)*RECORD, (size - i - 1)*RECORD);
+	}
+
+	void compactRows(boolean[] removed) {
+		int row = 0;
+
+		for(int i = 0; i < size; i++) {
+			if(removed[i]) continue;
+
+			if(row != i) buffer.put(row*RECORD, buffer, i*RECORD, RECORD);
+			row++;
+		}
+	}
+
+	void clearRows() {}
+
+	void load(int i, Shape s, Color c) {
+		byte type = type(i);
+		float[] row = ROW.get();
+
+		floats.get(i*(HEADER + MAX_STRIDE) + HEADER, row, 0, STRIDE[type]);
+		loadShape(type, s, row, 0, c);
+	}
+
+	void store(int i, Shape s) {
+		byte type = type(i);
+		float[] row = ROW.get();
+
+		storeShape(type, s, row, 0);
+		floats.put(i*(HEADER + MAX_STRIDE) + HEADER, row, 0, STRIDE[type]);
+	}
+
+	void translate(int i, int dx, int dy) {
+		byte[] axes = AXES[type(i)];
+		int offset = i*(HEADER + MAX_STRIDE) + HEADER;
+
+		for(int k = 0; k < axes.length; k++) {
+			if(axes[k] == X) floats.put(offset + k, floats.get(offset + k) + dx);
+			else if(axes[k] == Y) floats.put(offset + k, floats.get(offset + k) + dy);
+		}
+	}
+
+	PackedShapeList shareRows() {
+		return new OffHeapShapeList(buffer, floats);
+	}
+
+	// les enregistrements sont lus par positions absolues, le buffer peut être lu par plusieurs listes
+	void copyRows() {
+		allocate(buffer.capacity()/RECORD);
+	}
+
+	public void trimToSize() {
+		compactObjects();
+		allocate(Math.max(size, 1));
+	}
+
+	// Les enregistrements sont écrits tels quels, par blocs.
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+
+		byte[] chunk = new byte[CHUNK_SIZE];
+		int length = size*RECORD;
+
+		for(int position = 0; position < length; position += CHUNK_SIZE) {
+			int n = Math.min(CHUNK_SIZE, length - position);
+			buffer.get(position, chunk, 0, n);
+			out.write(chunk, 0, n);
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+
+		int count = size;
+		size = 0;
+		allocate(Math.max(count, 16));
+		size = count;
+
+		byte[] chunk = new byte[CHUNK_SIZE];
+		int length = size*RECORD;
+
+		for(int position = 0; position < length; position += CHUNK_SIZE) {
+			int n = Math.min(CHUNK_SIZE, length - position);
+			in.readFully(chunk, 0, n);
+			buffer.put(position, chunk, 0, n);
+		}
+	}
+}
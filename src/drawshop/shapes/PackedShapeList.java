@@ -0,0 +1,730 @@
+package drawshop.shapes;
+
+import drawshop.shapes.visitors.ShapeVisitor;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Cette classe est la base des listes de formes stockant les formes simples
+ * (cercles, lignes et rectangles) sous forme de valeurs primitives plutôt que
+ * d'objets. Chaque forme occupe une ligne composée de son type, d'une
+ * référence (l'indice de sa couleur dans une ColorPalette) et de ses coordonnées,
+ * dont le rangement dépend de la sous-classe.
+ *
+ * <p>Les formes fournies par la liste sont des vues sur ces lignes : une vue
+ * est créée lors du premier accès à une forme, puis toujours réutilisée pour
+ * cette forme. Les modifications d'une vue sont écrites dans la liste.
+ * Une forme ajoutée à la liste y est copiée : c'est la vue, et non la forme
+ * d'origine, qui en fait ensuite partie. Une vue retirée de la liste conserve
+ * une copie de sa forme et reste utilisable. Ajoutée de nouveau à une liste,
+ * elle y est rattachée : la forme garde ainsi la même vue lorsque son retrait
+ * est annulé.</p>
+ *
+ * <p>Les autres formes, comme les groupes, sont conservées telles quelles :
+ * leur référence est alors leur indice dans une liste d'objets.</p>
+ *
+ * <p>Une copie de la liste (voir {@link #copyList()}) partage ses lignes avec
+ * elle : les lignes ne sont copiées que lors de la première modification de
+ * l'une des deux listes, en une copie des tableaux ou du buffer.</p>
+ *
+ * <p>Les coordonnées étant stockées en float, elles sont arrondies au centième
+ * de pixel près pour des dessins de moins de 100 000 pixels de côté.</p>
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ *
+ * @see ShapeGroup#setStorage(ShapeStorage)
+ */
+public abstract class PackedShapeList extends AbstractList<Shape> implements RandomAccess, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	static final byte OBJECT = 0;
+	static final byte HANDDRAWN_CIRCLE = 1;
+	static final byte HANDDRAWN_LINE = 2;
+	static final byte HANDDRAWN_RECTANGLE = 3;
+	static final byte PERFECT_CIRCLE = 4;
+	static final byte PERFECT_LINE = 5;
+	static final byte PERFECT_RECTANGLE = 6;
+
+	// nombre de coordonnées de chaque type de forme
+	static final int[] STRIDE = { 0, 5, 6, 16, 3, 4, 4 };
+	static final int MAX_STRIDE = 16;
+
+	// axe de chaque coordonnée de chaque type de forme, 0 pour les tailles
+	static final byte X = 1, Y = 2;
+	static final byte[][] AXES = {
+			{},
+			{ X, Y, 0, 0, 0 },
+			{ X, Y, X, Y, X, Y },
+			{ X, X, X, X, Y, Y, Y, Y, X, X, X, X, Y, Y, Y, Y },
+			{ X, Y, 0 },
+			{ X, Y, X, Y },
+			{ X, Y, X, Y }
+	};
+
+	/* Les objets temporaires retournés par peek, un par type de forme. Ils sont
+	 * propres à chaque thread, afin que plusieurs threads puissent parcourir
+	 * les mêmes listes, comme lors d'un rendu par tuiles.
+	 */
+	private static final ThreadLocal<Shape[]> FLYWEIGHTS = new ThreadLocal<Shape[]>() {
+		protected Shape[] initialValue() {
+			return new Shape[] {
+					null,
+					new HanddrawnCircle(),
+					new HanddrawnLine(),
+					new HanddrawnRectangle(),
+					new PerfectCircle(),
+					new PerfectLine(),
+					new PerfectRectangle()
+			};
+		}
+	};
+
+	int size;
+
+	private ColorPalette palette;
+	private List<Shape> objects;
+
+	private transient View[] views;
+	private transient int freeObjects; // emplacements libérés dans objects, réutilisés par add
+	private transient boolean shared; // lignes partagées avec une copie, copiées avant la prochaine modification
+
+	PackedShapeList() {
+		this.palette = new ColorPalette();
+		this.objects = new ArrayList<Shape>();
+	}
+
+	// Rangement des lignes, propre à chaque sous-classe.
+
+	// Retourne le type de la forme d'indice i.
+	abstract byte type(int i);
+
+	// Retourne la référence de la forme d'indice i.
+	abstract int ref(int i);
+
+	// Remplace la référence de la forme d'indice i.
+	abstract void setRef(int i, int ref);
+
+	/* Insère une ligne à l'indice i, en décalant les suivantes. Les coordonnées
+	 * de la ligne sont ensuite écrites par store.
+	 */
+	abstract void insertRow(int i, byte type, int ref);
+
+	// Retire la ligne d'indice i, en décalant les suivantes.
+	abstract void deleteRow(int i);
+
+	// Retire en un seul parcours les lignes marquées, en conservant l'ordre des autres.
+	abstract void compactRows(boolean[] removed);
+
+	// Retire toutes les lignes.
+	abstract void clearRows();
+
+	// Charge les coordonnées de la forme d'indice i dans la forme entrée en paramètre, du même type.
+	abstract void load(int i, Shape s, Color c);
+
+	// Écrit les coordonnées de la forme entrée en paramètre dans la ligne d'indice i, du même type.
+	abstract void store(int i, Shape s);
+
+	// Décale les coordonnées de la forme d'indice i, stockée en colonnes.
+	abstract void translate(int i, int dx, int dy);
+
+	// Retourne une liste vide du même type, partageant les lignes de celle-ci.
+	abstract PackedShapeList shareRows();
+
+	// Remplace les lignes par une copie, afin de les modifier sans modifier les listes qui les partagent.
+	abstract void copyRows();
+
+	/**
+	 * Réduit la mémoire occupée par la liste au strict nécessaire.
+	 */
+	public abstract void trimToSize();
+
+	public int size() { return size; }
+
+	/**
+	 * Retourne la vue de la forme d'indice i, ou la forme elle même si elle
+	 * n'est pas une forme simple.
+	 *
+	 * @param i l'indice de la forme
+	 * @return la forme d'indice i
+	 */
+	public Shape get(int i) {
+		checkIndex(i, size);
+
+		if(type(i) == OBJECT) return objects.get(ref(i));
+
+		if(views == null) views = new View[Math.max(size, 16)];
+		if(views[i] == null) views[i] = new View(this, i);
+
+		return views[i];
+	}
+
+	/**
+	 * Copie la forme entrée en paramètre dans la liste, à l'indice i. Si la
+	 * forme est une vue retirée d'une liste, la vue est rattachée à la ligne
+	 * insérée et représente de nouveau la forme.
+	 *
+	 * @param i l'indice auquel insérer la forme
+	 * @param s la forme à insérer
+	 */
+	public void add(int i, Shape s) {
+		checkIndex(i, size + 1);
+
+		View reattached = null;
+
+		if(s instanceof View) {
+			View view = (View) s;
+			if(view.owner == null) reattached = view;
+			s = view.copy();
+		}
+
+		byte type = typeOf(s);
+		int ref;
+
+		unshare();
+
+		if(type == OBJECT && freeObjects > 0) {
+			ref = objects.indexOf(null);
+			objects.set(ref, s);
+			freeObjects--;
+		}
+		else if(type == OBJECT) {
+			ref = objects.size();
+			objects.add(s);
+		}
+		else ref = palette.indexOf(colorOf(s));
+
+		insertRow(i, type, ref);
+
+		if(views != null) {
+			if(size + 1 > views.length) views = Arrays.copyOf(views, Math.max(size + 1, views.length*2));
+
+			System.arraycopy(views, i, views, i+1, size - i);
+			views[i] = null;
+
+			for(int row = i+1; row <= size; row++)
+				if(views[row] != null) views[row].row = row;
+		}
+
+		size++;
+
+		if(type != OBJECT) store(i, s);
+
+		if(reattached != null) {
+			if(views == null) views = new View[Math.max(size, 16)];
+
+			views[i] = reattached;
+			reattached.attach(this, i);
+		}
+
+		modCount++;
+	}
+
+	/**
+	 * Retire la forme d'indice i de la liste. Si la forme possède une vue, la
+	 * vue conserve une copie de la forme et reste utilisable.
+	 *
+	 * @param i l'indice de la forme à retirer
+	 * @return la forme retirée
+	 */
+	public Shape remove(int i) {
+		checkIndex(i, size);
+		unshare();
+
+		Shape removed;
+
+		if(type(i) == OBJECT) {
+			removed = objects.get(ref(i));
+			objects.set(ref(i), null);
+			freeObjects++;
+		}
+		else if(views != null && views[i] != null) {
+			removed = views[i];
+			views[i].detach();
+		}
+		else removed = copy(i);
+
+		deleteRow(i);
+
+		if(views != null) {
+			System.arraycopy(views, i+1, views, i, size - i - 1);
+			views[size-1] = null;
+
+			for(int row = i; row < size-1; row++)
+				if(views[row] != null) views[row].row = row;
+		}
+
+		size--;
+		modCount++;
+
+		return removed;
+	}
+
+	public boolean remove(Object o) {
+		int i = indexOf(o);
+		if(i < 0) return false;
+
+		remove(i);
+		return true;
+	}
+
+	/**
+	 * Retire les formes de la collection entrée en paramètre en un seul
+	 * parcours de la liste, en conservant l'ordre des autres formes. Comme
+	 * pour remove(int), les vues retirées restent utilisables.
+	 *
+	 * @param c les formes à retirer
+	 * @return true si la liste a été modifiée
+	 */
+	public boolean removeAll(Collection<?> c) {
+		Set<Object> targets = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>(c.size()));
+		targets.addAll(c);
+
+		boolean[] removed = new boolean[size];
+		int count = 0;
+
+		// une forme simple sans vue ne peut pas faire partie de la collection
+		for(int i = 0; i < size; i++) {
+			boolean object = type(i) == OBJECT;
+			Object s = object ? objects.get(ref(i)) : views == null ? null : views[i];
+			if(s == null || !targets.contains(s)) continue;
+
+			if(object) {
+				objects.set(ref(i), null);
+				freeObjects++;
+			}
+			else views[i].detach();
+
+			removed[i] = true;
+			count++;
+		}
+
+		if(count == 0) return false;
+
+		unshare();
+		compactRows(removed);
+
+		if(views != null) {
+			int row = 0;
+
+			for(int i = 0; i < size; i++) {
+				if(removed[i]) continue;
+
+				views[row] = views[i];
+				if(views[row] != null) views[row].row = row;
+				row++;
+			}
+
+			Arrays.fill(views, row, size, null);
+		}
+
+		size -= count;
+		modCount++;
+
+		return true;
+	}
+
+	public void clear() {
+		if(views != null)
+			for(int i = 0; i < size; i++)
+				if(views[i] != null) views[i].detach();
+
+		views = null;
+		objects.clear();
+		freeObjects = 0;
+		unshare();
+		clearRows();
+		size = 0;
+		modCount++;
+	}
+
+	/**
+	 * Les vues sont recherchées directement par leur indice, sans parcourir
+	 * la liste.
+	 */
+	public int indexOf(Object o) {
+		if(o instanceof View) {
+			View view = (View) o;
+			return view.owner == this ? view.row : -1;
+		}
+
+		for(int i = 0; i < size; i++)
+			if(type(i) == OBJECT && objects.get(ref(i)).equals(o)) return i;
+
+		return -1;
+	}
+
+	public int lastIndexOf(Object o) {
+		if(o instanceof View) return indexOf(o);
+
+		for(int i = size-1; i >= 0; i--)
+			if(type(i) == OBJECT && objects.get(ref(i)).equals(o)) return i;
+
+		return -1;
+	}
+
+	public boolean contains(Object o) { return indexOf(o) >= 0; }
+
+	/**
+	 * Effectue l'action du ShapeVisitor sur toutes les formes de la liste,
+	 * sans créer de vue : les formes visitées sont des objets temporaires,
+	 * réutilisés d'une forme à l'autre, qui ne doivent donc pas être conservés
+	 * par le visitor.
+	 *
+	 * @param sv ShapeVisitor qui détermine l'action à effectuer
+	 */
+	public void acceptVisitor(ShapeVisitor sv) {
+		for(int i = 0; i < size; i++) peek(i).acceptVisitor(sv);
+	}
+
+	/**
+	 * Effectue l'action du ShapeVisitor sur les formes de la liste dont le
+	 * rectangle englobant touche la zone entrée en paramètre et dont la largeur
+	 * ou la hauteur atteint la taille minimale. Comme pour acceptVisitor(ShapeVisitor),
+	 * les formes visitées sont des objets temporaires.
+	 *
+	 * @param sv ShapeVisitor qui détermine l'action à effectuer
+	 * @param area la zone concernée
+	 * @param minSize la taille en dessous de laquelle les formes sont ignorées
+	 */
+	public void acceptVisitor(ShapeVisitor sv, Rectangle2D area, double minSize) {
+		for(int i = 0; i < size; i++) {
+			Shape s = peek(i);
+			if(touches(s, area, minSize)) s.acceptVisitor(sv);
+		}
+	}
+
+	/**
+	 * Retourne les formes de la liste dont le rectangle englobant touche la
+	 * zone entrée en paramètre et dont la largeur ou la hauteur atteint la
+	 * taille minimale, dans leur ordre. Les lignes sont lues sans créer de vue :
+	 * seules les formes retournées en reçoivent une.
+	 *
+	 * @param area la zone recherchée
+	 * @param minSize la taille en dessous de laquelle les formes sont ignorées
+	 * @return la liste des formes touchant la zone
+	 */
+	public List<Shape> getShapesIn(Rectangle2D area, double minSize) {
+		List<Shape> found = new ArrayList<Shape>();
+
+		for(int i = 0; i < size; i++)
+			if(touches(peek(i), area, minSize)) found.add(get(i));
+
+		return found;
+	}
+
+	/**
+	 * Déplace toutes les formes de la liste en modifiant directement leurs
+	 * coordonnées.
+	 *
+	 * @param dx le décalage sur l'axe X
+	 * @param dy le décalage sur l'axe Y
+	 */
+	public void move(int dx, int dy) {
+		unshare();
+
+		for(int i = 0; i < size; i++) {
+			if(type(i) == OBJECT) objects.get(ref(i)).move(dx, dy);
+			else translate(i, dx, dy);
+		}
+	}
+
+	/**
+	 * Inverse toutes les formes de la liste sur l'axe X, sans créer de vue.
+	 *
+	 * @param x position de l'axe
+	 */
+	public void mirrorX(double x) {
+		unshare();
+
+		for(int i = 0; i < size; i++) {
+			Shape s = peek(i);
+			s.mirrorX(x);
+			if(type(i) != OBJECT) store(i, s);
+		}
+	}
+
+	/**
+	 * Inverse toutes les formes de la liste sur l'axe Y, sans créer de vue.
+	 *
+	 * @param y position de l'axe
+	 */
+	public void mirrorY(double y) {
+		unshare();
+
+		for(int i = 0; i < size; i++) {
+			Shape s = peek(i);
+			s.mirrorY(y);
+			if(type(i) != OBJECT) store(i, s);
+		}
+	}
+
+	/* Retourne la forme d'indice i chargée dans l'objet temporaire de son type,
+	 * ou la forme elle même si elle n'est pas une forme simple. L'objet
+	 * retourné n'est valide que jusqu'au prochain appel.
+	 */
+	Shape peek(int i) {
+		byte type = type(i);
+		if(type == OBJECT) return objects.get(ref(i));
+
+		Shape s = FLYWEIGHTS.get()[type];
+		load(i, s, palette.get(ref(i)));
+		return s;
+	}
+
+	/* Retire de la liste d'objets les emplacements libérés par les retraits,
+	 * en mettant à jour les références des lignes concernées.
+	 */
+	void compactObjects() {
+		if(freeObjects == 0) return;
+
+		int[] moved = new int[objects.size()];
+		int next = 0;
+
+		for(int k = 0; k < objects.size(); k++) {
+			Shape s = objects.get(k);
+			if(s == null) continue;
+
+			moved[k] = next;
+			objects.set(next++, s);
+		}
+
+		objects.subList(next, objects.size()).clear();
+		freeObjects = 0;
+		unshare();
+
+		for(int i = 0; i < size; i++)
+			if(type(i) == OBJECT) setRef(i, moved[ref(i)]);
+	}
+
+	/**
+	 * Retourne une copie de la liste, qui peut être modifiée sans modifier
+	 * celle-ci, et inversement. Les lignes des formes simples sont partagées
+	 * jusqu'à la première modification de l'une des deux listes : la copie
+	 * ne coûte que celle des autres formes et de la palette.
+	 *
+	 * @return une copie de la liste, du même type
+	 */
+	public PackedShapeList copyList() {
+		PackedShapeList copy = copyObjects();
+		copy.shared = shared = true;
+		return copy;
+	}
+
+	/* Retourne une copie de la liste ne partageant pas ses lignes. Contrairement
+	 * à copyList(), la liste n'est pas modifiée : la copie peut être faite par
+	 * un autre thread que celui modifiant la liste.
+	 */
+	PackedShapeList copyDetached() {
+		PackedShapeList copy = copyObjects();
+		copy.copyRows();
+		return copy;
+	}
+
+	// Retourne une liste partageant les lignes de celle-ci, avec une copie de sa palette et de ses autres formes.
+	private PackedShapeList copyObjects() {
+		PackedShapeList copy = shareRows();
+
+		for(Color c : palette.getColors()) copy.palette.indexOf(c);
+		for(Shape s : objects) copy.objects.add(s == null ? null : Shapes.copyOf(s));
+
+		copy.freeObjects = freeObjects;
+		copy.size = size;
+
+		return copy;
+	}
+
+	// Copie les lignes partagées avec une autre liste avant leur première modification.
+	void unshare() {
+		if(!shared) return;
+
+		copyRows();
+		shared = false;
+	}
+
+	// Retourne une copie indépendante de la forme d'indice i.
+	Shape copy(int i) {
+		Shape s;
+
+		switch(type(i)) {
+			case HANDDRAWN_CIRCLE: s = new HanddrawnCircle(); break;
+			case HANDDRAWN_LINE: s = new HanddrawnLine(); break;
+			case HANDDRAWN_RECTANGLE: s = new HanddrawnRectangle(); break;
+			case PERFECT_CIRCLE: s = new PerfectCircle(); break;
+			case PERFECT_LINE: s = new PerfectLine(); break;
+			case PERFECT_RECTANGLE: s = new PerfectRectangle(); break;
+			default: return objects.get(ref(i));
+		}
+
+		load(i, s, palette.get(ref(i)));
+		return s;
+	}
+
+	// Charge dans la forme entrée en paramètre les coordonnées lues à partir de l'indice offset.
+	static void loadShape(byte type, Shape s, float[] coords, int offset, Color c) {
+		switch(type) {
+			case HANDDRAWN_CIRCLE: ((HanddrawnCircle) s).load(coords, offset, c); break;
+			case HANDDRAWN_LINE: ((HanddrawnLine) s).load(coords, offset, c); break;
+			case HANDDRAWN_RECTANGLE: ((HanddrawnRectangle) s).load(coords, offset, c); break;
+			case PERFECT_CIRCLE: ((PerfectCircle) s).load(coords, offset, c); break;
+			case PERFECT_LINE: ((PerfectLine) s).load(coords, offset, c); break;
+			case PERFECT_RECTANGLE: ((PerfectRectangle) s).load(coords, offset, c); break;
+			default: break;
+		}
+	}
+
+	// Écrit les coordonnées de la forme entrée en paramètre à partir de l'indice offset.
+	static void storeShape(byte type, Shape s, float[] coords, int offset) {
+		switch(type) {
+			case HANDDRAWN_CIRCLE: ((HanddrawnCircle) s).store(coords, offset); break;
+			case HANDDRAWN_LINE: ((HanddrawnLine) s).store(coords, offset); break;
+			case HANDDRAWN_RECTANGLE: ((HanddrawnRectangle) s).store(coords, offset); break;
+			case PERFECT_CIRCLE: ((PerfectCircle) s).store(coords, offset); break;
+			case PERFECT_LINE: ((PerfectLine) s).store(coords, offset); break;
+			case PERFECT_RECTANGLE: ((PerfectRectangle) s).store(coords, offset); break;
+			default: break;
+		}
+	}
+
+	// Les sous-classes des formes simples sont conservées telles quelles.
+	static byte typeOf(Shape s) {
+		Class<?> c = s.getClass();
+
+		if(c == HanddrawnCircle.class) return HANDDRAWN_CIRCLE;
+		if(c == HanddrawnLine.class) return HANDDRAWN_LINE;
+		if(c == HanddrawnRectangle.class) return HANDDRAWN_RECTANGLE;
+		if(c == PerfectCircle.class) return PERFECT_CIRCLE;
+		if(c == PerfectLine.class) return PERFECT_LINE;
+		if(c == PerfectRectangle.class) return PERFECT_RECTANGLE;
+
+		return OBJECT;
+	}
+
+	// Retourne la couleur d'une forme simple.
+	static Color colorOf(Shape s) {
+		if(s instanceof HanddrawnCircle) return ((HanddrawnCircle) s).getColor();
+		if(s instanceof HanddrawnLine) return ((HanddrawnLine) s).getColor();
+		if(s instanceof HanddrawnRectangle) return ((HanddrawnRectangle) s).getColor();
+		if(s instanceof PerfectCircle) return ((PerfectCircle) s).getColor();
+		if(s instanceof PerfectLine) return ((PerfectLine) s).getColor();
+		return ((PerfectRectangle) s).getColor();
+	}
+
+	// Les emplacements libérés de la liste d'objets ne sont pas enregistrés.
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		compactObjects();
+		out.defaultWriteObject();
+	}
+
+	// Retourne une copie de la forme représentée si s est une vue sur une liste, s sinon.
+	static Shape unwrap(Shape s) {
+		return s instanceof View ? ((View) s).copy() : s;
+	}
+
+	// Indique si le rectangle englobant de la forme touche la zone et atteint la taille minimale.
+	private static boolean touches(Shape s, Rectangle2D area, double minSize) {
+		Rectangle2D b = s.getBounds();
+
+		return b.getMaxX() >= area.getMinX() && b.getMinX() <= area.getMaxX()
+				&& b.getMaxY() >= area.getMinY() && b.getMinY() <= area.getMaxY()
+				&& (b.getWidth() >= minSize || b.getHeight() >= minSize);
+	}
+
+	private static void checkIndex(int i, int size) {
+		if(i < 0 || i >= size) throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+	}
+
+	/* Une vue sur une forme de la liste. Chaque accès à la forme la recharge
+	 * depuis la liste, et chaque modification y est écrite. Une fois retirée
+	 * de la liste, la vue travaille sur une copie de la forme.
+	 */
+	private static final class View implements Shape {
+
+		private static final long serialVersionUID = 1L;
+
+		private PackedShapeList owner;
+		private int row;
+		private Shape detached;
+
+		private View(PackedShapeList owner, int row) {
+			this.owner = owner;
+			this.row = row;
+		}
+
+		private void detach() {
+			detached = owner.copy(row);
+			owner = null;
+			row = -1;
+		}
+
+		// Rattache la vue retirée à la ligne d'indice row, qui contient déjà sa forme.
+		private void attach(PackedShapeList owner, int row) {
+			this.owner = owner;
+			this.row = row;
+			this.detached = null;
+		}
+
+		private Shape copy() {
+			return detached != null ? detached : owner.copy(row);
+		}
+
+		// Retourne la forme chargée dans l'objet temporaire de la liste, pour une lecture ou une modification immédiate.
+		private Shape peek() {
+			return detached != null ? detached : owner.peek(row);
+		}
+
+		public void acceptVisitor(ShapeVisitor sv) { copy().acceptVisitor(sv); }
+
+		public void move(int dx, int dy) {
+			Shape s = peek();
+			s.move(dx, dy);
+			write(s);
+		}
+
+		public void mirrorX(double x) {
+			Shape s = peek();
+			s.mirrorX(x);
+			write(s);
+		}
+
+		public void mirrorY(double y) {
+			Shape s = peek();
+			s.mirrorY(y);
+			write(s);
+		}
+
+		// Écrit dans la liste la forme modifiée, chargée par peek.
+		private void write(Shape s) {
+			if(owner == null) return;
+
+			owner.unshare();
+			owner.store(row, s);
+		}
+
+		public double getCenterX() { return peek().getCenterX(); }
+		public double getCenterY() { return peek().getCenterY(); }
+
+		public Rectangle2D getBounds() { return peek().getBounds(); }
+
+		public Shape toStandard() { return copy().toStandard(); }
+
+		// une vue est enregistrée comme la forme qu'elle représente
+		private Object writeReplace() { return copy(); }
+	}
+}
@@ -3,6 +3,10 @@ package drawshop.shapes;
 import drawshop.shapes.visitors.ShapeVisitor;
 
 import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * Cette classe permet de représenter un cercle parfait.
@@ -13,6 +17,9 @@ import java.awt.*;
  * @version 1.0
  */
 public class PerfectCircle implements Circle, PerfectShape {
+
+	private static final long serialVersionUID = -2648822537961988675L;
+
 	private double cx, cy, rad;
 	private Color c;
 
@@ -28,6 +35,49 @@ public class PerfectCircle implements Circle, PerfectShape {
 		this.cx = cx; this.cy = cy; this.rad = rad;
 		this.c = c;
 	}
+
+	// Instancie un cercle vide, destiné à être rempli par un ColumnarShapeList.
+	PerfectCircle() {}
+
+	/* Charge le cercle depuis les coordonnées d'une PackedShapeList, à partir de
+	 * l'indice offset : son centre (cx, cy) puis son rayon.
+	 */
+	void load(float[] coords, int offset, Color c) {
+		cx = coords[offset];
+		cy = coords[offset + 1];
+		rad = coords[offset + 2];
+		this.c = c;
+	}
+
+	// Écrit le centre puis le rayon du cercle.
+	void store(float[] coords, int offset) {
+		coords[offset] = (float) cx;
+		coords[offset + 1] = (float) cy;
+		coords[offset + 2] = (float) rad;
+	}
+
+	// Lit les coordonnées du cercle dans un fichier .draw, dans l'ordre cx, cy, rad.
+	void read(DataInput in, Color c) throws IOException {
+		cx = in.readDouble();
+		cy = in.readDouble();
+		rad = in.readDouble();
+		this.c = c;
+	}
+
+	// Écrit les coordonnées du cercle dans un fichier .draw.
+	void write(DataOutput out) throws IOException {
+		out.writeDouble(cx);
+		out.writeDouble(cy);
+		out.writeDouble(rad);
+	}
+
+	// Retourne une copie indépendante du cercle.
+	PerfectCircle copy() {
+		PerfectCircle copy = new PerfectCircle();
+		copy.cx = cx; copy.cy = cy; copy.rad = rad;
+		copy.c = c;
+		return copy;
+	}
 	
 	public double getRadius() { return rad; }
 
@@ -55,6 +105,10 @@ public class PerfectCircle implements Circle, PerfectShape {
 	public double getCenterX() { return cx; }
 	public double getCenterY() { return cy; }
 
+	public Rectangle2D getBounds() {
+		return new Rectangle2D.Double(cx-rad, cy-rad, rad*2, rad*2);
+	}
+
 	public double getArea() {
 		return Math.PI*rad*rad;
 	}
@@ -4,6 +4,10 @@ package drawshop.shapes;
 import drawshop.shapes.visitors.ShapeVisitor;
 
 import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * Cette classe permet de représenter une ligne parfaite.
@@ -14,6 +18,9 @@ import java.awt.*;
  * @version 1.0
  */
 public class PerfectLine implements Line, PerfectShape {
+
+	private static final long serialVersionUID = 7594483246920294950L;
+
 	private double x0, y0, x1, y1;
 	private Color c;
 
@@ -33,6 +40,53 @@ public class PerfectLine implements Line, PerfectShape {
 		this.c = c;
 	}
 
+	// Instancie une ligne vide, destinée à être remplie par un ColumnarShapeList.
+	PerfectLine() {}
+
+	/* Charge la ligne depuis les coordonnées d'une PackedShapeList, à partir de
+	 * l'indice offset : ses deux extrémités (x0, y0) et (x1, y1).
+	 */
+	void load(float[] coords, int offset, Color c) {
+		x0 = coords[offset];
+		y0 = coords[offset + 1];
+		x1 = coords[offset + 2];
+		y1 = coords[offset + 3];
+		this.c = c;
+	}
+
+	// Écrit les deux extrémités de la ligne.
+	void store(float[] coords, int offset) {
+		coords[offset] = (float) x0;
+		coords[offset + 1] = (float) y0;
+		coords[offset + 2] = (float) x1;
+		coords[offset + 3] = (float) y1;
+	}
+
+	// Lit les coordonnées de la ligne dans un fichier .draw, dans l'ordre x0, y0, x1, y1.
+	void read(DataInput in, Color c) throws IOException {
+		x0 = in.readDouble();
+		y0 = in.readDouble();
+		x1 = in.readDouble();
+		y1 = in.readDouble();
+		this.c = c;
+	}
+
+	// Écrit les coordonnées de la ligne dans un fichier .draw.
+	void write(DataOutput out) throws IOException {
+		out.writeDouble(x0);
+		out.writeDouble(y0);
+		out.writeDouble(x1);
+		out.writeDouble(y1);
+	}
+
+	// Retourne une copie indépendante de la ligne.
+	PerfectLine copy() {
+		PerfectLine copy = new PerfectLine();
+		copy.x0 = x0; copy.y0 = y0; copy.x1 = x1; copy.y1 = y1;
+		copy.c = c;
+		return copy;
+	}
+
 	public double getLength() {
 		double dx=Math.abs(x1-x0);
 		double dy=Math.abs(y1-y0);
@@ -94,6 +148,10 @@ public class PerfectLine implements Line, PerfectShape {
 	public double getCenterX() { return x0 + (x1 - x0)/2; }
 	public double getCenterY() { return y0 + (y1 - y0)/2; }
 
+	public Rectangle2D getBounds() {
+		return new Rectangle2D.Double(Math.min(x0, x1), Math.min(y0, y1), Math.abs(x1-x0), Math.abs(y1-y0));
+	}
+
 	public double getArea() { return 0; }
 	public Shape toStandard() { return this; }
 
@@ -3,6 +3,10 @@ package drawshop.shapes;
 import drawshop.shapes.visitors.ShapeVisitor;
 
 import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * Cette classe permet de représenter un rectangle parfait.
@@ -14,6 +18,9 @@ import java.awt.*;
  */
 
 public class PerfectRectangle implements Rectangle, PerfectShape {
+
+	private static final long serialVersionUID = 7014626371776767142L;
+
 	private double x0, y0, x1, y1;
 	private Color c;
 
@@ -33,6 +40,54 @@ public class PerfectRectangle implements Rectangle, PerfectShape {
 		this.c = c;
 	}
 
+	// Instancie un rectangle vide, destiné à être rempli par un ColumnarShapeList.
+	PerfectRectangle() {}
+
+	/* Charge le rectangle depuis les coordonnées d'une PackedShapeList, à partir de
+	 * l'indice offset : son coin supérieur gauche (x0, y0) puis son coin
+	 * inférieur droit (x1, y1).
+	 */
+	void load(float[] coords, int offset, Color c) {
+		x0 = coords[offset];
+		y0 = coords[offset + 1];
+		x1 = coords[offset + 2];
+		y1 = coords[offset + 3];
+		this.c = c;
+	}
+
+	// Écrit les coins supérieur gauche et inférieur droit du rectangle.
+	void store(float[] coords, int offset) {
+		coords[offset] = (float) x0;
+		coords[offset + 1] = (float) y0;
+		coords[offset + 2] = (float) x1;
+		coords[offset + 3] = (float) y1;
+	}
+
+	// Lit les coordonnées du rectangle dans un fichier .draw, dans l'ordre x0, y0, x1, y1.
+	void read(DataInput in, Color c) throws IOException {
+		x0 = in.readDouble();
+		y0 = in.readDouble();
+		x1 = in.readDouble();
+		y1 = in.readDouble();
+		this.c = c;
+	}
+
+	// Écrit les coordonnées du rectangle dans un fichier .draw.
+	void write(DataOutput out) throws IOException {
+		out.writeDouble(x0);
+		out.writeDouble(y0);
+		out.writeDouble(x1);
+		out.writeDouble(y1);
+	}
+
+	// Retourne une copie indépendante du rectangle.
+	PerfectRectangle copy() {
+		PerfectRectangle copy = new PerfectRectangle();
+		copy.x0 = x0; copy.y0 = y0; copy.x1 = x1; copy.y1 = y1;
+		copy.c = c;
+		return copy;
+	}
+
 	public double getWidth() { return Math.abs(x1-x0); }
 
 	public double getHeight() { return Math.abs(y1-y0); }
@@ -96,6 +151,10 @@ public class PerfectRectangle implements Rectangle, PerfectShape {
 	public double getCenterX() { return x0 + (x1 - x0)/2; }
 	public double getCenterY() { return y0 + (y1 - y0)/2; }
 
+	public Rectangle2D getBounds() {
+		return new Rectangle2D.Double(Math.min(x0, x1), Math.min(y0, y1), Math.abs(x1-x0), Math.abs(y1-y0));
+	}
+
 	public double getArea() {
 		return (x1-x0)*(y1-y0);
 	}
@@ -0,0 +1,55 @@
+package drawshop.shapes;
+
+/**
+ * Cette classe regroupe des calculs sur les courbes de Bézier quadratiques
+ * utilisées pour dessiner les formes faites à la main.
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ */
+final class QuadCurves {
+
+	private QuadCurves() {}
+
+	/**
+	 * Retourne la plus petite valeur prise sur un axe par une courbe de Bézier
+	 * quadratique, à partir des coordonnées de ses points sur cet axe.
+	 *
+	 * @param p0 la coordonnée du premier point de la courbe
+	 * @param p1 la coordonnée du point de contrôle de la courbe
+	 * @param p2 la coordonnée du dernier point de la courbe
+	 * @return la plus petite valeur prise par la courbe sur l'axe
+	 */
+	static double min(double p0, double p1, double p2) {
+		return Math.min(Math.min(p0, p2), extremum(p0, p1, p2));
+	}
+
+	/**
+	 * Retourne la plus grande valeur prise sur un axe par une courbe de Bézier
+	 * quadratique, à partir des coordonnées de ses points sur cet axe.
+	 *
+	 * @param p0 la coordonnée du premier point de la courbe
+	 * @param p1 la coordonnée du point de contrôle de la courbe
+	 * @param p2 la coordonnée du dernier point de la courbe
+	 * @return la plus grande valeur prise par la courbe sur l'axe
+	 */
+	static double max(double p0, double p1, double p2) {
+		return Math.max(Math.max(p0, p2), extremum(p0, p1, p2));
+	}
+
+	/* Retourne la valeur de la courbe là où sa dérivée s'annule, ou la valeur
+	 * du premier point si ce n'est pas le cas entre les deux extrémités.
+	 */
+	private static double extremum(double p0, double p1, double p2) {
+		double d = p0 - 2*p1 + p2;
+		if(d == 0) return p0;
+
+		double t = (p0 - p1)/d;
+		if(t <= 0 || t >= 1) return p0;
+
+		double u = 1 - t;
+		return u*u*p0 + 2*u*t*p1 + t*t*p2;
+	}
+}
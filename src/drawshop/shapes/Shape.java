@@ -2,6 +2,7 @@ package drawshop.shapes;
 
 import drawshop.shapes.visitors.ShapeVisitor;
 
+import java.awt.geom.Rectangle2D;
 import java.io.Serializable;
 
 /**
@@ -59,6 +60,14 @@ public interface Shape extends Serializable {
 	 */
 	public double getCenterY();
 
+	/**
+	 * Le rectangle retourné contient entièrement la Shape telle qu'elle est
+	 * dessinée par le ShapeDrawingVisitor (sans tenir compte de l'épaisseur du trait).
+	 *
+	 * @return le rectangle englobant la Shape
+	 */
+	public Rectangle2D getBounds();
+
 	/**
 	 *
 	 * @return la Shape dessinée de façon Parfaite
@@ -2,12 +2,35 @@ package drawshop.shapes;
 
 import drawshop.shapes.visitors.ShapeVisitor;
 
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Cette classe représente un groupement de plusieurs Shape
  *
+ * <p>Le rectangle englobant et le centre du groupe sont mis en cache. Ils sont
+ * mis à jour lors de l'ajout, du retrait, du déplacement ou du miroir d'une forme
+ * du groupe. Les formes du groupe doivent donc être modifiées à travers les
+ * méthodes du groupe (voir {@link #moveShape(Shape, int, int)}).</p>
+ *
+ * <p>Déplacer ou inverser le groupe ne modifie pas ses formes : le groupe
+ * conserve un placement (voir {@link ShapeTransform}), appliqué lors du dessin
+ * et du calcul du rectangle englobant et du centre. Le placement n'est appliqué
+ * aux formes que lorsqu'elles sont de nouveau utilisées une par une, par
+ * exemple avec getShapes() (voir {@link #applyTransform()}).</p>
+ *
+ * <p>Les formes du groupe peuvent être stockées en colonnes, ou hors du tas de
+ * la JVM, afin de réduire la mémoire utilisée par les groupes contenant un
+ * grand nombre de formes (voir {@link #setStorage(ShapeStorage)}).</p>
+ *
  * @author Evan Lajusticia
  * @author Pauline Rugliano
  *
@@ -16,7 +39,16 @@ import java.util.List;
 
 public class ShapeGroup implements Shape {
 
+	private static final long serialVersionUID = 8583084796403072426L;
+
 	private List<Shape> shapes;
+	private ShapeTransform transform; // placement en attente des formes, null s'il n'y en a pas
+
+	// le cache est exprimé dans le repère des formes, sans le placement en attente
+	private transient Rectangle2D bounds;
+	private transient boolean centerCached;
+	private transient double centerX, centerY;
+	private transient ShapeInstance view; // vue dessinée tant que le placement en attente ne change pas
 
 	/**
 	 * Ce constructeur permet de créer un ShapeGroup avec une
@@ -25,14 +57,65 @@ public class ShapeGroup implements Shape {
 	 * @param shapes la liste des Shape à intégrer au nouveau ShapeGroup
 	 */
 	public ShapeGroup(List<Shape> shapes) {
-		this.shapes = new ArrayList<Shape>(shapes);
+		this.shapes = createList(new ArrayList<Shape>(shapes));
 	}
 
 	/**
 	 * Ce constructeur permet de créer un ShapeGroup vide
 	 */
 	public ShapeGroup() {
-		this.shapes = new ArrayList<Shape>();
+		this.shapes = createList(new ArrayList<Shape>());
+	}
+
+	/* Instancie une vue sur les formes du groupe entré en paramètre, sans son
+	 * placement. La vue partage la liste des formes du groupe et son rectangle
+	 * englobant, elle ne sert qu'à dessiner le groupe.
+	 */
+	private ShapeGroup(ShapeGroup group) {
+		this.shapes = group.shapes;
+		this.bounds = group.localBounds();
+	}
+
+	/**
+	 * Crée la liste dans laquelle le groupe stocke ses formes sous forme
+	 * d'objets, à partir de la liste entrée en paramètre, qui peut être
+	 * utilisée telle quelle. Cette méthode est appelée par les constructeurs,
+	 * lors du chargement du groupe et lors du retour au stockage sous forme
+	 * d'objets. Par défaut, la liste entrée en paramètre est retournée.
+	 *
+	 * @param shapes la liste des formes du groupe
+	 * @return la liste à utiliser pour stocker les formes
+	 */
+	protected List<Shape> createList(List<Shape> shapes) {
+		return shapes;
+	}
+
+	/**
+	 * Les sous-classes peuvent lire la liste retournée, mais doivent passer
+	 * par les méthodes du groupe pour la modifier.
+	 *
+	 * @return la liste dans laquelle le groupe stocke ses formes
+	 */
+	protected List<Shape> getShapeList() {
+		return shapes;
+	}
+
+	/* Retourne une copie du groupe, de ses formes et de son placement : la
+	 * copie et ce groupe peuvent ensuite être modifiés, y compris forme par
+	 * forme, sans que l'un ne modifie l'autre (voir Shapes.copyOf(Shape)).
+	 * Le groupe n'est pas modifié, il peut être copié par un autre thread.
+	 */
+	ShapeGroup copy() {
+		ShapeGroup copy = new ShapeGroup();
+
+		if(shapes instanceof PackedShapeList) copy.shapes = ((PackedShapeList) shapes).copyDetached();
+		else for(int i = 0; i < shapes.size(); i++) copy.shapes.add(Shapes.copyOf(shapes.get(i)));
+
+		Rectangle2D b = bounds;
+		if(b != null) copy.bounds = (Rectangle2D) b.clone();
+
+		copy.transform = transform;
+		return copy;
 	}
 
 	/**
@@ -40,7 +123,37 @@ public class ShapeGroup implements Shape {
 	 * @param s la Shape à ajouter
 	 */
 	public void addShape(Shape s) {
+		applyTransform();
 		this.shapes.add(s);
+		cacheAdded(shapes.size()-1);
+	}
+
+	/**
+	 * Permet d'insérer une Shape dans la liste de Shape du ShapeGroup, à
+	 * l'indice entré en paramètre, les Shape d'indice supérieur étant dessinées par dessus.
+	 *
+	 * @param i l'indice auquel insérer la Shape
+	 * @param s la Shape à insérer
+	 */
+	public void addShape(int i, Shape s) {
+		applyTransform();
+		this.shapes.add(i, s);
+		cacheAdded(i);
+	}
+
+	// Met à jour le cache après l'ajout de la forme d'indice i.
+	private void cacheAdded(int i) {
+		if(bounds == null && !centerCached) return;
+
+		int n = shapes.size();
+		Shape added = peek(i);
+
+		if(bounds != null) bounds.add(added.getBounds());
+
+		if(centerCached) {
+			centerX += (added.getCenterX() - centerX)/n;
+			centerY += (added.getCenterY() - centerY)/n;
+		}
 	}
 
 	/**
@@ -48,54 +161,398 @@ public class ShapeGroup implements Shape {
 	 * @param s la Shape à retirer
 	 */
 	public void removeShape(Shape s) {
-		this.shapes.remove(s);
+		applyTransform();
+		if(this.shapes.remove(s)) invalidate();
 	}
 
 	/**
+	 * Permet de retirer plusieurs Shape du ShapeGroup en un seul parcours de
+	 * sa liste de Shape, plutôt qu'en un parcours par Shape retirée. Les
+	 * Shape restantes conservent leur ordre de dessin.
+	 *
+	 * @param removed les Shape à retirer
+	 */
+	public void removeShapes(Collection<? extends Shape> removed) {
+		applyTransform();
+
+		Set<Shape> targets = Collections.newSetFromMap(new IdentityHashMap<Shape, Boolean>(removed.size()));
+		targets.addAll(removed);
+
+		if(this.shapes.removeAll(targets)) invalidate();
+	}
+
+	/**
+	 *
+	 * @param s la Shape recherchée
+	 * @return l'indice de la Shape dans la liste de Shape du ShapeGroup, -1 si elle n'y est pas
+	 */
+	public int indexOf(Shape s) {
+		return shapes.indexOf(s);
+	}
+
+	/**
+	 * Permet de déplacer une des Shape du ShapeGroup.
+	 *
+	 * @param s la Shape à déplacer
+	 * @param dx le décalage sur l'axe X
+	 * @param dy le décalage sur l'axe Y
+	 */
+	public void moveShape(Shape s, int dx, int dy) {
+		applyTransform();
+		s.move(dx, dy);
+		invalidate();
+	}
+
+	/**
+	 * Permet d'inverser une des Shape du ShapeGroup sur l'axe X.
+	 *
+	 * @param s la Shape à inverser
+	 * @param x position de l'axe
+	 */
+	public void mirrorShapeX(Shape s, double x) {
+		applyTransform();
+		s.mirrorX(x);
+		invalidate();
+	}
+
+	/**
+	 * Permet d'inverser une des Shape du ShapeGroup sur l'axe Y.
+	 *
+	 * @param s la Shape à inverser
+	 * @param y position de l'axe
+	 */
+	public void mirrorShapeY(Shape s, double y) {
+		applyTransform();
+		s.mirrorY(y);
+		invalidate();
+	}
+
+	/**
+	 * La liste retournée ne peut pas être modifiée, il faut passer par
+	 * les méthodes addShape et removeShape. Le placement en attente du groupe
+	 * est d'abord appliqué à ses formes.
 	 *
 	 * @return la liste entière de Shape du ShapeGroup
 	 */
-	public List<Shape> getShapes() { return shapes; }
+	public List<Shape> getShapes() {
+		applyTransform();
+		return Collections.unmodifiableList(shapes);
+	}
+
+	/**
+	 * Retourne une copie des formes du groupe, placées comme dans le dessin.
+	 * Contrairement à getShapes(), le groupe et ses formes ne sont pas modifiés.
+	 *
+	 * @return une nouvelle liste contenant une copie de chaque forme du groupe
+	 * @see Shapes#copyOf(Shape)
+	 */
+	public List<Shape> copyShapes() {
+		List<Shape> copies = new ArrayList<Shape>(shapes.size());
+		ShapeTransform t = transform;
+
+		for(int i = 0; i < shapes.size(); i++) {
+			Shape copy = Shapes.copyOf(peek(i));
+			if(t != null) t.applyTo(copy);
+			copies.add(copy);
+		}
+
+		return copies;
+	}
+
+	/**
+	 * Compte les formes du groupe et celles de ses sous-groupes, sans
+	 * appliquer le placement en attente. Les sous-groupes eux-mêmes ne sont
+	 * pas comptés.
+	 *
+	 * @return le nombre de formes contenues dans le groupe
+	 */
+	public int countShapes() {
+		int count = 0;
+
+		for(int i = 0; i < shapes.size(); i++) {
+			Shape shape = peek(i);
+			count += shape instanceof ShapeGroup ? ((ShapeGroup) shape).countShapes() : 1;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Applique aux formes du groupe les déplacements et les miroirs en attente.
+	 * Cette méthode est appelée avant toute opération portant sur les formes
+	 * du groupe une par une, elle n'a pas à être appelée pour dessiner le groupe.
+	 */
+	public void applyTransform() {
+		if(transform == null) return;
+
+		ShapeTransform t = transform;
+		double tx = t.getTranslateX(), ty = t.getTranslateY();
+		int dx = 0, dy = 0;
+
+		transform = null;
+
+		// un miroir suivi de la translation tx est un miroir sur l'axe tx/2, et
+		// une translation non entière est le résultat de deux miroirs
+		if(t.isFlippedX()) mirrorShapesX(tx/2);
+		else if(tx == Math.rint(tx)) dx = (int) tx;
+		else {
+			mirrorShapesX(0);
+			mirrorShapesX(tx/2);
+		}
+
+		if(t.isFlippedY()) mirrorShapesY(ty/2);
+		else if(ty == Math.rint(ty)) dy = (int) ty;
+		else {
+			mirrorShapesY(0);
+			mirrorShapesY(ty/2);
+		}
+
+		// le cache est tenu à jour par les déplacements et les miroirs des formes
+		if(dx != 0 || dy != 0) moveShapes(dx, dy);
+	}
+
+	/**
+	 *
+	 * @return le placement en attente du groupe, qui n'a pas encore été appliqué à ses formes
+	 */
+	public ShapeTransform getTransform() {
+		return transform == null ? ShapeTransform.IDENTITY : transform;
+	}
+
+	/**
+	 * Choisit la façon dont les formes du groupe sont stockées. Stockées en
+	 * colonnes ou hors du tas, les formes simples n'occupent plus que quelques
+	 * valeurs primitives chacune, et les formes retournées par getShapes()
+	 * sont des vues sur ces valeurs.
+	 *
+	 * <p>Les formes sont copiées lors du changement de stockage : celles
+	 * obtenues auparavant ne font plus partie du groupe, il faut les récupérer
+	 * à nouveau avec getShapes().</p>
+	 *
+	 * @param storage la nouvelle façon de stocker les formes du groupe
+	 * @see PackedShapeList
+	 */
+	public void setStorage(ShapeStorage storage) {
+		if(storage == getStorage()) return;
+
+		applyTransform();
+
+		List<Shape> objects = shapes;
+
+		if(shapes instanceof PackedShapeList) {
+			PackedShapeList packed = (PackedShapeList) shapes;
+			objects = new ArrayList<Shape>(packed.size());
+
+			for(int i = 0; i < packed.size(); i++) objects.add(packed.copy(i));
+			packed.clear();
+		}
+
+		switch(storage) {
+			case COLUMNS:
+				this.shapes = new ColumnarShapeList(objects);
+				break;
+			case OFF_HEAP:
+				this.shapes = new OffHeapShapeList(objects);
+				break;
+			default:
+				this.shapes = createList(objects);
+		}
+	}
+
+	/**
+	 *
+	 * @return la façon dont les formes du groupe sont stockées
+	 */
+	public ShapeStorage getStorage() {
+		if(shapes instanceof ColumnarShapeList) return ShapeStorage.COLUMNS;
+		if(shapes instanceof OffHeapShapeList) return ShapeStorage.OFF_HEAP;
+		return ShapeStorage.OBJECTS;
+	}
+
+	/* Retourne la forme d'indice i, uniquement pour la lire : lorsque les formes
+	 * ne sont pas stockées sous forme d'objets, la forme retournée est un objet
+	 * temporaire qui n'est valide que jusqu'au prochain appel.
+	 */
+	private Shape peek(int i) {
+		if(shapes instanceof PackedShapeList) return ((PackedShapeList) shapes).peek(i);
+		return shapes.get(i);
+	}
+
+	/* Vide le cache du rectangle englobant et du centre du groupe, ceux-ci
+	 * seront recalculés lors de leur prochaine utilisation.
+	 */
+	private void invalidate() {
+		bounds = null;
+		centerCached = false;
+		view = null;
+	}
+
+	// Déplace directement toutes les formes du groupe.
+	private void moveShapes(int dx, int dy) {
+		if(shapes instanceof PackedShapeList) ((PackedShapeList) shapes).move(dx, dy);
+		else for(Shape shape : shapes) shape.move(dx, dy);
+
+		// une translation ne change pas la taille du groupe
+		if(bounds != null) bounds.setRect(bounds.getX()+dx, bounds.getY()+dy, bounds.getWidth(), bounds.getHeight());
+		centerX += dx;
+		centerY += dy;
+	}
 
+	// Inverse directement toutes les formes du groupe sur l'axe X.
+	private void mirrorShapesX(double x) {
+		if(shapes instanceof PackedShapeList) ((PackedShapeList) shapes).mirrorX(x);
+		else for(Shape shape : shapes) shape.mirrorX(x);
+		invalidate();
+	}
+
+	// Inverse directement toutes les formes du groupe sur l'axe Y.
+	private void mirrorShapesY(double y) {
+		if(shapes instanceof PackedShapeList) ((PackedShapeList) shapes).mirrorY(y);
+		else for(Shape shape : shapes) shape.mirrorY(y);
+		invalidate();
+	}
+
+	/* Retourne l'instance dessinant les formes du groupe avec le placement
+	 * entré en paramètre. Chaque déplacement ou miroir du groupe remplace son
+	 * placement, et toute modification de ses formes l'applique d'abord : la
+	 * vue reste donc valable tant que le placement est le même objet.
+	 */
+	private ShapeInstance view(ShapeTransform t) {
+		ShapeInstance v = view;
+
+		if(v == null || v.getTransform() != t) view = v = new ShapeInstance(new ShapeGroup(this), t);
+		return v;
+	}
+
+	/**
+	 * Lorsque le groupe a un placement en attente, le visitor reçoit une
+	 * instance ayant pour symbole les formes du groupe. Cette instance est
+	 * conservée et réutilisée tant que le placement du groupe ne change pas.
+	 *
+	 * @param sv ShapeVisitor qui détermine l'action à effectuer
+	 * @see ShapeVisitor#visit(ShapeInstance)
+	 */
 	public void acceptVisitor(ShapeVisitor sv) {
-		for(Shape shape: shapes) shape.acceptVisitor(sv);
+		ShapeTransform t = transform;
+
+		if(t != null) sv.visit(view(t));
+		else if(shapes instanceof PackedShapeList) ((PackedShapeList) shapes).acceptVisitor(sv);
+		else for(Shape shape: shapes) shape.acceptVisitor(sv);
 	}
 
 	public void move(int dx, int dy) {
-		for(Shape shape : shapes) shape.move(dx, dy);
+		transform = getTransform().translate(dx, dy);
 	}
 
 	public void mirrorX(double x) {
-		for(Shape shape : shapes) shape.mirrorX(x);
+		transform = getTransform().mirrorX(x);
 	}
 
 	public void mirrorY(double y) {
-		for(Shape shape : shapes) shape.mirrorY(y);
+		transform = getTransform().mirrorY(y);
 	}
 
 	public double getCenterX() {
-		double centerSum = 0;
-		for(Shape shape : shapes) centerSum += shape.getCenterX();
+		computeCenter();
+		return transform == null ? centerX : transform.transformX(centerX);
+	}
+
+	public double getCenterY() {
+		computeCenter();
+		return transform == null ? centerY : transform.transformY(centerY);
+	}
+
+	/* Calcule le centre du groupe, c'est à dire la moyenne des centres de
+	 * ses formes, s'il n'est pas déjà en cache.
+	 */
+	private void computeCenter() {
+		if(centerCached) return;
+
+		if(shapes.isEmpty()) {
+			centerX = centerY = Double.NaN;
+			return;
+		}
 
-		return centerSum/shapes.size();
+		double sumX = 0, sumY = 0;
+		for(int i = 0; i < shapes.size(); i++) {
+			Shape shape = peek(i);
+			sumX += shape.getCenterX();
+			sumY += shape.getCenterY();
+		}
 
+		centerX = sumX/shapes.size();
+		centerY = sumY/shapes.size();
+		centerCached = true;
 	}
 
-	public double getCenterY() {
-		double centerSum = 0;
-		for(Shape shape : shapes) centerSum += shape.getCenterY();
+	public Rectangle2D getBounds() {
+		Rectangle2D b = localBounds();
+		ShapeTransform t = transform;
+
+		if(b == null) return new Rectangle2D.Double();
+		return t == null ? (Rectangle2D) b.clone() : t.transform(b);
+	}
+
+	/* Retourne le rectangle englobant les formes du groupe, sans le placement
+	 * en attente, ou null si le groupe est vide. Le rectangle retourné est
+	 * celui du cache et ne doit pas être modifié.
+	 */
+	private Rectangle2D localBounds() {
+		Rectangle2D b = bounds;
+
+		// le rectangle n'est mis en cache qu'une fois complet, il peut être lu par plusieurs threads
+		if(b == null) {
+			for(int i = 0; i < shapes.size(); i++) {
+				if(b == null) b = peek(i).getBounds();
+				else b.add(peek(i).getBounds());
+			}
 
-		return centerSum/shapes.size();
+			bounds = b;
+		}
+
+		return b;
 	}
 
 	public Shape toStandard() {
+		return toStandard(new IdentityHashMap<ShapeGroup, ShapeGroup>());
+	}
+
+	/**
+	 * Convertit le groupe comme toStandard(), en transmettant la table entrée
+	 * en paramètre aux instances qu'il contient, y compris dans ses
+	 * sous-groupes : les instances d'un même symbole partagent ainsi toujours
+	 * le symbole converti.
+	 *
+	 * @param symbols la table associant chaque symbole déjà converti à sa conversion
+	 * @return le groupe dessiné de façon Parfaite
+	 * @see ShapeInstance#toStandard(Map)
+	 */
+	public ShapeGroup toStandard(Map<ShapeGroup, ShapeGroup> symbols) {
 
 		List<Shape> newShapes = new ArrayList<Shape>();
 
 		for(Shape shape : shapes) {
-			newShapes.add(shape.toStandard());
+			newShapes.add(toStandard(shape, symbols));
 		}
 
-		return new ShapeGroup(newShapes);
+		// le placement en attente est conservé tel quel
+		ShapeGroup standard = new ShapeGroup(newShapes);
+		standard.transform = transform;
+
+		return standard;
+	}
+
+	/* Convertit la forme entrée en paramètre, en transmettant la table des
+	 * symboles déjà convertis aux groupes et aux instances.
+	 */
+	protected static Shape toStandard(Shape shape, Map<ShapeGroup, ShapeGroup> symbols) {
+		if(shape instanceof ShapeInstance) return ((ShapeInstance) shape).toStandard(symbols);
+		if(shape instanceof ShapeGroup) return ((ShapeGroup) shape).toStandard(symbols);
+		return shape.toStandard();
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if(!(shapes instanceof PackedShapeList)) shapes = createList(shapes);
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,128 @@
+package drawshop.shapes;
+
+import drawshop.shapes.visitors.ShapeVisitor;
+
+import java.awt.geom.Rectangle2D;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Cette classe représente une instance d'un symbole : un ShapeGroup défini
+ * une seule fois et placé dans le dessin par un ShapeTransform.
+ *
+ * <p>Plusieurs instances peuvent partager le même symbole. Les formes du
+ * symbole ne sont alors stockées, et enregistrées dans un fichier, qu'une
+ * seule fois, quel que soit le nombre d'instances. Déplacer ou inverser une
+ * instance ne modifie que son placement, et non les formes du symbole.</p>
+ *
+ * <p>Le symbole ne doit plus être modifié une fois placé : il ne fait pas
+ * partie du dessin et les instances qui le partagent ne seraient pas
+ * prévenues de sa modification.</p>
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ *
+ * @see ShapeTransform
+ */
+public class ShapeInstance implements Shape {
+
+	private static final long serialVersionUID = 1L;
+
+	private final ShapeGroup symbol;
+	private ShapeTransform transform;
+
+	/**
+	 * Instancie une instance du symbole entré en paramètre, à l'emplacement
+	 * de ses formes.
+	 *
+	 * @param symbol le symbole à placer
+	 */
+	public ShapeInstance(ShapeGroup symbol) {
+		this(symbol, ShapeTransform.IDENTITY);
+	}
+
+	/**
+	 * Instancie une instance du symbole entré en paramètre, placée par le
+	 * ShapeTransform entré en paramètre.
+	 *
+	 * @param symbol le symbole à placer
+	 * @param transform le placement du symbole
+	 */
+	public ShapeInstance(ShapeGroup symbol, ShapeTransform transform) {
+		this.symbol = symbol;
+		this.transform = transform;
+	}
+
+	/**
+	 *
+	 * @return le symbole placé par cette instance
+	 */
+	public ShapeGroup getSymbol() { return symbol; }
+
+	/**
+	 *
+	 * @return le placement du symbole
+	 */
+	public ShapeTransform getTransform() { return transform; }
+
+	/**
+	 * Crée une nouvelle instance du même symbole, décalée par rapport à
+	 * celle-ci.
+	 *
+	 * @param dx le décalage sur l'axe X
+	 * @param dy le décalage sur l'axe Y
+	 * @return la nouvelle instance
+	 */
+	public ShapeInstance place(double dx, double dy) {
+		return new ShapeInstance(symbol, transform.translate(dx, dy));
+	}
+
+	public void acceptVisitor(ShapeVisitor sv) {
+		sv.visit(this);
+	}
+
+	public void move(int dx, int dy) {
+		transform = transform.translate(dx, dy);
+	}
+
+	public void mirrorX(double x) {
+		transform = transform.mirrorX(x);
+	}
+
+	public void mirrorY(double y) {
+		transform = transform.mirrorY(y);
+	}
+
+	public double getCenterX() { return transform.transformX(symbol.getCenterX()); }
+	public double getCenterY() { return transform.transformY(symbol.getCenterY()); }
+
+	public Rectangle2D getBounds() {
+		return transform.transform(symbol.getBounds());
+	}
+
+	public Shape toStandard() {
+		return toStandard(new IdentityHashMap<ShapeGroup, ShapeGroup>());
+	}
+
+	/**
+	 * Convertit l'instance comme toStandard(), mais en réutilisant le symbole
+	 * déjà converti s'il se trouve dans la table entrée en paramètre. Les
+	 * instances converties avec la même table partagent donc toujours leurs
+	 * symboles.
+	 *
+	 * @param symbols la table associant chaque symbole déjà converti à sa conversion
+	 * @return l'instance dessinée de façon Parfaite
+	 */
+	public ShapeInstance toStandard(Map<ShapeGroup, ShapeGroup> symbols) {
+		ShapeGroup standard = symbols.get(symbol);
+
+		if(standard == null) {
+			standard = symbol.toStandard(symbols);
+			symbols.put(symbol, standard);
+		}
+
+		return new ShapeInstance(standard, transform);
+	}
+}
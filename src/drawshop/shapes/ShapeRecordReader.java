@@ -0,0 +1,267 @@
+package drawshop.shapes;
+
+import java.awt.*;
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cette classe permet de lire les formes écrites dans un fichier .draw par un
+ * {@link ShapeRecordWriter}. Les tables des couleurs et des symboles doivent
+ * être lues avec {@link #readTables()} avant les formes. Le reader ne lit rien
+ * à l'avance : l'entrée peut être déplacée entre deux enregistrements, afin de
+ * ne lire que certaines formes.
+ *
+ * <p>Chaque couleur de la table n'est instanciée qu'une fois : les formes de
+ * même couleur partagent le même objet Color, comme avec une ColorPalette.</p>
+ *
+ * <p>Les nombres d'éléments lus (couleurs, symboles, formes et octets) sont
+ * bornés par la taille des données : un fichier corrompu entraîne une
+ * StreamCorruptedException plutôt qu'une allocation démesurée.</p>
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ *
+ * @see ShapeRecordWriter
+ */
+public class ShapeRecordReader {
+
+	private final DataInput in;
+	private final long length;
+	private final float[] row = new float[PackedShapeList.MAX_STRIDE];
+
+	// les objets temporaires dans lesquels sont lues les formes copiées dans un groupe stocké en colonnes
+	private final Shape[] flyweights = {
+			null,
+			new HanddrawnCircle(),
+			new HanddrawnLine(),
+			new HanddrawnRectangle(),
+			new PerfectCircle(),
+			new PerfectLine(),
+			new PerfectRectangle()
+	};
+
+	private Color[] colors = new Color[0];
+	private final List<ShapeGroup> symbols = new ArrayList<ShapeGroup>();
+
+	/**
+	 * Instancie un reader lisant l'entrée entrée en paramètre.
+	 *
+	 * @param in l'entrée dans laquelle lire les formes
+	 * @param length le nombre d'octets que contient l'entrée au plus
+	 */
+	public ShapeRecordReader(DataInput in, long length) {
+		this.in = in;
+		this.length = length;
+	}
+
+	/**
+	 * Lit la table des couleurs puis celle des symboles.
+	 *
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public void readTables() throws IOException, ClassNotFoundException {
+		colors = new Color[count(in.readInt(), 4)];
+		for(int i = 0; i < colors.length; i++) colors[i] = new Color(in.readInt(), true);
+
+		int count = count(in.readInt(), 1);
+		for(int i = 0; i < count; i++) symbols.add(readGroup());
+	}
+
+	/**
+	 * Lit le nombre de formes d'un groupe stockant ses formes sous forme
+	 * d'objets, puis leurs enregistrements.
+	 *
+	 * @return les formes lues, dans leur ordre d'écriture
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public List<Shape> readShapes() throws IOException, ClassNotFoundException {
+		int size = count(in.readInt(), 1);
+		List<Shape> shapes = new ArrayList<Shape>(size);
+
+		for(int i = 0; i < size; i++) shapes.add(readShape(false));
+		return shapes;
+	}
+
+	/**
+	 * Lit le nombre de formes d'un groupe, puis leurs enregistrements, et
+	 * ajoute les formes lues à la fin du groupe entré en paramètre, dont le
+	 * stockage doit être celui du groupe écrit. Lorsque le groupe stocke ses
+	 * formes en colonnes ou hors du tas, les formes simples y sont copiées
+	 * sans être instanciées.
+	 *
+	 * @param group le groupe auquel ajouter les formes lues
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public void readShapes(ShapeGroup group) throws IOException, ClassNotFoundException {
+		int size = count(in.readInt(), 1);
+		boolean packed = group.getStorage() != ShapeStorage.OBJECTS;
+
+		for(int i = 0; i < size; i++) group.addShape(readShape(packed));
+	}
+
+	/**
+	 * Lit l'enregistrement d'une forme.
+	 *
+	 * @param storage le stockage du groupe contenant la forme
+	 * @return la forme lue
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public Shape readShape(ShapeStorage storage) throws IOException, ClassNotFoundException {
+		if(storage == ShapeStorage.OBJECTS) return readShape(false);
+
+		// l'objet temporaire ne doit pas être partagé
+		Shape s = readShape(true);
+		return PackedShapeList.typeOf(s) != ShapeRecordWriter.OBJECT ? Shapes.copyOf(s) : s;
+	}
+
+	/* Lit l'enregistrement d'une forme. Les formes simples d'un groupe stocké
+	 * en colonnes ou hors du tas sont lues dans un objet temporaire de leur
+	 * type, qui n'est valide que jusqu'au prochain appel.
+	 */
+	private Shape readShape(boolean packed) throws IOException, ClassNotFoundException {
+		byte type = in.readByte();
+
+		switch(type) {
+			case ShapeRecordWriter.OBJECT: return readObject();
+			case ShapeRecordWriter.GROUP: return readGroup();
+			case ShapeRecordWriter.INSTANCE: return new ShapeInstance(symbol(in.readInt()), readTransform());
+			default: break;
+		}
+
+		Color c = color(in.readInt());
+
+		if(packed) return readPacked(type, c);
+
+		switch(type) {
+			case PackedShapeList.HANDDRAWN_CIRCLE:
+				HanddrawnCircle circle = new HanddrawnCircle();
+				circle.read(in, c);
+				return circle;
+			case PackedShapeList.HANDDRAWN_LINE:
+				HanddrawnLine line = new HanddrawnLine();
+				line.read(in, c);
+				return line;
+			case PackedShapeList.HANDDRAWN_RECTANGLE:
+				HanddrawnRectangle rectangle = new HanddrawnRectangle();
+				rectangle.read(in, c);
+				return rectangle;
+			case ShapeRecordWriter.SEEDED_RECTANGLE:
+				HanddrawnRectangle seeded = new HanddrawnRectangle();
+				seeded.readCompact(in, c);
+				return seeded;
+			case PackedShapeList.PERFECT_CIRCLE:
+				PerfectCircle perfectCircle = new PerfectCircle();
+				perfectCircle.read(in, c);
+				return perfectCircle;
+			case PackedShapeList.PERFECT_LINE:
+				PerfectLine perfectLine = new PerfectLine();
+				perfectLine.read(in, c);
+				return perfectLine;
+			case PackedShapeList.PERFECT_RECTANGLE:
+				PerfectRectangle perfectRectangle = new PerfectRectangle();
+				perfectRectangle.read(in, c);
+				return perfectRectangle;
+			default:
+				throw new StreamCorruptedException("Unknown shape record type " + type);
+		}
+	}
+
+	// Lit une forme simple dont les coordonnées sont écrites en float, dans l'ordre de PackedShapeList.
+	private Shape readPacked(byte type, Color c) throws IOException {
+		if(type < PackedShapeList.HANDDRAWN_CIRCLE || type > PackedShapeList.PERFECT_RECTANGLE)
+			throw new StreamCorruptedException("Unknown shape record type " + type);
+
+		Shape s = flyweights[type];
+
+		for(int k = 0; k < PackedShapeList.STRIDE[type]; k++) row[k] = in.readFloat();
+
+		PackedShapeList.loadShape(type, s, row, 0, c);
+		return s;
+	}
+
+	// Lit le stockage, le placement et les formes d'un groupe.
+	private ShapeGroup readGroup() throws IOException, ClassNotFoundException {
+		ShapeStorage storage = storage(in.readByte());
+		ShapeTransform t = readTransform();
+		ShapeGroup group;
+
+		if(storage == ShapeStorage.OBJECTS) group = new ShapeGroup(readShapes());
+		else {
+			group = new ShapeGroup();
+			group.setStorage(storage);
+			readShapes(group);
+		}
+
+		// appliquer le placement à un groupe sans placement redonne le même placement
+		t.applyTo(group);
+		return group;
+	}
+
+	private ShapeTransform readTransform() throws IOException {
+		int flags = in.readByte();
+		double tx = 0, ty = 0;
+
+		if((flags & ShapeRecordWriter.TRANSLATED) != 0) {
+			tx = in.readDouble();
+			ty = in.readDouble();
+		}
+
+		if(flags == 0) return ShapeTransform.IDENTITY;
+		return new ShapeTransform((flags & ShapeRecordWriter.FLIP_X) != 0, (flags & ShapeRecordWriter.FLIP_Y) != 0, tx, ty);
+	}
+
+	// Lit une forme sérialisée par Java.
+	private Shape readObject() throws IOException, ClassNotFoundException {
+		byte[] bytes = new byte[count(in.readInt(), 1)];
+		in.readFully(bytes);
+
+		ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(bytes));
+		Shape s = (Shape) objects.readObject();
+		objects.close();
+		return s;
+	}
+
+	/* Vérifie un nombre d'éléments lu dans l'entrée, chaque élément occupant
+	 * au moins size octets : le nombre ne peut pas dépasser ce que contient l'entrée.
+	 */
+	private int count(int n, int size) throws StreamCorruptedException {
+		if(n < 0 || (long) n*size > length) throw new StreamCorruptedException("Invalid count " + n);
+		return n;
+	}
+
+	/**
+	 * Retourne le stockage dont l'indice est entré en paramètre.
+	 *
+	 * @param ordinal l'indice du stockage, tel qu'écrit dans le fichier
+	 * @return le stockage correspondant
+	 * @throws StreamCorruptedException si aucun stockage n'a cet indice
+	 */
+	public static ShapeStorage storage(int ordinal) throws StreamCorruptedException {
+		ShapeStorage[] storages = ShapeStorage.values();
+
+		if(ordinal < 0 || ordinal >= storages.length) throw new StreamCorruptedException("Unknown storage " + ordinal);
+		return storages[ordinal];
+	}
+
+	private Color color(int index) throws StreamCorruptedException {
+		if(index == -1) return null;
+		if(index < 0 || index >= colors.length) throw new StreamCorruptedException("Unknown color " + index);
+		return colors[index];
+	}
+
+	private ShapeGroup symbol(int index) throws StreamCorruptedException {
+		if(index < 0 || index >= symbols.size()) throw new StreamCorruptedException("Unknown symbol " + index);
+		return symbols.get(index);
+	}
+}
@@ -0,0 +1,259 @@
+package drawshop.shapes;
+
+import java.awt.*;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cette classe permet d'écrire des formes dans un fichier .draw, sous forme
+ * d'enregistrements composés d'un type suivi de valeurs primitives.
+ *
+ * <p>Les couleurs et les symboles des ShapeInstance ne sont écrits qu'une fois,
+ * dans des tables placées avant les formes : les enregistrements n'en contiennent
+ * que l'indice. Les formes doivent donc d'abord être toutes parcourues avec
+ * {@link #collect(Shape)}, puis les tables écrites avec {@link #writeTables()},
+ * avant d'écrire les formes elles-mêmes.</p>
+ *
+ * <p>Un enregistrement commence par le type de la forme, sur un octet :</p>
+ * <ul>
+ * <li>les formes simples, avec les types de {@link PackedShapeList}, sont
+ * suivies de l'indice de leur couleur et de leurs coordonnées, en double, ou en
+ * float dans l'ordre de PackedShapeList lorsque le groupe qui les contient les
+ * stocke en colonnes ou hors du tas ;</li>
+ * <li>un rectangle fait à la main ne conservant que sa graine est suivi de
+ * l'indice de sa couleur, de ses coins de base, de sa graine et de ses miroirs ;</li>
+ * <li>un groupe est suivi de son stockage, de son placement, du nombre de ses
+ * formes puis de leurs enregistrements ;</li>
+ * <li>une ShapeInstance est suivie de l'indice de son symbole et de son placement ;</li>
+ * <li>les autres formes sont sérialisées par Java, et suivies de leur
+ * taille en octets puis des octets obtenus.</li>
+ * </ul>
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ *
+ * @see ShapeRecordReader
+ */
+public class ShapeRecordWriter {
+
+	static final byte OBJECT = PackedShapeList.OBJECT;
+	static final byte SEEDED_RECTANGLE = 7;
+	static final byte GROUP = 8;
+	static final byte INSTANCE = 9;
+
+	// bits de l'octet décrivant un placement, les translations ne sont écrites que si elles existent
+	static final int FLIP_X = 1, FLIP_Y = 2, TRANSLATED = 4;
+
+	/**
+	 * Cette interface permet d'être prévenu avant l'écriture de chaque
+	 * enregistrement d'un groupe, par exemple pour en noter la position dans
+	 * le fichier (voir {@link ShapeRecordWriter#writeShapes(ShapeGroup, RecordListener)}).
+	 */
+	public interface RecordListener {
+
+		/**
+		 * Appelée avant l'écriture de l'enregistrement de la forme entrée en paramètre.
+		 *
+		 * @param s la forme dont l'enregistrement va être écrit, qui n'est valide
+		 * que pendant l'appel lorsque le groupe stocke ses formes en colonnes
+		 * @throws IOException
+		 */
+		public void recordStarting(Shape s) throws IOException;
+	}
+
+	private final DataOutput out;
+	private final float[] row = new float[PackedShapeList.MAX_STRIDE];
+
+	private final ColorPalette palette = new ColorPalette();
+	private final Map<ShapeGroup, Integer> symbolIds = new IdentityHashMap<ShapeGroup, Integer>();
+	private final List<ShapeGroup> symbols = new ArrayList<ShapeGroup>();
+
+	/**
+	 * Instancie un writer écrivant dans la sortie entrée en paramètre.
+	 *
+	 * @param out la sortie dans laquelle écrire les formes
+	 */
+	public ShapeRecordWriter(DataOutput out) {
+		this.out = out;
+	}
+
+	/**
+	 * Ajoute aux tables les couleurs et les symboles utilisés par la forme
+	 * entrée en paramètre et par les formes qu'elle contient.
+	 *
+	 * @param s la forme à parcourir
+	 */
+	public void collect(Shape s) {
+		s = PackedShapeList.unwrap(s);
+
+		if(s instanceof ShapeGroup) {
+			List<Shape> shapes = ((ShapeGroup) s).getShapeList();
+
+			if(shapes instanceof PackedShapeList) {
+				PackedShapeList packed = (PackedShapeList) shapes;
+				for(int i = 0; i < packed.size(); i++) collect(packed.peek(i));
+			}
+			else for(Shape shape : shapes) collect(shape);
+		}
+		else if(s instanceof ShapeInstance) {
+			ShapeGroup symbol = ((ShapeInstance) s).getSymbol();
+
+			// les symboles utilisés par un symbole sont écrits avant lui
+			if(!symbolIds.containsKey(symbol)) {
+				collect(symbol);
+				symbolIds.put(symbol, symbols.size());
+				symbols.add(symbol);
+			}
+		}
+		else if(PackedShapeList.typeOf(s) != OBJECT) {
+			Color color = PackedShapeList.colorOf(s);
+			if(color != null) palette.indexOf(color);
+		}
+	}
+
+	/**
+	 * Écrit la table des couleurs, en ARGB, puis celle des symboles.
+	 *
+	 * @throws IOException
+	 */
+	public void writeTables() throws IOException {
+		out.writeInt(palette.size());
+		for(int i = 0; i < palette.size(); i++) out.writeInt(palette.get(i).getRGB());
+
+		out.writeInt(symbols.size());
+		for(ShapeGroup symbol : symbols) writeGroup(symbol);
+	}
+
+	/**
+	 * Écrit l'enregistrement de la forme entrée en paramètre.
+	 *
+	 * @param s la forme à écrire, parcourue auparavant par collect
+	 * @param storage le stockage du groupe contenant la forme
+	 * @throws IOException
+	 */
+	public void writeShape(Shape s, ShapeStorage storage) throws IOException {
+		s = PackedShapeList.unwrap(s);
+		Class<?> c = s.getClass();
+		byte type = PackedShapeList.typeOf(s);
+
+		if(type != OBJECT) writeSimple(type, s, storage != ShapeStorage.OBJECTS);
+		else if(c == ShapeGroup.class) {
+			out.writeByte(GROUP);
+			writeGroup((ShapeGroup) s);
+		}
+		else if(c == ShapeInstance.class) {
+			ShapeInstance instance = (ShapeInstance) s;
+
+			out.writeByte(INSTANCE);
+			out.writeInt(symbolIds.get(instance.getSymbol()));
+			writeTransform(instance.getTransform());
+		}
+		else writeObject(s);
+	}
+
+	/**
+	 * Écrit le nombre de formes du groupe entré en paramètre, puis leurs
+	 * enregistrements, sans appliquer le placement en attente du groupe.
+	 *
+	 * @param group le groupe dont les formes sont écrites
+	 * @throws IOException
+	 */
+	public void writeShapes(ShapeGroup group) throws IOException {
+		writeShapes(group, null);
+	}
+
+	/**
+	 * Écrit les formes du groupe comme {@link #writeShapes(ShapeGroup)}, en
+	 * prévenant le listener avant l'écriture de chacune d'elles.
+	 *
+	 * @param group le groupe dont les formes sont écrites
+	 * @param listener prévenu avant chaque enregistrement, ou null
+	 * @throws IOException
+	 */
+	public void writeShapes(ShapeGroup group, RecordListener listener) throws IOException {
+		List<Shape> shapes = group.getShapeList();
+		ShapeStorage storage = group.getStorage();
+
+		out.writeInt(shapes.size());
+
+		// le parcours d'une liste stockée en colonnes ne crée pas de vues
+		if(shapes instanceof PackedShapeList) {
+			PackedShapeList packed = (PackedShapeList) shapes;
+			for(int i = 0; i < packed.size(); i++) writeShape(packed.peek(i), storage, listener);
+		}
+		else for(Shape shape : shapes) writeShape(shape, storage, listener);
+	}
+
+	private void writeShape(Shape s, ShapeStorage storage, RecordListener listener) throws IOException {
+		if(listener != null) listener.recordStarting(s);
+		writeShape(s, storage);
+	}
+
+	// Écrit le stockage, le placement et les formes d'un groupe.
+	private void writeGroup(ShapeGroup group) throws IOException {
+		out.writeByte(group.getStorage().ordinal());
+		writeTransform(group.getTransform());
+		writeShapes(group);
+	}
+
+	private void writeTransform(ShapeTransform t) throws IOException {
+		boolean translated = t.getTranslateX() != 0 || t.getTranslateY() != 0;
+
+		out.writeByte((t.isFlippedX() ? FLIP_X : 0) | (t.isFlippedY() ? FLIP_Y : 0) | (translated ? TRANSLATED : 0));
+
+		if(translated) {
+			out.writeDouble(t.getTranslateX());
+			out.writeDouble(t.getTranslateY());
+		}
+	}
+
+	/* Écrit une forme simple, son type étant celui de PackedShapeList. Les
+	 * coordonnées d'une forme stockée en float sont écrites telles quelles.
+	 */
+	private void writeSimple(byte type, Shape s, boolean packed) throws IOException {
+		Color color = PackedShapeList.colorOf(s);
+
+		if(packed) {
+			out.writeByte(type);
+			out.writeInt(color == null ? -1 : palette.indexOf(color));
+
+			PackedShapeList.storeShape(type, s, row, 0);
+			for(int k = 0; k < PackedShapeList.STRIDE[type]; k++) out.writeFloat(row[k]);
+			return;
+		}
+
+		if(type == PackedShapeList.HANDDRAWN_RECTANGLE && ((HanddrawnRectangle) s).isCompact()) type = SEEDED_RECTANGLE;
+
+		out.writeByte(type);
+		out.writeInt(color == null ? -1 : palette.indexOf(color));
+
+		switch(type) {
+			case PackedShapeList.HANDDRAWN_CIRCLE: ((HanddrawnCircle) s).write(out); break;
+			case PackedShapeList.HANDDRAWN_LINE: ((HanddrawnLine) s).write(out); break;
+			case PackedShapeList.PERFECT_CIRCLE: ((PerfectCircle) s).write(out); break;
+			case PackedShapeList.PERFECT_LINE: ((PerfectLine) s).write(out); break;
+			case PackedShapeList.PERFECT_RECTANGLE: ((PerfectRectangle) s).write(out); break;
+			default: ((HanddrawnRectangle) s).write(out); break;
+		}
+	}
+
+	// Écrit une forme inconnue en la sérialisant.
+	private void writeObject(Shape s) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream objects = new ObjectOutputStream(bytes);
+		objects.writeObject(s);
+		objects.close();
+
+		out.writeByte(OBJECT);
+		out.writeInt(bytes.size());
+		out.write(bytes.toByteArray());
+	}
+}
@@ -0,0 +1,21 @@
+package drawshop.shapes;
+
+/**
+ * Cette Enum permet de lister les différentes façons de stocker les formes
+ * d'un groupe.
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ *
+ * @see ShapeGroup#setStorage(ShapeStorage)
+ */
+public enum ShapeStorage {
+	/** Un objet par forme. */
+	OBJECTS,
+	/** Les formes simples sont stockées en colonnes, voir ColumnarShapeList. */
+	COLUMNS,
+	/** Les formes simples sont stockées hors du tas, voir OffHeapShapeList. */
+	OFF_HEAP;
+}
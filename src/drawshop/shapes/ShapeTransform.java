@@ -0,0 +1,153 @@
+package drawshop.shapes;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.io.Serializable;
+
+/**
+ * Cette classe représente le placement d'une forme dans le dessin : un
+ * éventuel miroir sur chaque axe, suivi d'une translation. Un point (x, y)
+ * est placé en (±x + tx, ±y + ty).
+ *
+ * <p>Un ShapeTransform ne peut pas être modifié : les méthodes de
+ * déplacement et de miroir retournent un nouveau ShapeTransform.</p>
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ *
+ * @see ShapeInstance
+ */
+public final class ShapeTransform implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Le placement qui laisse les formes à leur place.
+	 */
+	public static final ShapeTransform IDENTITY = new ShapeTransform(false, false, 0, 0);
+
+	private final boolean flipX, flipY;
+	private final double tx, ty;
+
+	/**
+	 * Instancie un ShapeTransform.
+	 *
+	 * @param flipX indique si les formes sont inversées sur l'axe X (par rapport à x = 0)
+	 * @param flipY indique si les formes sont inversées sur l'axe Y (par rapport à y = 0)
+	 * @param tx la translation sur l'axe X, appliquée après le miroir
+	 * @param ty la translation sur l'axe Y, appliquée après le miroir
+	 */
+	public ShapeTransform(boolean flipX, boolean flipY, double tx, double ty) {
+		this.flipX = flipX;
+		this.flipY = flipY;
+		this.tx = tx;
+		this.ty = ty;
+	}
+
+	public boolean isFlippedX() { return flipX; }
+	public boolean isFlippedY() { return flipY; }
+
+	public double getTranslateX() { return tx; }
+	public double getTranslateY() { return ty; }
+
+	/**
+	 *
+	 * @param dx le décalage sur l'axe X
+	 * @param dy le décalage sur l'axe Y
+	 * @return ce placement suivi du décalage entré en paramètre
+	 */
+	public ShapeTransform translate(double dx, double dy) {
+		return new ShapeTransform(flipX, flipY, tx + dx, ty + dy);
+	}
+
+	/**
+	 *
+	 * @param x position de l'axe
+	 * @return ce placement suivi d'un miroir sur l'axe X
+	 */
+	public ShapeTransform mirrorX(double x) {
+		return new ShapeTransform(!flipX, flipY, 2*x - tx, ty);
+	}
+
+	/**
+	 *
+	 * @param y position de l'axe
+	 * @return ce placement suivi d'un miroir sur l'axe Y
+	 */
+	public ShapeTransform mirrorY(double y) {
+		return new ShapeTransform(flipX, !flipY, tx, 2*y - ty);
+	}
+
+	/**
+	 *
+	 * @return le placement qui annule celui-ci
+	 */
+	public ShapeTransform inverse() {
+		return new ShapeTransform(flipX, flipY, flipX ? tx : -tx, flipY ? ty : -ty);
+	}
+
+	public double transformX(double x) { return (flipX ? -x : x) + tx; }
+	public double transformY(double y) { return (flipY ? -y : y) + ty; }
+
+	/**
+	 *
+	 * @param r le rectangle à placer
+	 * @return un nouveau rectangle, contenant le rectangle entré en paramètre une fois placé
+	 */
+	public Rectangle2D transform(Rectangle2D r) {
+		double x = flipX ? tx - r.getMaxX() : r.getMinX() + tx;
+		double y = flipY ? ty - r.getMaxY() : r.getMinY() + ty;
+
+		return new Rectangle2D.Double(x, y, r.getWidth(), r.getHeight());
+	}
+
+	/**
+	 * Applique ce placement à la forme entrée en paramètre, à l'aide de ses
+	 * méthodes de déplacement et de miroir. Comme pour un ShapeGroup, un
+	 * miroir suivi d'une translation est appliqué comme un seul miroir.
+	 *
+	 * @param s la forme à placer
+	 */
+	public void applyTo(Shape s) {
+		int dx = 0, dy = 0;
+
+		if(flipX) s.mirrorX(tx/2);
+		else if(tx == Math.rint(tx)) dx = (int) tx;
+		else {
+			s.mirrorX(0);
+			s.mirrorX(tx/2);
+		}
+
+		if(flipY) s.mirrorY(ty/2);
+		else if(ty == Math.rint(ty)) dy = (int) ty;
+		else {
+			s.mirrorY(0);
+			s.mirrorY(ty/2);
+		}
+
+		if(dx != 0 || dy != 0) s.move(dx, dy);
+	}
+
+	/**
+	 *
+	 * @return ce placement sous la forme d'un AffineTransform
+	 */
+	public AffineTransform toAffineTransform() {
+		return new AffineTransform(flipX ? -1 : 1, 0, 0, flipY ? -1 : 1, tx, ty);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if(!(o instanceof ShapeTransform)) return false;
+
+		ShapeTransform t = (ShapeTransform) o;
+		return flipX == t.flipX && flipY == t.flipY && tx == t.tx && ty == t.ty;
+	}
+
+	@Override
+	public int hashCode() {
+		return Boolean.hashCode(flipX) + 2*Boolean.hashCode(flipY) + 31*Double.hashCode(tx) + 961*Double.hashCode(ty);
+	}
+}
@@ -0,0 +1,62 @@
+package drawshop.shapes;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Cette classe regroupe des méthodes utilitaires portant sur les Shape.
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ */
+public final class Shapes {
+
+	private Shapes() {}
+
+	/**
+	 * Retourne une copie de la forme entrée en paramètre, qui peut être
+	 * modifiée sans modifier l'originale.
+	 *
+	 * <p>La copie d'un ShapeGroup contient une copie de chacune de ses formes.
+	 * La copie d'une ShapeInstance partage en revanche son symbole. Les formes
+	 * qui ne sont pas connues sont copiées par sérialisation.</p>
+	 *
+	 * @param s la forme à copier
+	 * @return la copie de la forme
+	 */
+	public static Shape copyOf(Shape s) {
+		s = PackedShapeList.unwrap(s);
+		Class<?> c = s.getClass();
+
+		if(c == HanddrawnCircle.class) return ((HanddrawnCircle) s).copy();
+		if(c == HanddrawnLine.class) return ((HanddrawnLine) s).copy();
+		if(c == HanddrawnRectangle.class) return ((HanddrawnRectangle) s).copy();
+		if(c == PerfectCircle.class) return ((PerfectCircle) s).copy();
+		if(c == PerfectLine.class) return ((PerfectLine) s).copy();
+		if(c == PerfectRectangle.class) return ((PerfectRectangle) s).copy();
+		if(c == ShapeGroup.class) return ((ShapeGroup) s).copy();
+		if(c == ShapeInstance.class) return new ShapeInstance(((ShapeInstance) s).getSymbol(), ((ShapeInstance) s).getTransform());
+
+		return serializedCopy(s);
+	}
+
+	// Copie la forme en l'écrivant puis en la relisant dans un tableau d'octets.
+	private static Shape serializedCopy(Shape s) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(s);
+			out.close();
+
+			ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+			return (Shape) in.readObject();
+		} catch (IOException | ClassNotFoundException e) {
+			throw new IllegalStateException("shape cannot be copied", e);
+		}
+	}
+}
@@ -1,19 +1,53 @@
 package drawshop.shapes.drawing;
 
+import drawshop.shapes.PackedShapeList;
 import drawshop.shapes.Shape;
 import drawshop.shapes.ShapeGroup;
+import drawshop.shapes.ShapeStorage;
+import drawshop.shapes.drawing.index.QuadTree;
 import drawshop.shapes.factories.DrawingType;
 import drawshop.shapes.visitors.ShapeDrawingVisitor;
+import drawshop.shapes.visitors.ShapeVisitor;
 
 import java.awt.*;
+import java.awt.geom.Rectangle2D;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Cette classe permet de représenter un dessin composé de plusieurs formes
  * d'une taille unique et d'un type unique.
  *
+ * <p>Un index spatial peut être activé afin de retrouver rapidement les formes
+ * se trouvant dans une zone du dessin. Il est tenu à jour lors de l'ajout, du
+ * retrait, du déplacement et du miroir des formes du dessin. Pour cela, le
+ * déplacement et le miroir du dessin entier sont appliqués immédiatement à ses
+ * formes, contrairement à ceux d'un ShapeGroup.</p>
+ *
+ * <p>Les dessins contenant un très grand nombre de formes peuvent les stocker
+ * en colonnes ou hors du tas (voir {@link ShapeGroup#setStorage(ShapeStorage)}).
+ * Ces formes ne sont pas placées dans l'index spatial : les recherches
+ * parcourent directement leurs coordonnées, et seules les formes trouvées
+ * reçoivent une vue.</p>
+ *
+ * <p>Sinon, les formes sont stockées dans une {@link PersistentShapeList} :
+ * un instantané du dessin peut être obtenu en temps constant (voir
+ * {@link #snapshot()}), et lu par un autre thread pendant que le dessin est
+ * modifié. Les formes du dessin ne doivent donc être modifiées qu'à travers
+ * les méthodes du dessin, et les ShapeGroup du dessin ne doivent pas être
+ * modifiés forme par forme (voir {@link ShapeGroup#copyShapes()}).</p>
+ *
+ * <p>Les {@link DrawingListener} du dessin sont prévenus de chacune de ses
+ * modifications. Plusieurs modifications peuvent être regroupées en un lot
+ * (voir {@link #beginBatch()}) : les DrawingListener ne sont alors prévenus
+ * qu'une fois, à la fin du lot.</p>
+ *
  * @author Evan Lajusticia
  * @author Pauline Rugliano
  *
@@ -24,10 +58,22 @@ import java.util.List;
  */
 public class Drawing extends ShapeGroup {
 
+    private static final long serialVersionUID = 4954276051749888538L;
+
     private final DrawingType type;
     private final int width;
     private final int height;
 
+    private transient boolean indexed;
+    private transient QuadTree index; // null si les formes ne sont pas stockées sous forme d'objets
+
+    private transient List<DrawingListener> listeners;
+    private transient int batchDepth; // nombre de lots commencés et non terminés
+    private transient boolean batchChanged;
+    private transient Rectangle2D batchArea; // zone touchée par le lot, null pour tout le dessin
+    private transient List<Shape> batchAppended; // null dès qu'une modification n'est pas un ajout
+    private transient List<ShapeListChange> batchChanges; // null dès que toutes les formes sont remplacées
+
     /**
      * Ce constructeur sert à initialiser un nouveau dessin avec une
      * liste de Shape vide.
@@ -80,6 +126,429 @@ public class Drawing extends ShapeGroup {
      */
     public DrawingType getType() { return this.type;   }
 
+    /**
+     * Les formes stockées sous forme d'objets le sont dans une PersistentShapeList.
+     */
+    protected List<Shape> createList(List<Shape> shapes) {
+        return new PersistentShapeList(shapes);
+    }
+
+    /**
+     * Retourne un instantané du dessin, qui ne changera plus même si le
+     * dessin est modifié. L'instantané est obtenu en temps constant. Lorsque
+     * les formes sont stockées en colonnes ou hors du tas, seules les formes
+     * qui ne sont pas des formes simples sont copiées : les colonnes sont
+     * partagées avec l'instantané, et ne sont copiées qu'à la prochaine
+     * modification du dessin.
+     *
+     * @return l'instantané du dessin
+     * @see PersistentShapeList#snapshot()
+     * @see PackedShapeList#copyList()
+     */
+    public DrawingSnapshot snapshot() {
+        List<Shape> shapes = getShapeList();
+
+        if(shapes instanceof PersistentShapeList)
+            return new DrawingSnapshot(width, height, type, ((PersistentShapeList) shapes).snapshot());
+
+        return new DrawingSnapshot(width, height, type, ((PackedShapeList) shapes).copyList());
+    }
+
+    // Prépare la modification d'une forme du dessin, afin de ne pas modifier les instantanés.
+    private void capture(Shape s) {
+        List<Shape> shapes = getShapeList();
+        if(shapes instanceof PersistentShapeList) ((PersistentShapeList) shapes).capture(s);
+    }
+
+    // Prépare la modification de toutes les formes du dessin.
+    private void captureAll() {
+        List<Shape> shapes = getShapeList();
+        if(shapes instanceof PersistentShapeList) ((PersistentShapeList) shapes).captureAll();
+    }
+
+    /**
+     * Ajoute un DrawingListener, prévenu des modifications du dessin. Les
+     * DrawingListener ne sont pas sauvegardés avec le dessin.
+     *
+     * @param listener le DrawingListener à ajouter
+     */
+    public void addDrawingListener(DrawingListener listener) {
+        if(listeners == null) listeners = new ArrayList<DrawingListener>();
+        listeners.add(listener);
+    }
+
+    /**
+     * Retire un DrawingListener du dessin.
+     *
+     * @param listener le DrawingListener à retirer
+     */
+    public void removeDrawingListener(DrawingListener listener) {
+        if(listeners != null) listeners.remove(listener);
+    }
+
+    /**
+     * Commence un lot de modifications : jusqu'à l'appel correspondant à
+     * {@link #endBatch()}, les DrawingListener ne sont pas prévenus des
+     * modifications du dessin. Les lots peuvent être imbriqués, seul le
+     * premier lot commencé prévient les DrawingListener.
+     */
+    public void beginBatch() {
+        batchDepth++;
+    }
+
+    /**
+     * Termine un lot de modifications. Si le lot termine le premier lot
+     * commencé et que le dessin a été modifié, les DrawingListener sont
+     * prévenus une seule fois de l'ensemble des modifications du lot.
+     *
+     * @throws IllegalStateException si aucun lot n'est commencé
+     */
+    public void endBatch() {
+        if(batchDepth == 0) throw new IllegalStateException("No batch in progress");
+        if(--batchDepth == 0 && batchChanged) fireChanged();
+    }
+
+    // Indique si les modifications du dessin doivent être communiquées.
+    private boolean isObserved() {
+        return listeners != null && !listeners.isEmpty();
+    }
+
+    /* Enregistre une modification touchant la zone entrée en paramètre (null
+     * pour tout le dessin), et prévient les DrawingListener si aucun lot
+     * n'est en cours. appended est la forme ajoutée à la fin du dessin si la
+     * modification est un ajout, null sinon. changes sont les ajouts et
+     * retraits de formes de la modification, ou null si toutes les formes
+     * sont remplacées.
+     */
+    private void changed(Rectangle2D area, Shape appended, List<ShapeListChange> changes) {
+        if(!batchChanged) {
+            batchChanged = true;
+            batchArea = area == null ? null : (Rectangle2D) area.clone();
+            batchAppended = new ArrayList<Shape>();
+            batchChanges = new ArrayList<ShapeListChange>();
+        }
+        else if(batchArea != null) {
+            if(area == null) batchArea = null;
+            else batchArea.add(area);
+        }
+
+        if(batchAppended != null) {
+            if(appended == null) batchAppended = null;
+            else batchAppended.add(appended);
+        }
+
+        if(batchChanges != null) {
+            if(changes == null) batchChanges = null;
+            else for(ShapeListChange change : changes) addChange(change);
+        }
+
+        if(batchDepth == 0) fireChanged();
+    }
+
+    // Ajoute une modification au lot, regroupée avec la précédente si leurs formes sont consécutives.
+    private void addChange(ShapeListChange change) {
+        int last = batchChanges.size()-1;
+        ShapeListChange merged = last < 0 ? null : batchChanges.get(last).merge(change);
+
+        if(merged != null) batchChanges.set(last, merged);
+        else batchChanges.add(change);
+    }
+
+    private void fireChanged() {
+        Rectangle2D area = batchArea;
+        List<Shape> appended = batchAppended == null ? null : Collections.unmodifiableList(batchAppended);
+        List<ShapeListChange> changes = batchChanges == null ? null : Collections.unmodifiableList(batchChanges);
+
+        batchChanged = false;
+        batchArea = null;
+        batchAppended = null;
+        batchChanges = null;
+
+        if(!isObserved()) return;
+
+        // un DrawingListener peut se retirer pendant la notification
+        for(DrawingListener listener : listeners.toArray(new DrawingListener[0]))
+            listener.drawingChanged(this, area, appended, changes);
+    }
+
+    // Retourne l'ajout ou le retrait d'une seule forme, à l'indice entré en paramètre.
+    private static List<ShapeListChange> change(int i, boolean insertion) {
+        return Collections.singletonList(new ShapeListChange(i, 1, insertion));
+    }
+
+    /**
+     * Active ou désactive l'index spatial du dessin. L'index n'est pas
+     * sauvegardé avec le dessin et doit être réactivé après un chargement.
+     *
+     * @param enabled true pour activer l'index, false pour le supprimer
+     * @see drawshop.shapes.drawing.index.QuadTree
+     */
+    public void setSpatialIndex(boolean enabled) {
+        if(enabled == indexed) return;
+
+        indexed = enabled;
+        if(enabled) buildIndex();
+        else index = null;
+    }
+
+    /**
+     *
+     * @return true si l'index spatial du dessin est activé
+     */
+    public boolean hasSpatialIndex() { return indexed; }
+
+    /* Reconstruit entièrement l'index spatial à partir des formes du dessin.
+     * Les formes stockées en colonnes ou hors du tas ne sont pas indexées.
+     */
+    private void buildIndex() {
+        if(getShapeList() instanceof PackedShapeList) {
+            index = null;
+            return;
+        }
+
+        index = new QuadTree(new Rectangle2D.Double(0, 0, width, height));
+        for(Shape s : getShapes()) index.insert(s);
+    }
+
+    /**
+     * Retourne les formes du dessin dont le rectangle englobant touche la zone
+     * entrée en paramètre, dans leur ordre de dessin. Sans index spatial,
+     * toutes les formes du dessin sont parcourues.
+     *
+     * @param area la zone recherchée
+     * @return la liste des formes touchant la zone
+     */
+    public List<Shape> getShapesIn(Rectangle2D area) {
+        return getShapesIn(area, 0);
+    }
+
+    /**
+     * Retourne les formes du dessin dont le rectangle englobant touche la zone
+     * entrée en paramètre et dont la largeur ou la hauteur atteint la taille
+     * minimale, dans leur ordre de dessin.
+     *
+     * @param area la zone recherchée
+     * @param minSize la taille en dessous de laquelle les formes sont ignorées
+     * @return la liste des formes touchant la zone
+     * @see drawshop.shapes.drawing.index.QuadTree#query(Rectangle2D, double)
+     */
+    public List<Shape> getShapesIn(Rectangle2D area, double minSize) {
+        if(index != null) return index.query(area, minSize);
+
+        List<Shape> shapes = getShapeList();
+        if(shapes instanceof PackedShapeList) return ((PackedShapeList) shapes).getShapesIn(area, minSize);
+
+        List<Shape> found = new ArrayList<Shape>();
+
+        for(Shape s : getShapes()) {
+            Rectangle2D b = s.getBounds();
+            if(b.getMaxX() >= area.getMinX() && b.getMinX() <= area.getMaxX()
+                    && b.getMaxY() >= area.getMinY() && b.getMinY() <= area.getMaxY()
+                    && (b.getWidth() >= minSize || b.getHeight() >= minSize))
+                found.add(s);
+        }
+
+        return found;
+    }
+
+    /**
+     * Retourne les formes du dessin dont le rectangle englobant contient le
+     * point entré en paramètre, dans leur ordre de dessin.
+     *
+     * @param x la coordonnée x du point
+     * @param y la coordonnée y du point
+     * @return la liste des formes sous le point
+     */
+    public List<Shape> getShapesAt(double x, double y) {
+        return getShapesIn(new Rectangle2D.Double(x, y, 0, 0));
+    }
+
+    /**
+     * Effectue l'action du ShapeVisitor sur les formes touchant la zone entrée
+     * en paramètre. Sans index spatial, toutes les formes du dessin sont visitées.
+     *
+     * @param sv ShapeVisitor qui détermine l'action à effectuer
+     * @param area la zone du dessin concernée
+     */
+    public void acceptVisitor(ShapeVisitor sv, Rectangle2D area) {
+        if(index != null) for(Shape s : index.query(area)) s.acceptVisitor(sv);
+        else if(getShapeList() instanceof PackedShapeList) acceptVisitor(sv, area, 0);
+        else acceptVisitor(sv);
+    }
+
+    /**
+     * Effectue l'action du ShapeVisitor sur les formes touchant la zone entrée
+     * en paramètre, en ignorant celles dont la largeur et la hauteur sont
+     * inférieures à la taille minimale.
+     *
+     * @param sv ShapeVisitor qui détermine l'action à effectuer
+     * @param area la zone du dessin concernée
+     * @param minSize la taille en dessous de laquelle les formes sont ignorées
+     */
+    public void acceptVisitor(ShapeVisitor sv, Rectangle2D area, double minSize) {
+        List<Shape> shapes = getShapeList();
+
+        // les formes stockées en colonnes ou hors du tas sont visitées sans créer de vue
+        if(index == null && shapes instanceof PackedShapeList) ((PackedShapeList) shapes).acceptVisitor(sv, area, minSize);
+        else for(Shape s : getShapesIn(area, minSize)) s.acceptVisitor(sv);
+    }
+
+    public void addShape(Shape s) {
+        super.addShape(s);
+
+        // en stockage en colonnes, la forme ajoutée est une copie de s
+        if(index == null && !isObserved()) return;
+
+        List<Shape> shapes = getShapes();
+        Shape added = shapes.get(shapes.size()-1);
+
+        if(index != null) index.insert(added);
+        if(isObserved()) changed(added.getBounds(), added, change(shapes.size()-1, true));
+    }
+
+    public void addShape(int i, Shape s) {
+        super.addShape(i, s);
+
+        if(index == null && !isObserved()) return;
+
+        List<Shape> shapes = getShapes();
+        Shape added = shapes.get(i);
+        boolean last = i+1 == shapes.size();
+
+        if(index != null) index.insert(added, i > 0 ? shapes.get(i-1) : null, last ? null : shapes.get(i+1));
+        if(isObserved()) changed(added.getBounds(), last ? added : null, change(i, true));
+    }
+
+    public void removeShape(Shape s) {
+        int i = indexOf(s);
+        if(i < 0) return;
+
+        super.removeShape(s);
+        if(index != null) index.remove(s);
+
+        if(isObserved()) changed(s.getBounds(), null, change(i, false));
+    }
+
+    public void removeShapes(Collection<? extends Shape> removed) {
+        if(removed.isEmpty()) return;
+
+        int[] indices = isObserved() ? indicesOf(removed) : null;
+        if(indices != null && indices.length == 0) return;
+
+        // seules les formes faisant partie du dessin sont à redessiner
+        Rectangle2D area = null;
+        if(indices != null) {
+            List<Shape> shapes = getShapes();
+
+            for(int i : indices) {
+                if(area == null) area = shapes.get(i).getBounds();
+                else area.add(shapes.get(i).getBounds());
+            }
+        }
+
+        super.removeShapes(removed);
+        if(index != null) for(Shape s : removed) index.remove(s);
+
+        if(isObserved()) {
+            // les formes sont retirées de la dernière à la première, les indices restant ainsi valables
+            List<ShapeListChange> changes = new ArrayList<ShapeListChange>(indices.length);
+            for(int k = indices.length-1; k >= 0; k--) changes.add(new ShapeListChange(indices[k], 1, false));
+
+            changed(area, null, changes);
+        }
+    }
+
+    // Retourne les indices distincts des formes entrées en paramètre qui font partie du dessin, dans l'ordre croissant.
+    private int[] indicesOf(Collection<? extends Shape> shapes) {
+        int[] indices = new int[shapes.size()];
+        int count = 0;
+
+        for(Shape s : shapes) {
+            int i = indexOf(s);
+            if(i >= 0) indices[count++] = i;
+        }
+
+        Arrays.sort(indices, 0, count);
+
+        int distinct = 0;
+        for(int k = 0; k < count; k++)
+            if(distinct == 0 || indices[k] != indices[distinct-1]) indices[distinct++] = indices[k];
+
+        return Arrays.copyOf(indices, distinct);
+    }
+
+    public void moveShape(Shape s, int dx, int dy) {
+        Rectangle2D area = isObserved() ? s.getBounds() : null;
+
+        capture(s);
+        super.moveShape(s, dx, dy);
+        if(index != null) index.update(s);
+
+        if(area != null) shapeChanged(s, area);
+    }
+
+    public void mirrorShapeX(Shape s, double x) {
+        Rectangle2D area = isObserved() ? s.getBounds() : null;
+
+        capture(s);
+        super.mirrorShapeX(s, x);
+        if(index != null) index.update(s);
+
+        if(area != null) shapeChanged(s, area);
+    }
+
+    public void mirrorShapeY(Shape s, double y) {
+        Rectangle2D area = isObserved() ? s.getBounds() : null;
+
+        capture(s);
+        super.mirrorShapeY(s, y);
+        if(index != null) index.update(s);
+
+        if(area != null) shapeChanged(s, area);
+    }
+
+    // Enregistre le déplacement ou le miroir d'une forme qui occupait la zone entrée en paramètre.
+    private void shapeChanged(Shape s, Rectangle2D before) {
+        before.add(s.getBounds());
+        changed(before, null, Collections.<ShapeListChange>emptyList());
+    }
+
+    public void move(int dx, int dy) {
+        super.move(dx, dy);
+        captureAll();
+        applyTransform();
+        if(index != null) buildIndex();
+        if(isObserved()) changed(null, null, Collections.<ShapeListChange>emptyList());
+    }
+
+    public void mirrorX(double x) {
+        super.mirrorX(x);
+        captureAll();
+        applyTransform();
+        if(index != null) buildIndex();
+        if(isObserved()) changed(null, null, Collections.<ShapeListChange>emptyList());
+    }
+
+    public void mirrorY(double y) {
+        super.mirrorY(y);
+        captureAll();
+        applyTransform();
+        if(index != null) buildIndex();
+        if(isObserved()) changed(null, null, Collections.<ShapeListChange>emptyList());
+    }
+
+    /**
+     * Les formes étant copiées lors du changement de stockage, les
+     * DrawingListener sont prévenus du remplacement de toutes les formes.
+     */
+    public void setStorage(ShapeStorage storage) {
+        ShapeStorage previous = getStorage();
+
+        super.setStorage(storage);
+        if(indexed) buildIndex();
+        if(storage != previous && isObserved()) changed(null, null, null);
+    }
+
     /**
      *
      * @return le milieu de l'axe X (la largeur) du dessin
@@ -102,13 +571,26 @@ public class Drawing extends ShapeGroup {
      * avec toutes les formes redessinées parfaitement.
      */
     public Shape toStandard() {
+        return toStandard(new IdentityHashMap<ShapeGroup, ShapeGroup>());
+    }
+
+    /**
+     *
+     * @param symbols la table associant chaque symbole déjà converti à sa conversion
+     * @return le dessin actuel mais de type Perfect, les instances d'un même
+     * symbole partageant le symbole converti
+     */
+    public Drawing toStandard(Map<ShapeGroup, ShapeGroup> symbols) {
 
         List<Shape> newShapes = new ArrayList<Shape>();
 
         for(Shape shape : this.getShapes()) {
-            newShapes.add(shape.toStandard());
+            newShapes.add(toStandard(shape, symbols));
         }
 
-        return new Drawing(width, height, DrawingType.PERFECT, newShapes);
+        Drawing standard = new Drawing(width, height, DrawingType.PERFECT, newShapes);
+        standard.setStorage(getStorage());
+
+        return standard;
     }
 }
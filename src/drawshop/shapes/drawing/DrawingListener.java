@@ -0,0 +1,36 @@
+package drawshop.shapes.drawing;
+
+import drawshop.shapes.Shape;
+
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+
+/**
+ * Cette interface permet d'être prévenu des modifications d'un dessin. Elle
+ * est appelée après chaque modification, ou une seule fois à la fin d'un lot
+ * de modifications (voir {@link Drawing#beginBatch()}).
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ *
+ * @see Drawing#addDrawingListener(DrawingListener)
+ */
+public interface DrawingListener {
+
+    /**
+     * Appelée après une modification ou un lot de modifications du dessin.
+     *
+     * @param drawing le dessin modifié
+     * @param area la zone du dessin touchée par les modifications, c'est à dire
+     * l'union des rectangles englobants des formes avant et après celles-ci,
+     * ou null si tout le dessin est concerné
+     * @param appended les formes ajoutées à la fin du dessin, dans leur ordre
+     * d'ajout, si les modifications ne sont que des ajouts de formes, null sinon
+     * @param changes les ajouts et retraits de formes, dans leur ordre, une
+     * liste vide si des formes ont seulement été déplacées ou inversées, ou
+     * null si toutes les formes du dessin ont été remplacées
+     */
+    public void drawingChanged(Drawing drawing, Rectangle2D area, List<Shape> appended, List<ShapeListChange> changes);
+}
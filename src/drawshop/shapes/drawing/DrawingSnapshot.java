@@ -0,0 +1,94 @@
+package drawshop.shapes.drawing;
+
+import drawshop.shapes.PackedShapeList;
+import drawshop.shapes.Shape;
+import drawshop.shapes.factories.DrawingType;
+import drawshop.shapes.visitors.ShapeVisitor;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Cette classe représente l'état d'un dessin à un instant donné. Elle est
+ * obtenue en temps constant avec {@link Drawing#snapshot()}, et ne change
+ * plus ensuite même si le dessin continue d'être modifié.
+ *
+ * <p>Un instantané peut être lu par un autre thread que celui modifiant le
+ * dessin, par exemple pour enregistrer ou exporter le dessin en arrière-plan,
+ * sans que l'éditeur n'ait à attendre la fin de la lecture.</p>
+ *
+ * <p>Les formes de l'instantané sont des copies, ou des formes qui ne sont
+ * plus modifiées par le dessin. Elles ne doivent pas être modifiées.</p>
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ *
+ * @see PersistentShapeList
+ */
+public final class DrawingSnapshot {
+
+    private final int width;
+    private final int height;
+    private final DrawingType type;
+    private final List<Shape> shapes;
+
+    DrawingSnapshot(int width, int height, DrawingType type, List<Shape> shapes) {
+        this.width = width;
+        this.height = height;
+        this.type = type;
+        this.shapes = shapes;
+    }
+
+    /**
+     *
+     * @return la largeur du dessin
+     */
+    public int getWidth() { return this.width; }
+
+    /**
+     *
+     * @return la hauteur du dessin
+     */
+    public int getHeight() { return this.height; }
+
+    /**
+     *
+     * @return le type du dessin
+     * @see drawshop.shapes.factories.DrawingType
+     */
+    public DrawingType getType() { return this.type; }
+
+    /**
+     * La liste retournée ne peut pas être modifiée. Chaque lecture d'une
+     * forme peut en créer une copie.
+     *
+     * @return la liste des formes du dessin lors de l'instantané
+     */
+    public List<Shape> getShapes() { return Collections.unmodifiableList(this.shapes); }
+
+    /**
+     * Effectue l'action du ShapeVisitor sur chaque forme de l'instantané, sans
+     * copier les formes qui n'ont pas été modifiées depuis l'instantané.
+     *
+     * @param sv ShapeVisitor qui détermine l'action à effectuer
+     * @see PersistentShapeList#acceptVisitor(List, ShapeVisitor)
+     */
+    public void acceptVisitor(ShapeVisitor sv) {
+        // les formes stockées en colonnes sont visitées sans créer de vue
+        if(shapes instanceof PackedShapeList) ((PackedShapeList) shapes).acceptVisitor(sv);
+        else PersistentShapeList.acceptVisitor(shapes, sv);
+    }
+
+    /**
+     * Crée un nouveau dessin contenant les formes de l'instantané, par exemple
+     * pour l'enregistrer. Les formes du dessin créé ne doivent pas être
+     * modifiées.
+     *
+     * @return un nouveau dessin identique au dessin lors de l'instantané
+     */
+    public Drawing toDrawing() {
+        return new Drawing(width, height, type, shapes);
+    }
+}
@@ -0,0 +1,650 @@
+package drawshop.shapes.drawing;
+
+import drawshop.shapes.Shape;
+import drawshop.shapes.Shapes;
+import drawshop.shapes.visitors.ShapeVisitor;
+
+import java.io.Serializable;
+import java.lang.invoke.VarHandle;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Cette classe est une liste de formes stockée dans un arbre persistant : un
+ * arbre équilibré dont les noeuds ne sont jamais modifiés. Un ajout ou un
+ * retrait ne recrée que les noeuds du chemin menant à la forme, soit O(log n)
+ * noeuds, et partage tous les autres avec la version précédente de la liste.
+ *
+ * <p>Un instantané de la liste (voir {@link #snapshot()}) conserve donc
+ * simplement la racine de l'arbre, en temps constant. Il peut être lu par
+ * d'autres threads pendant que la liste continue d'être modifiée, sans
+ * qu'aucun des deux n'attende l'autre.</p>
+ *
+ * <p>Les formes pouvant être modifiées, chacune est rangée dans une entrée
+ * partagée par la liste et ses instantanés. Avant la première modification
+ * d'une forme présente dans un instantané encore utilisé, une copie de la
+ * forme est conservée dans son entrée (voir {@link #capture(Shape)}) : les
+ * instantanés lisent cette copie, et la forme peut être modifiée sans les
+ * perturber. Il n'y a donc aucune copie tant qu'aucun instantané n'est
+ * utilisé, et au plus une copie par forme modifiée et par instantané.</p>
+ *
+ * <p>Une forme qui n'a pas été modifiée depuis l'instantané est copiée à
+ * chaque lecture dans la liste de l'instantané, celle-ci pouvant être
+ * conservée alors que la forme est modifiée. Elle est en revanche visitée
+ * sans copie (voir {@link #acceptVisitor(List, ShapeVisitor)}).</p>
+ *
+ * <p>Chaque entrée de la liste possède aussi un ordre de dessin, croissant
+ * le long de la liste et espacé comme dans {@link drawshop.shapes.drawing.index.QuadTree}.
+ * L'indice d'une forme est ainsi retrouvé en descendant l'arbre depuis sa
+ * racine, en O(log n), et une forme est retirée en O(log n) sans parcourir
+ * la liste. Plusieurs formes peuvent être retirées en un seul parcours de la
+ * liste (voir {@link #removeAll(Collection)}).</p>
+ *
+ * <p>La liste est sauvegardée comme une ArrayList. Elle ne peut contenir
+ * qu'une seule fois la même forme, et ne doit être modifiée que par un seul
+ * thread.</p>
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ *
+ * @see Drawing#snapshot()
+ */
+public class PersistentShapeList extends AbstractList<Shape> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // écart entre les ordres de dessin de deux formes ajoutées l'une après l'autre
+    private static final long ORDER_GAP = 1L << 20;
+    private static final long REMOVED = Long.MIN_VALUE; // ordre des entrées retirées par removeAll
+
+    private transient Node root;
+    private transient Map<Shape, Entry> entries;
+
+    // incrémentée à chaque instantané : une forme modifiée depuis le dernier instantané n'est pas copiée à nouveau
+    private transient long generation;
+    private transient List<WeakReference<Snapshot>> snapshots;
+
+    /**
+     * Instancie une liste vide.
+     */
+    public PersistentShapeList() {
+        this(new ArrayList<Shape>());
+    }
+
+    /**
+     * Instancie une liste contenant les formes entrées en paramètre.
+     *
+     * @param shapes les formes de la liste
+     */
+    public PersistentShapeList(Collection<? extends Shape> shapes) {
+        this.entries = new IdentityHashMap<Shape, Entry>(shapes.size());
+        this.snapshots = new ArrayList<WeakReference<Snapshot>>();
+
+        Entry[] all = new Entry[shapes.size()];
+        int i = 0;
+        for(Shape s : shapes) {
+            all[i] = enter(s, i*ORDER_GAP);
+            i++;
+        }
+
+        this.root = build(all, 0, all.length);
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    public Shape get(int i) {
+        checkIndex(i, size());
+        return get(root, i).shape;
+    }
+
+    public void add(int i, Shape s) {
+        int size = size();
+        if(i < 0 || i > size) throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+
+        if(i == size) root = insert(root, i, enter(s, i == 0 ? 0 : get(root, i-1).order + ORDER_GAP));
+        else {
+            Entry next = get(root, i);
+            long low = i == 0 ? next.order - 2*ORDER_GAP : get(root, i-1).order;
+
+            // plus de place entre les deux formes, les ordres sont de nouveau espacés
+            if(next.order - low < 2) {
+                renumber();
+                low = i == 0 ? next.order - 2*ORDER_GAP : get(root, i-1).order;
+            }
+
+            root = insert(root, i, enter(s, low + (next.order - low)/2));
+        }
+
+        modCount++;
+    }
+
+    public Shape set(int i, Shape s) {
+        checkIndex(i, size());
+
+        Entry e = get(root, i);
+        leave(e);
+
+        root = replace(root, i, enter(s, e.order));
+        return e.shape;
+    }
+
+    public Shape remove(int i) {
+        checkIndex(i, size());
+
+        Entry e = get(root, i);
+        leave(e);
+
+        root = remove(root, i);
+        modCount++;
+        return e.shape;
+    }
+
+    public boolean remove(Object o) {
+        int i = indexOf(o);
+        if(i < 0) return false;
+
+        remove(i);
+        return true;
+    }
+
+    /**
+     * Retire les formes de la collection entrée en paramètre en conservant
+     * l'ordre des autres formes. Lorsque les formes retirées sont nombreuses,
+     * l'arbre est reconstruit en un seul parcours de la liste, en O(n), au
+     * lieu d'être modifié une fois par forme.
+     *
+     * @param c les formes à retirer
+     * @return true si la liste a été modifiée
+     */
+    public boolean removeAll(Collection<?> c) {
+        List<Entry> removed = new ArrayList<Entry>();
+
+        for(Object o : c) {
+            Entry e = entries.get(o);
+            if(e == null || e.order == REMOVED) continue;
+
+            leave(e);
+            removed.add(e);
+        }
+
+        if(removed.isEmpty()) return false;
+
+        int size = size();
+
+        // peu de formes à retirer : chaque retrait ne recrée que O(log n) noeuds
+        if(removed.size()*(32 - Integer.numberOfLeadingZeros(size)) < size) {
+            for(Entry e : removed) {
+                root = remove(root, indexOf(root, e.order));
+                e.order = REMOVED;
+            }
+        }
+        else {
+            for(Entry e : removed) e.order = REMOVED;
+
+            Entry[] kept = new Entry[size - removed.size()];
+            int i = 0;
+
+            for(Walk walk = new Walk(root); walk.hasNext();) {
+                Entry e = walk.next();
+                if(e.order != REMOVED) kept[i++] = e;
+            }
+
+            root = build(kept, 0, kept.length);
+        }
+
+        modCount++;
+        return true;
+    }
+
+    public void clear() {
+        for(Entry e : entries.values()) capture(e);
+
+        entries.clear();
+        root = null;
+        modCount++;
+    }
+
+    public boolean contains(Object o) {
+        return entries.containsKey(o);
+    }
+
+    /**
+     * L'indice de la forme est retrouvé grâce à son ordre de dessin, en O(log n).
+     */
+    public int indexOf(Object o) {
+        Entry e = entries.get(o);
+        return e == null ? -1 : indexOf(root, e.order);
+    }
+
+    public int lastIndexOf(Object o) {
+        return indexOf(o);
+    }
+
+    /**
+     * L'itérateur parcourt la liste telle qu'elle était lors de sa création :
+     * la liste peut être modifiée pendant le parcours.
+     */
+    public Iterator<Shape> iterator() {
+        final Walk walk = new Walk(root);
+
+        return new Iterator<Shape>() {
+            public boolean hasNext() { return walk.hasNext(); }
+            public Shape next() { return walk.next().shape; }
+        };
+    }
+
+    /**
+     * Retourne un instantané de la liste, en temps constant. L'instantané ne
+     * peut pas être modifié, et contient toujours les formes telles qu'elles
+     * étaient lors de son obtention, si celles-ci ne sont ensuite modifiées
+     * qu'après un appel à {@link #capture(Shape)}.
+     *
+     * <p>Les formes lues dans l'instantané sont des copies, ou des formes qui
+     * ne sont plus modifiées par la liste. Elles ne doivent pas être
+     * modifiées.</p>
+     *
+     * @return l'instantané de la liste, pouvant être lu par n'importe quel thread
+     */
+    public List<Shape> snapshot() {
+        Snapshot snapshot = new Snapshot(root, generation++);
+        snapshots.add(new WeakReference<Snapshot>(snapshot));
+        return snapshot;
+    }
+
+    /**
+     * Effectue l'action du ShapeVisitor sur chaque forme d'une liste. Les
+     * formes d'un instantané de PersistentShapeList qui n'ont pas été
+     * modifiées depuis l'instantané sont visitées directement, sans copie.
+     *
+     * <p>Une telle forme modifiée pendant sa visite est visitée une seconde
+     * fois, telle qu'elle était lors de l'instantané. La première visite a pu
+     * la voir en cours de modification : le résultat de la visite n'est exact
+     * que si aucune forme n'a été modifiée entre temps, ce qu'indiquent les
+     * DrawingListener du dessin.</p>
+     *
+     * @param shapes les formes à visiter, par exemple un instantané
+     * @param sv ShapeVisitor qui détermine l'action à effectuer
+     */
+    static void acceptVisitor(List<Shape> shapes, ShapeVisitor sv) {
+        if(!(shapes instanceof Snapshot)) {
+            for(Shape s : shapes) s.acceptVisitor(sv);
+            return;
+        }
+
+        Snapshot snapshot = (Snapshot) shapes;
+
+        try {
+            for(Walk walk = new Walk(snapshot.root); walk.hasNext();) visit(walk.next(), snapshot.generation, sv);
+        } finally {
+            Reference.reachabilityFence(snapshot); // les formes modifiées sont copiées tant que l'instantané est utilisé
+        }
+    }
+
+    /**
+     * Prépare la modification de la forme entrée en paramètre : si elle n'a
+     * pas été modifiée depuis un instantané encore utilisé, une copie en est
+     * conservée pour cet instantané. Cette méthode doit être appelée avant
+     * toute modification d'une forme de la liste.
+     *
+     * @param s la forme qui va être modifiée
+     */
+    public void capture(Shape s) {
+        Entry e = entries.get(s);
+        if(e != null) capture(e);
+    }
+
+    /**
+     * Prépare la modification de toutes les formes de la liste.
+     *
+     * @see #capture(Shape)
+     */
+    public void captureAll() {
+        for(Entry e : entries.values()) capture(e);
+    }
+
+    private Entry enter(Shape s, long order) {
+        Entry e = new Entry(s, generation, order);
+        entries.put(s, e);
+        return e;
+    }
+
+    // Espace de nouveau les ordres de dessin de toutes les formes, sans changer leur ordre.
+    private void renumber() {
+        long order = 0;
+
+        for(Walk walk = new Walk(root); walk.hasNext(); order += ORDER_GAP)
+            walk.next().order = order;
+    }
+
+    /* Retire l'entrée de la liste. La forme pouvant ensuite être modifiée
+     * librement, les instantanés la contenant lisent désormais une copie.
+     */
+    private void leave(Entry e) {
+        capture(e);
+        if(entries.get(e.shape) == e) entries.remove(e.shape);
+    }
+
+    private void capture(Entry e) {
+        if(e.since == generation) return;
+
+        long oldest = generation, newest = -1;
+
+        for(Iterator<WeakReference<Snapshot>> it = snapshots.iterator(); it.hasNext();) {
+            Snapshot snapshot = it.next().get();
+
+            if(snapshot == null) it.remove();
+            else {
+                oldest = Math.min(oldest, snapshot.generation);
+                newest = Math.max(newest, snapshot.generation);
+            }
+        }
+
+        // les copies lues par des instantanés qui ne sont plus utilisés sont oubliées
+        Version versions = keep(e.versions, oldest);
+        if(newest >= e.since) versions = new Version(Shapes.copyOf(e.shape), generation - 1, versions);
+
+        e.versions = versions;
+        e.changes++;
+        e.since = generation;
+
+        // la forme ne doit pas être modifiée avant que les instantanés puissent voir le changement
+        VarHandle.storeStoreFence();
+    }
+
+    // Retourne les copies lues par des instantanés de génération supérieure ou égale à oldest.
+    private static Version keep(Version v, long oldest) {
+        if(v == null || v.until < oldest) return null;
+
+        Version older = keep(v.older, oldest);
+        return older == v.older ? v : new Version(v.shape, v.until, older);
+    }
+
+    /* Retourne la forme de l'entrée telle qu'elle était lors de l'instantané
+     * de génération g : la copie conservée pour cet instantané s'il y en a
+     * une, sinon une copie de la forme, faite en vérifiant que la forme n'a
+     * pas commencé à être modifiée entre temps.
+     */
+    private static Shape read(Entry e, long g) {
+        while(true) {
+            int changes = e.changes;
+
+            Version found = version(e, g);
+            if(found != null) return found.shape;
+
+            Shape copy;
+
+            try {
+                copy = Shapes.copyOf(e.shape);
+            } catch (RuntimeException ex) {
+                // les formes d'un groupe modifié pendant la copie ont pu être lues dans un état incohérent
+                VarHandle.acquireFence();
+                if(e.changes == changes) throw ex;
+                continue;
+            }
+
+            // les lectures de la copie ne doivent pas avoir lieu après la seconde lecture de changes
+            VarHandle.acquireFence();
+            if(e.changes == changes) return copy;
+        }
+    }
+
+    /* Visite la forme de l'entrée telle qu'elle était lors de l'instantané de
+     * génération g : la copie conservée pour cet instantané s'il y en a une,
+     * sinon la forme elle-même, puis sa copie si elle a commencé à être
+     * modifiée pendant la visite.
+     */
+    private static void visit(Entry e, long g, ShapeVisitor sv) {
+        int changes = e.changes;
+
+        Version found = version(e, g);
+        if(found != null) {
+            found.shape.acceptVisitor(sv);
+            return;
+        }
+
+        try {
+            e.shape.acceptVisitor(sv);
+        } catch (RuntimeException ex) {
+            VarHandle.acquireFence();
+            if(e.changes == changes) throw ex;
+        }
+
+        VarHandle.acquireFence();
+        if(e.changes == changes) return;
+
+        found = version(e, g);
+        if(found != null) found.shape.acceptVisitor(sv);
+    }
+
+    // Retourne la plus ancienne copie lue par l'instantané de génération g, ou null si la forme n'a pas été copiée depuis.
+    private static Version version(Entry e, long g) {
+        Version found = null;
+        for(Version v = e.versions; v != null && v.until >= g; v = v.older) found = v;
+        return found;
+    }
+
+    // La liste est sauvegardée sans ses instantanés.
+    private Object writeReplace() {
+        return new ArrayList<Shape>(this);
+    }
+
+    private static void checkIndex(int i, int size) {
+        if(i < 0 || i >= size) throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+    }
+
+    /* Les opérations sur l'arbre. Il s'agit d'un arbre AVL dont chaque noeud
+     * connaît le nombre d'entrées de son sous-arbre, afin de retrouver une
+     * entrée par son indice. Les noeuds ne sont jamais modifiés : chaque
+     * opération retourne la racine d'un nouvel arbre.
+     */
+
+    private static int size(Node n) { return n == null ? 0 : n.size; }
+
+    private static int height(Node n) { return n == null ? 0 : n.height; }
+
+    private static Entry get(Node n, int i) {
+        while(true) {
+            int left = size(n.left);
+
+            if(i < left) n = n.left;
+            else if(i > left) {
+                i -= left + 1;
+                n = n.right;
+            }
+            else return n.entry;
+        }
+    }
+
+    // Retourne l'indice de l'entrée ayant l'ordre de dessin entré en paramètre.
+    private static int indexOf(Node n, long order) {
+        int i = 0;
+
+        while(n != null) {
+            if(order < n.entry.order) n = n.left;
+            else if(order > n.entry.order) {
+                i += size(n.left) + 1;
+                n = n.right;
+            }
+            else return i + size(n.left);
+        }
+
+        return -1;
+    }
+
+    private static Node build(Entry[] entries, int from, int to) {
+        if(from >= to) return null;
+
+        int middle = (from + to) >>> 1;
+        return new Node(entries[middle], build(entries, from, middle), build(entries, middle + 1, to));
+    }
+
+    private static Node insert(Node n, int i, Entry e) {
+        if(n == null) return new Node(e, null, null);
+
+        int left = size(n.left);
+
+        if(i <= left) return balance(n.entry, insert(n.left, i, e), n.right);
+        return balance(n.entry, n.left, insert(n.right, i - left - 1, e));
+    }
+
+    private static Node replace(Node n, int i, Entry e) {
+        int left = size(n.left);
+
+        if(i < left) return new Node(n.entry, replace(n.left, i, e), n.right);
+        if(i > left) return new Node(n.entry, n.left, replace(n.right, i - left - 1, e));
+        return new Node(e, n.left, n.right);
+    }
+
+    private static Node remove(Node n, int i) {
+        int left = size(n.left);
+
+        if(i < left) return balance(n.entry, remove(n.left, i), n.right);
+        if(i > left) return balance(n.entry, n.left, remove(n.right, i - left - 1));
+
+        if(n.left == null) return n.right;
+        if(n.right == null) return n.left;
+
+        // l'entrée est remplacée par la première entrée du sous-arbre droit
+        return balance(get(n.right, 0), n.left, remove(n.right, 0));
+    }
+
+    // Crée un noeud, en effectuant une ou deux rotations si ses sous-arbres sont déséquilibrés.
+    private static Node balance(Entry e, Node left, Node right) {
+        if(height(left) > height(right) + 1) {
+            if(height(left.left) >= height(left.right))
+                return new Node(left.entry, left.left, new Node(e, left.right, right));
+
+            return new Node(left.right.entry, new Node(left.entry, left.left, left.right.left), new Node(e, left.right.right, right));
+        }
+
+        if(height(right) > height(left) + 1) {
+            if(height(right.right) >= height(right.left))
+                return new Node(right.entry, new Node(e, left, right.left), right.right);
+
+            return new Node(right.left.entry, new Node(e, left, right.left.left), new Node(right.entry, right.left.right, right.right));
+        }
+
+        return new Node(e, left, right);
+    }
+
+    private static final class Node {
+
+        private final Entry entry;
+        private final Node left, right;
+        private final int size, height;
+
+        private Node(Entry entry, Node left, Node right) {
+            this.entry = entry;
+            this.left = left;
+            this.right = right;
+            this.size = size(left) + size(right) + 1;
+            this.height = Math.max(height(left), height(right)) + 1;
+        }
+    }
+
+    /* L'entrée d'une forme, partagée par la liste et ses instantanés. Seul le
+     * thread modifiant la liste écrit dans l'entrée, les champs volatils
+     * pouvant être lus par les instantanés. L'ordre de dessin n'est utilisé
+     * que par la liste.
+     */
+    private static final class Entry {
+
+        private final Shape shape;
+        private long order;
+        private long since; // génération depuis laquelle la forme n'a plus été copiée
+        private volatile Version versions; // copies de la forme, de la plus récente à la plus ancienne
+        private volatile int changes; // incrémenté à chaque nouvelle copie
+
+        private Entry(Shape shape, long since, long order) {
+            this.shape = shape;
+            this.since = since;
+            this.order = order;
+        }
+    }
+
+    // Une copie d'une forme, lue par les instantanés de génération inférieure ou égale à until.
+    private static final class Version {
+
+        private final Shape shape;
+        private final long until;
+        private final Version older;
+
+        private Version(Shape shape, long until, Version older) {
+            this.shape = shape;
+            this.until = until;
+            this.older = older;
+        }
+    }
+
+    // Parcourt les entrées d'un arbre dans l'ordre de la liste.
+    private static final class Walk implements Iterator<Entry> {
+
+        private final ArrayDeque<Node> path = new ArrayDeque<Node>();
+
+        private Walk(Node root) {
+            descend(root);
+        }
+
+        private void descend(Node n) {
+            for(; n != null; n = n.left) path.push(n);
+        }
+
+        public boolean hasNext() { return !path.isEmpty(); }
+
+        public Entry next() {
+            if(path.isEmpty()) throw new NoSuchElementException();
+
+            Node n = path.pop();
+            descend(n.right);
+            return n.entry;
+        }
+    }
+
+    private static final class Snapshot extends AbstractList<Shape> {
+
+        private final Node root;
+        private final long generation;
+
+        private Snapshot(Node root, long generation) {
+            this.root = root;
+            this.generation = generation;
+        }
+
+        public int size() {
+            return PersistentShapeList.size(root);
+        }
+
+        public Shape get(int i) {
+            checkIndex(i, size());
+
+            try { return read(PersistentShapeList.get(root, i), generation); }
+            finally { Reference.reachabilityFence(this); } // l'instantané reste utilisé pendant la lecture
+        }
+
+        public Iterator<Shape> iterator() {
+            final Walk walk = new Walk(root);
+
+            return new Iterator<Shape>() {
+                public boolean hasNext() { return walk.hasNext(); }
+
+                public Shape next() {
+                    try { return read(walk.next(), generation); }
+                    finally { Reference.reachabilityFence(Snapshot.this); }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package drawshop.shapes.drawing;
+
+/**
+ * Cette classe décrit l'ajout ou le retrait de formes consécutives d'un
+ * dessin, transmis aux DrawingListener. L'indice est celui de la première
+ * forme concernée au moment de la modification, c'est à dire après les
+ * modifications précédentes du même lot.
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ *
+ * @see DrawingListener
+ */
+public final class ShapeListChange {
+
+    private final int index;
+    private final int count;
+    private final boolean insertion;
+
+    /**
+     * Instancie l'ajout ou le retrait de formes consécutives.
+     *
+     * @param index l'indice de la première forme ajoutée ou retirée
+     * @param count le nombre de formes ajoutées ou retirées
+     * @param insertion true pour un ajout, false pour un retrait
+     */
+    ShapeListChange(int index, int count, boolean insertion) {
+        this.index = index;
+        this.count = count;
+        this.insertion = insertion;
+    }
+
+    /**
+     *
+     * @return l'indice dans le dessin de la première forme ajoutée ou retirée
+     */
+    public int getIndex() { return index; }
+
+    /**
+     *
+     * @return le nombre de formes ajoutées ou retirées
+     */
+    public int getCount() { return count; }
+
+    /**
+     *
+     * @return true si les formes ont été ajoutées, false si elles ont été retirées
+     */
+    public boolean isInsertion() { return insertion; }
+
+    /* Retourne la modification regroupant celle-ci et la suivante si leurs
+     * formes sont consécutives, null sinon. Les ajouts sont regroupés lorsque
+     * la suivante ajoute des formes parmi celles-ci ou juste après, et les
+     * retraits lorsque la suivante retire des formes qui les entourent.
+     */
+    ShapeListChange merge(ShapeListChange next) {
+        if(next.insertion != insertion) return null;
+
+        if(insertion)
+            return next.index >= index && next.index <= index + count ? new ShapeListChange(index, count + next.count, true) : null;
+
+        return next.index <= index && index <= next.index + next.count ? new ShapeListChange(next.index, count + next.count, false) : null;
+    }
+}
@@ -0,0 +1,70 @@
+package drawshop.shapes.drawing.export;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Cette classe représente un fichier en cours d'export. L'image est écrite
+ * dans un fichier temporaire placé dans le même dossier, qui ne remplace le
+ * fichier d'origine qu'une fois complet : un export annulé ou échoué laisse
+ * le fichier d'origine intact.
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ */
+final class ExportFile {
+
+    private final Path target;
+    private final Path temporary;
+    private boolean committed;
+
+    /**
+     * Crée le fichier temporaire dans lequel écrire l'export.
+     *
+     * @param fileName le nom du fichier à remplacer une fois l'export terminé
+     * @throws IOException si le fichier temporaire ne peut pas être créé
+     */
+    ExportFile(String fileName) throws IOException {
+        this.target = Paths.get(fileName).toAbsolutePath();
+        this.temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+    }
+
+    /**
+     *
+     * @return le fichier temporaire dans lequel écrire l'export
+     */
+    Path getTemporaryPath() { return temporary; }
+
+    /**
+     * Remplace le fichier d'origine par le fichier temporaire, en une seule
+     * opération lorsque le système de fichiers le permet.
+     *
+     * @throws IOException
+     */
+    void commit() throws IOException {
+        try {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        committed = true;
+    }
+
+    /**
+     * Supprime le fichier temporaire s'il n'a pas remplacé le fichier d'origine.
+     */
+    void discard() {
+        if(committed) return;
+
+        try {
+            Files.deleteIfExists(temporary);
+        } catch (IOException e) { e.printStackTrace(); }
+    }
+}
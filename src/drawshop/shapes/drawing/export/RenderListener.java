@@ -0,0 +1,24 @@
+package drawshop.shapes.drawing.export;
+
+/**
+ * Cette interface permet d'être prévenu de l'avancement du rendu d'un dessin.
+ * Elle est appelée depuis les threads effectuant le rendu.
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ *
+ * @see TiledRenderer
+ * @see StreamingPngWriter
+ */
+public interface RenderListener {
+
+    /**
+     * Appelée après le rendu de chaque partie du dessin.
+     *
+     * @param rendered le nombre de parties déjà dessinées
+     * @param total le nombre total de parties
+     */
+    public void partRendered(int rendered, int total);
+}
@@ -0,0 +1,275 @@
+package drawshop.shapes.drawing.export;
+
+import drawshop.shapes.drawing.Drawing;
+import drawshop.shapes.drawing.DrawingSnapshot;
+import drawshop.shapes.visitors.ShapeDrawingVisitor;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CancellationException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Cette classe permet d'exporter un dessin au format PNG sans jamais avoir
+ * l'image entière en mémoire.
+ *
+ * <p>Le dessin est dessiné par bandes horizontales de {@value BAND_HEIGHT}
+ * pixels de haut dans une unique image réutilisée, avec un Graphics2D décalé
+ * et limité à la bande. Les lignes de chaque bande sont directement compressées
+ * et écrites dans le fichier PNG. La mémoire utilisée dépend donc uniquement
+ * de la largeur du dessin et de la hauteur des bandes.</p>
+ *
+ * <p>Comme pour le {@link TiledRenderer}, l'écriture peut être annulée depuis
+ * un autre thread et son avancement peut être suivi grâce à un
+ * {@link RenderListener}.</p>
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ *
+ * @see drawshop.shapes.visitors.ShapeDrawingVisitor
+ */
+public class StreamingPngWriter {
+
+    public static final int BAND_HEIGHT = 256;
+
+    private static final byte[] SIGNATURE = { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private final DrawingSnapshot snapshot;
+    private Drawing drawing;
+
+    private RenderListener listener;
+    private volatile boolean cancelled;
+
+    /**
+     * Instancie un StreamingPngWriter pour le dessin entré en paramètre.
+     *
+     * <p>Un instantané du dessin est conservé afin que l'écriture ne soit pas
+     * perturbée par la modification du dessin. Le dessin à écrire n'est
+     * reconstruit à partir de l'instantané qu'au début de l'écriture.</p>
+     *
+     * @param drawing le dessin à exporter
+     */
+    public StreamingPngWriter(Drawing drawing) {
+        this.snapshot = drawing.snapshot();
+    }
+
+    /**
+     * Remplace l'objet prévenu de l'avancement de l'écriture. Une partie
+     * correspond à une bande.
+     *
+     * @param listener le nouveau RenderListener, ou null
+     */
+    public void setListener(RenderListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Demande l'annulation de l'écriture. Un fichier en cours d'écriture
+     * n'est pas modifié (voir {@link #write(String)}).
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Exporte le dessin dans le fichier entré en paramètre. L'image est écrite
+     * dans un fichier temporaire qui ne remplace le fichier qu'une fois
+     * l'image complète : si l'écriture est annulée ou échoue, le fichier
+     * n'est pas modifié.
+     *
+     * @param fileName le nom du fichier .png à écrire
+     * @throws IOException
+     * @throws CancellationException si l'écriture a été annulée
+     */
+    public void write(String fileName) throws IOException, CancellationException {
+        ExportFile file = new ExportFile(fileName);
+
+        try {
+            OutputStream out = new BufferedOutputStream(Files.newOutputStream(file.getTemporaryPath()));
+            try { write(out); }
+            finally { out.close(); }
+
+            file.commit();
+        } finally {
+            file.discard();
+        }
+    }
+
+    /**
+     * Exporte le dessin au format PNG dans le flux entré en paramètre.
+     * Le flux n'est pas fermé. Un dessin sans largeur ou sans hauteur est
+     * exporté dans une image d'un pixel de large ou de haut.
+     *
+     * @param out le flux dans lequel écrire l'image
+     * @throws IOException
+     * @throws CancellationException si l'écriture a été annulée
+     */
+    public void write(OutputStream out) throws IOException, CancellationException {
+
+        // une image PNG fait au moins un pixel de large et de haut, même pour un dessin vide
+        int width = Math.max(1, snapshot.getWidth());
+        int height = Math.max(1, snapshot.getHeight());
+
+        drawing = snapshot.toDrawing();
+        drawing.setSpatialIndex(true);
+
+        out.write(SIGNATURE);
+        writeHeader(out, width, height);
+
+        ChunkOutputStream idat = new ChunkOutputStream(out, "IDAT");
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+
+        // la mémoire native du Deflater est libérée même si l'écriture est annulée
+        try {
+            writePixels(new DeflaterOutputStream(idat, deflater, CHUNK_SIZE), width, height);
+        } finally {
+            deflater.end();
+        }
+
+        idat.flush();
+
+        writeChunk(out, "IEND", new byte[0], 0);
+        out.flush();
+    }
+
+    // Dessine les bandes du dessin et écrit leurs lignes dans le flux compressé.
+    private void writePixels(DeflaterOutputStream pixels, int width, int height) throws IOException {
+
+        BufferedImage band = new BufferedImage(width, Math.min(BAND_HEIGHT, height), BufferedImage.TYPE_INT_RGB);
+        int[] rgb = ((DataBufferInt) band.getRaster().getDataBuffer()).getData();
+        byte[] row = new byte[1 + 3*width]; // le premier octet indique le filtre, 0 : aucun
+
+        int bands = (height + band.getHeight() - 1) / band.getHeight();
+
+        for(int b = 0; b < bands; b++) {
+
+            if(cancelled) throw new CancellationException("export cancelled");
+
+            int y = b * band.getHeight();
+            int bandHeight = Math.min(band.getHeight(), height - y);
+
+            renderBand(band, y);
+
+            for(int line = 0; line < bandHeight; line++) {
+                int offset = line * width;
+
+                for(int x = 0; x < width; x++) {
+                    int pixel = rgb[offset + x];
+                    row[1 + 3*x] = (byte) (pixel >> 16);
+                    row[2 + 3*x] = (byte) (pixel >> 8);
+                    row[3 + 3*x] = (byte) pixel;
+                }
+
+                pixels.write(row);
+            }
+
+            if(listener != null) listener.partRendered(b+1, bands);
+        }
+
+        pixels.finish();
+    }
+
+    /* Dessine dans l'image la bande du dessin commençant à la ligne y.
+     */
+    private void renderBand(BufferedImage band, int y) {
+
+        Graphics2D g = band.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, band.getWidth(), band.getHeight());
+
+        Rectangle area = new Rectangle(0, y, band.getWidth(), band.getHeight());
+
+        g.translate(0, -y);
+        g.clip(area);
+
+        area.grow(1, 1);
+        drawing.acceptVisitor(new ShapeDrawingVisitor(g), area);
+        g.dispose();
+    }
+
+    // Ecrit le chunk IHDR : image RGB 8 bits par canal, sans entrelacement.
+    private static void writeHeader(OutputStream out, int width, int height) throws IOException {
+        ByteArrayOutputStream ihdr = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(ihdr);
+
+        data.writeInt(width);
+        data.writeInt(height);
+        data.writeByte(8);  // profondeur
+        data.writeByte(2);  // couleurs RGB
+        data.writeByte(0);  // compression deflate
+        data.writeByte(0);  // filtrage adaptatif
+        data.writeByte(0);  // pas d'entrelacement
+
+        writeChunk(out, "IHDR", ihdr.toByteArray(), ihdr.size());
+    }
+
+    // Ecrit un chunk PNG : sa taille, son type, ses données et leur CRC.
+    private static void writeChunk(OutputStream out, String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+
+        DataOutputStream chunk = new DataOutputStream(out);
+        chunk.writeInt(length);
+        chunk.write(typeBytes);
+        chunk.write(data, 0, length);
+        chunk.writeInt((int) crc.getValue());
+    }
+
+    /* Flux découpant les données écrites en chunks PNG d'au plus CHUNK_SIZE
+     * octets. Un chunk est écrit à chaque fois que le tampon est plein ou que
+     * le flux est vidé. Le flux sous-jacent n'est jamais fermé.
+     */
+    private static class ChunkOutputStream extends OutputStream {
+
+        private final OutputStream out;
+        private final String type;
+        private final byte[] buffer;
+        private int count;
+
+        private ChunkOutputStream(OutputStream out, String type) {
+            this.out = out;
+            this.type = type;
+            this.buffer = new byte[CHUNK_SIZE];
+        }
+
+        public void write(int b) throws IOException {
+            if(count == buffer.length) flush();
+            buffer[count++] = (byte) b;
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            while(len > 0) {
+                if(count == buffer.length) flush();
+
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        public void flush() throws IOException {
+            if(count == 0) return;
+
+            writeChunk(out, type, buffer, count);
+            count = 0;
+        }
+    }
+}
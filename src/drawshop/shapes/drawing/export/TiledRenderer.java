@@ -0,0 +1,183 @@
+package drawshop.shapes.drawing.export;
+
+import drawshop.shapes.Shape;
+import drawshop.shapes.drawing.Drawing;
+import drawshop.shapes.drawing.DrawingSnapshot;
+import drawshop.shapes.visitors.ShapeDrawingVisitor;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cette classe permet de dessiner un dessin entier dans une image en
+ * utilisant plusieurs threads.
+ *
+ * <p>L'image est découpée en tuiles carrées de {@value TILE_SIZE} pixels de côté.
+ * Chaque tuile est dessinée par une tâche d'un ForkJoinPool, avec son propre
+ * Graphics2D limité à la zone de la tuile. Seules les formes touchant la tuile
+ * sont visitées grâce à l'index spatial du dessin. Les tuiles partagent les
+ * pixels de l'image finale, qui est donc assemblée sans copie.</p>
+ *
+ * <p>Le rendu peut être annulé depuis un autre thread avec {@link #cancel()},
+ * et son avancement peut être suivi grâce à un {@link RenderListener}.</p>
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ *
+ * @see drawshop.shapes.visitors.ShapeDrawingVisitor
+ */
+public class TiledRenderer {
+
+    public static final int TILE_SIZE = 512;
+
+    private final DrawingSnapshot snapshot;
+    private final ForkJoinPool pool;
+
+    private Drawing drawing;
+
+    private RenderListener listener;
+    private volatile boolean cancelled;
+
+    /**
+     * Instancie un TiledRenderer utilisant le ForkJoinPool commun.
+     *
+     * @param drawing le dessin à dessiner
+     */
+    public TiledRenderer(Drawing drawing) {
+        this(drawing, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Instancie un TiledRenderer utilisant le ForkJoinPool entré en paramètre.
+     *
+     * <p>Un instantané du dessin est conservé afin que le rendu ne soit pas
+     * perturbé par la modification du dessin. Le dessin à rendre n'est
+     * reconstruit à partir de l'instantané qu'au début du rendu.</p>
+     *
+     * @param drawing le dessin à dessiner
+     * @param pool le ForkJoinPool dans lequel dessiner les tuiles
+     */
+    public TiledRenderer(Drawing drawing, ForkJoinPool pool) {
+        this.snapshot = drawing.snapshot();
+        this.pool = pool;
+    }
+
+    /**
+     * Remplace l'objet prévenu de l'avancement du rendu. Une partie
+     * correspond à une tuile.
+     *
+     * @param listener le nouveau RenderListener, ou null
+     */
+    public void setListener(RenderListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Demande l'annulation du rendu. Les tuiles en cours de rendu sont
+     * terminées mais aucune nouvelle tuile n'est commencée.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Dessine le dessin sur un fond blanc dans une nouvelle image de la
+     * taille du dessin.
+     *
+     * @return l'image contenant le dessin
+     * @throws CancellationException si le rendu a été annulé
+     */
+    public BufferedImage render() throws CancellationException {
+
+        // comme pour le StreamingPngWriter, l'image fait au moins un pixel de large et de haut
+        final int width = Math.max(1, snapshot.getWidth());
+        final int height = Math.max(1, snapshot.getHeight());
+
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+        drawing = snapshot.toDrawing();
+        drawing.setSpatialIndex(true);
+
+        final List<ForkJoinTask<?>> tiles = new ArrayList<ForkJoinTask<?>>();
+        final AtomicInteger rendered = new AtomicInteger();
+
+        for(int y = 0; y < height; y += TILE_SIZE) {
+            for(int x = 0; x < width; x += TILE_SIZE) {
+
+                final Rectangle tile = new Rectangle(x, y, Math.min(TILE_SIZE, width - x), Math.min(TILE_SIZE, height - y));
+
+                tiles.add(ForkJoinTask.adapt(new Runnable() {
+                    public void run() {
+                        if(cancelled) return;
+
+                        renderTile(image, tile);
+
+                        int done = rendered.incrementAndGet();
+                        if(listener != null) listener.partRendered(done, tiles.size());
+                    }
+                }));
+            }
+        }
+
+        pool.invoke(ForkJoinTask.adapt(new Runnable() {
+            public void run() { ForkJoinTask.invokeAll(tiles); }
+        }));
+
+        if(cancelled) throw new CancellationException("rendering cancelled");
+
+        return image;
+    }
+
+    /**
+     * Dessine le dessin comme {@link #render()}, puis l'exporte au format PNG
+     * dans le fichier entré en paramètre. L'image est écrite dans un fichier
+     * temporaire qui ne remplace le fichier qu'une fois l'image complète : si
+     * le rendu est annulé ou si l'écriture échoue, le fichier n'est pas modifié.
+     *
+     * @param fileName le nom du fichier .png à écrire
+     * @throws IOException
+     * @throws CancellationException si le rendu a été annulé
+     */
+    public void write(String fileName) throws IOException, CancellationException {
+        BufferedImage image = render();
+        ExportFile file = new ExportFile(fileName);
+
+        try {
+            ImageIO.write(image, "png", file.getTemporaryPath().toFile());
+            file.commit();
+        } finally {
+            file.discard();
+        }
+    }
+
+    /* Dessine la zone du dessin correspondant à la tuile, dans la partie de
+     * l'image correspondante.
+     */
+    private void renderTile(BufferedImage image, Rectangle tile) {
+
+        BufferedImage part = image.getSubimage(tile.x, tile.y, tile.width, tile.height);
+
+        Graphics2D g = part.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, tile.width, tile.height);
+
+        g.translate(-tile.x, -tile.y);
+        g.clip(tile);
+
+        Rectangle area = new Rectangle(tile);
+        area.grow(1, 1);
+
+        drawing.acceptVisitor(new ShapeDrawingVisitor(g), area);
+        g.dispose();
+    }
+}
@@ -0,0 +1,308 @@
+package drawshop.shapes.drawing.index;
+
+import drawshop.shapes.Shape;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cette classe est un index spatial permettant de retrouver rapidement les
+ * formes se trouvant dans une zone ou sous un point d'un dessin.
+ *
+ * <p>Chaque forme est rangée dans le plus petit noeud de l'arbre contenant
+ * entièrement son rectangle englobant. Un noeud n'est découpé en quatre que
+ * lorsqu'il contient plus de {@value CAPACITY} formes. Les formes sortant de
+ * la zone couverte par l'arbre sont rangées dans sa racine.</p>
+ *
+ * <p>Les formes retournées par les requêtes sont triées dans leur ordre
+ * de dessin. Une forme est dessinée par dessus les formes déjà présentes,
+ * sauf si elle est insérée entre deux formes (voir
+ * {@link #insert(Shape, Shape, Shape)}).</p>
+ *
+ * <p>Une taille minimale peut être donnée aux requêtes afin d'ignorer les
+ * formes trop petites pour être vues, par exemple lorsque le dessin est
+ * affiché en zoom arrière. Un noeud plus petit que cette taille ne pouvant
+ * contenir que des formes plus petites que lui, il est ignoré avec tout son
+ * sous-arbre : le coût de la requête dépend alors de la résolution de
+ * l'affichage et non du nombre de formes du dessin.</p>
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ *
+ * @see drawshop.shapes.drawing.Drawing#setSpatialIndex(boolean)
+ */
+public class QuadTree {
+
+    private static final int CAPACITY = 8;
+    private static final int MAX_DEPTH = 16;
+
+    // écart entre les ordres de dessin de deux formes ajoutées l'une après l'autre
+    private static final long ORDER_GAP = 1L << 20;
+
+    private static final Comparator<Entry> DRAWING_ORDER = new Comparator<Entry>() {
+        public int compare(Entry e1, Entry e2) { return Long.compare(e1.order, e2.order); }
+    };
+
+    private final Node root;
+    private final Map<Shape, Entry> entries;
+    private long nextOrder;
+
+    /**
+     * Instancie un arbre vide couvrant la zone entrée en paramètre.
+     *
+     * @param area la zone couverte par l'arbre, généralement la taille du dessin
+     */
+    public QuadTree(Rectangle2D area) {
+        this.root = new Node(area.getX(), area.getY(), area.getWidth(), area.getHeight(), 0);
+        this.entries = new IdentityHashMap<Shape, Entry>();
+        this.nextOrder = 0;
+    }
+
+    /**
+     * Ajoute une forme à l'index. La forme est considérée comme dessinée
+     * au dessus des formes déjà présentes.
+     *
+     * @param s la forme à ajouter
+     */
+    public void insert(Shape s) {
+        insert(s, nextOrder);
+        nextOrder += ORDER_GAP;
+    }
+
+    /**
+     * Ajoute une forme à l'index, entre deux formes de l'ordre de dessin.
+     * Les formes ne se trouvant pas dans l'index sont ignorées.
+     *
+     * @param s la forme à ajouter
+     * @param below la forme dessinée juste en dessous de s, null si s est dessinée en premier
+     * @param above la forme dessinée juste au dessus de s, null si s est dessinée en dernier
+     */
+    public void insert(Shape s, Shape below, Shape above) {
+        Entry next = above == null ? null : entries.get(above);
+
+        if(next == null) {
+            insert(s);
+            return;
+        }
+
+        Entry previous = below == null ? null : entries.get(below);
+        long low = previous == null ? next.order - 2*ORDER_GAP : previous.order;
+
+        // plus de place entre les deux formes, les ordres sont de nouveau espacés
+        if(next.order - low < 2) {
+            renumber();
+            low = previous == null ? next.order - 2*ORDER_GAP : previous.order;
+        }
+
+        insert(s, low + (next.order - low)/2);
+    }
+
+    private void insert(Shape s, long order) {
+        Entry entry = new Entry(s, s.getBounds(), order);
+        entries.put(s, entry);
+        root.insert(entry);
+    }
+
+    // Espace de nouveau les ordres de dessin de toutes les formes, sans changer leur ordre.
+    private void renumber() {
+        List<Entry> all = new ArrayList<Entry>(entries.values());
+        Collections.sort(all, DRAWING_ORDER);
+
+        nextOrder = 0;
+        for(Entry entry : all) {
+            entry.order = nextOrder;
+            nextOrder += ORDER_GAP;
+        }
+    }
+
+    /**
+     * Retire une forme de l'index.
+     *
+     * @param s la forme à retirer
+     */
+    public void remove(Shape s) {
+        Entry entry = entries.remove(s);
+        if(entry != null) entry.node.items.remove(entry);
+    }
+
+    /**
+     * Met à jour la position d'une forme dans l'index après qu'elle ait été
+     * déplacée ou inversée. La forme conserve sa place dans l'ordre de dessin.
+     *
+     * @param s la forme modifiée
+     */
+    public void update(Shape s) {
+        Entry entry = entries.get(s);
+        if(entry == null) return;
+
+        entry.node.items.remove(entry);
+        entry.bounds = s.getBounds();
+        root.insert(entry);
+    }
+
+    /**
+     *
+     * @return le nombre de formes présentes dans l'index
+     */
+    public int size() { return entries.size(); }
+
+    /**
+     * Retourne les formes dont le rectangle englobant touche la zone entrée
+     * en paramètre, dans leur ordre de dessin.
+     *
+     * @param area la zone recherchée
+     * @return la liste des formes touchant la zone
+     */
+    public List<Shape> query(Rectangle2D area) {
+        return query(area, 0);
+    }
+
+    /**
+     * Retourne les formes dont le rectangle englobant touche la zone entrée
+     * en paramètre et dont la largeur ou la hauteur atteint la taille
+     * minimale, dans leur ordre de dessin.
+     *
+     * @param area la zone recherchée
+     * @param minSize la taille en dessous de laquelle les formes sont ignorées
+     * @return la liste des formes touchant la zone
+     */
+    public List<Shape> query(Rectangle2D area, double minSize) {
+        List<Entry> found = new ArrayList<Entry>();
+        root.query(area, minSize, found);
+        return toShapes(found);
+    }
+
+    /**
+     * Retourne les formes dont le rectangle englobant contient le point entré
+     * en paramètre, dans leur ordre de dessin.
+     *
+     * @param x la coordonnée x du point
+     * @param y la coordonnée y du point
+     * @return la liste des formes sous le point
+     */
+    public List<Shape> query(double x, double y) {
+        return query(new Rectangle2D.Double(x, y, 0, 0));
+    }
+
+    private static List<Shape> toShapes(List<Entry> found) {
+        Collections.sort(found, DRAWING_ORDER);
+
+        List<Shape> shapes = new ArrayList<Shape>(found.size());
+        for(Entry entry : found) shapes.add(entry.shape);
+
+        return shapes;
+    }
+
+    // Une forme présente dans l'index, avec le rectangle englobant utilisé pour la ranger.
+    private static class Entry {
+        private final Shape shape;
+        private long order;
+        private Rectangle2D bounds;
+        private Node node;
+
+        private Entry(Shape shape, Rectangle2D bounds, long order) {
+            this.shape = shape;
+            this.bounds = bounds;
+            this.order = order;
+        }
+    }
+
+    // Un noeud de l'arbre, couvrant une zone rectangulaire du dessin.
+    private static class Node {
+        private final double x, y, width, height;
+        private final int depth;
+        private final List<Entry> items;
+        private Node[] children;
+
+        private Node(double x, double y, double width, double height, int depth) {
+            this.x = x; this.y = y;
+            this.width = width; this.height = height;
+            this.depth = depth;
+            this.items = new ArrayList<Entry>();
+        }
+
+        private boolean contains(Rectangle2D r) {
+            return r.getMinX() >= x && r.getMaxX() <= x + width
+                    && r.getMinY() >= y && r.getMaxY() <= y + height;
+        }
+
+        private boolean intersects(Rectangle2D r) {
+            return r.getMaxX() >= x && r.getMinX() <= x + width
+                    && r.getMaxY() >= y && r.getMinY() <= y + height;
+        }
+
+        /* Retourne le fils contenant entièrement le rectangle, ou null si
+         * le rectangle est à cheval sur plusieurs fils.
+         */
+        private Node childContaining(Rectangle2D r) {
+            if(children == null) return null;
+
+            for(Node child : children)
+                if(child.contains(r)) return child;
+
+            return null;
+        }
+
+        private void insert(Entry entry) {
+            Node child = childContaining(entry.bounds);
+
+            if(child != null) {
+                child.insert(entry);
+                return;
+            }
+
+            entry.node = this;
+            items.add(entry);
+
+            if(children == null && items.size() > CAPACITY && depth < MAX_DEPTH) split();
+        }
+
+        /* Découpe le noeud en quatre et descend dans les fils les formes
+         * qui y tiennent entièrement.
+         */
+        private void split() {
+            double w = width/2, h = height/2;
+
+            children = new Node[] {
+                    new Node(x, y, w, h, depth+1),
+                    new Node(x + w, y, w, h, depth+1),
+                    new Node(x, y + h, w, h, depth+1),
+                    new Node(x + w, y + h, w, h, depth+1)
+            };
+
+            List<Entry> previous = new ArrayList<Entry>(items);
+            items.clear();
+
+            for(Entry entry : previous) insert(entry);
+        }
+
+        private void query(Rectangle2D area, double minSize, List<Entry> found) {
+            for(Entry entry : items)
+                if(intersects(entry.bounds, area) && isLargeEnough(entry.bounds.getWidth(), entry.bounds.getHeight(), minSize))
+                    found.add(entry);
+
+            if(children == null) return;
+
+            for(Node child : children)
+                if(child.intersects(area) && isLargeEnough(child.width, child.height, minSize))
+                    child.query(area, minSize, found);
+        }
+
+        private static boolean isLargeEnough(double width, double height, double minSize) {
+            return width >= minSize || height >= minSize;
+        }
+
+        // contrairement à Rectangle2D.intersects, accepte les rectangles vides (lignes droites, points)
+        private static boolean intersects(Rectangle2D r1, Rectangle2D r2) {
+            return r1.getMaxX() >= r2.getMinX() && r1.getMinX() <= r2.getMaxX()
+                    && r1.getMaxY() >= r2.getMinY() && r1.getMinY() <= r2.getMaxY();
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package drawshop.shapes.drawing.serialization;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Cette classe permet de lire des valeurs primitives dans un ByteBuffer,
+ * rempli au fur et à mesure depuis un canal. Contrairement à un
+ * DataInputStream, les valeurs sont lues directement dans le buffer, sans
+ * appel à un flux pour chacun de leurs octets.
+ *
+ * <p>Un fichier peut aussi être lu à partir de positions choisies (voir
+ * {@link #seek(long)}). Il est alors lu par positions, sans déplacer la
+ * position du FileChannel ni projeter le fichier en mémoire.</p>
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ */
+final class ChannelInput implements DataInput {
+
+    private final ReadableByteChannel channel;
+    private final FileChannel file; // null si le canal est lu à la suite
+    private final ByteBuffer buffer;
+    private long next; // position dans le canal de l'octet qui suit le contenu du buffer
+
+    private LoadListener listener;
+    private long total;
+
+    /**
+     * Instancie une entrée lisant le canal entré en paramètre par blocs, à la suite.
+     *
+     * @param channel le canal à lire
+     * @param bufferSize la taille des blocs lus
+     */
+    ChannelInput(ReadableByteChannel channel, int bufferSize) {
+        this(channel, null, bufferSize);
+    }
+
+    /**
+     * Instancie une entrée lisant le fichier entré en paramètre par blocs, à
+     * partir du début du fichier ou de la position choisie avec seek.
+     *
+     * @param file le fichier à lire
+     * @param bufferSize la taille des blocs lus
+     */
+    ChannelInput(FileChannel file, int bufferSize) {
+        this(file, file, bufferSize);
+    }
+
+    private ChannelInput(ReadableByteChannel channel, FileChannel file, int bufferSize) {
+        this.channel = channel;
+        this.file = file;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.buffer.flip();
+    }
+
+    /**
+     * Déplace la lecture à la position entrée en paramètre, uniquement
+     * lorsque l'entrée lit un fichier par positions. Le buffer n'est vidé
+     * que si la position ne s'y trouve pas.
+     *
+     * @param position la position de la prochaine valeur à lire
+     */
+    void seek(long position) {
+        if(file == null) throw new UnsupportedOperationException("seek");
+
+        long start = next - buffer.limit();
+
+        if(position >= start && position <= next) buffer.position((int) (position - start));
+        else {
+            buffer.clear().flip();
+            next = position;
+        }
+    }
+
+    /**
+     * Change le LoadListener prévenu après la lecture de chaque bloc.
+     *
+     * @param listener le nouveau LoadListener, ou null
+     * @param total la taille du canal, transmise au LoadListener
+     */
+    void setListener(LoadListener listener, long total) {
+        this.listener = listener;
+        this.total = total;
+    }
+
+    /**
+     *
+     * @return la position dans le canal de la prochaine valeur à lire
+     */
+    long position() {
+        return next - buffer.remaining();
+    }
+
+    // Fait en sorte que le buffer contienne au moins n octets, n ne dépassant pas sa capacité.
+    private void require(int n) throws IOException {
+        if(!fill(n)) throw new EOFException();
+    }
+
+    // Comme require, mais retourne false au lieu d'échouer lorsque les données se terminent avant.
+    private boolean fill(int n) throws IOException {
+        if(buffer.remaining() >= n) return true;
+
+        buffer.compact();
+
+        try {
+            while(buffer.position() < n) {
+                int read = file != null ? file.read(buffer, next) : channel.read(buffer);
+                if(read < 0) return false;
+
+                next += read;
+            }
+        } finally {
+            buffer.flip();
+        }
+
+        if(listener != null) listener.bytesRead(next, total);
+        return true;
+    }
+
+    public void readFully(byte[] b) throws IOException {
+        readFully(b, 0, b.length);
+    }
+
+    public void readFully(byte[] b, int off, int len) throws IOException {
+        while(len > 0) {
+            require(1);
+
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    public int skipBytes(int n) throws IOException {
+        int skipped = 0;
+
+        while(skipped < n) {
+            require(1);
+
+            int k = Math.min(n - skipped, buffer.remaining());
+            buffer.position(buffer.position() + k);
+            skipped += k;
+        }
+
+        return skipped;
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    public byte readByte() throws IOException {
+        require(1);
+        return buffer.get();
+    }
+
+    public int readUnsignedByte() throws IOException {
+        return readByte() & 0xff;
+    }
+
+    public short readShort() throws IOException {
+        require(2);
+        return buffer.getShort();
+    }
+
+    public int readUnsignedShort() throws IOException {
+        return readShort() & 0xffff;
+    }
+
+    public char readChar() throws IOException {
+        require(2);
+        return buffer.getChar();
+    }
+
+    public int readInt() throws IOException {
+        require(4);
+        return buffer.getInt();
+    }
+
+    public long readLong() throws IOException {
+        require(8);
+        return buffer.getLong();
+    }
+
+    public float readFloat() throws IOException {
+        require(4);
+        return buffer.getFloat();
+    }
+
+    public double readDouble() throws IOException {
+        require(8);
+        return buffer.getDouble();
+    }
+
+    /**
+     * Lit une ligne comme DataInputStream : chaque octet est lu comme un
+     * caractère, jusqu'à "\n", "\r", "\r\n" ou la fin des données.
+     *
+     * @return la ligne lue, sans sa fin, ou null si les données sont terminées
+     */
+    public String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+
+        while(fill(1)) {
+            int c = buffer.get() & 0xff;
+
+            if(c == '\n') return line.toString();
+
+            if(c == '\r') {
+                if(fill(1) && buffer.get(buffer.position()) == '\n') buffer.get();
+                return line.toString();
+            }
+
+            line.append((char) c);
+        }
+
+        return line.length() == 0 ? null : line.toString();
+    }
+
+    public String readUTF() throws IOException {
+        return DataInputStream.readUTF(this);
+    }
+}
@@ -0,0 +1,133 @@
+package drawshop.shapes.drawing.serialization;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Cette classe permet d'écrire des valeurs primitives dans un ByteBuffer,
+ * écrit dans un canal dès qu'il est plein. Contrairement à un
+ * DataOutputStream, les valeurs sont écrites directement dans le buffer, sans
+ * appel à un flux pour chacun de leurs octets.
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ */
+final class ChannelOutput implements DataOutput {
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private long written; // nombre d'octets déjà écrits dans le canal
+
+    /**
+     * Instancie une sortie écrivant dans le canal entré en paramètre par blocs.
+     *
+     * @param channel le canal dans lequel écrire
+     * @param bufferSize la taille des blocs écrits
+     */
+    ChannelOutput(WritableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     *
+     * @return le nombre d'octets écrits depuis la création de la sortie
+     */
+    long position() {
+        return written + buffer.position();
+    }
+
+    // Fait en sorte que le buffer puisse recevoir n octets, n ne dépassant pas sa capacité.
+    private void require(int n) throws IOException {
+        if(buffer.remaining() < n) flush();
+    }
+
+    /**
+     * Écrit dans le canal le contenu du buffer.
+     *
+     * @throws IOException
+     */
+    void flush() throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()) written += channel.write(buffer);
+        buffer.clear();
+    }
+
+    public void write(int b) throws IOException {
+        writeByte(b);
+    }
+
+    public void write(byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        while(len > 0) {
+            require(1);
+
+            int n = Math.min(len, buffer.remaining());
+            buffer.put(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    public void writeBoolean(boolean v) throws IOException {
+        writeByte(v ? 1 : 0);
+    }
+
+    public void writeByte(int v) throws IOException {
+        require(1);
+        buffer.put((byte) v);
+    }
+
+    public void writeShort(int v) throws IOException {
+        require(2);
+        buffer.putShort((short) v);
+    }
+
+    public void writeChar(int v) throws IOException {
+        require(2);
+        buffer.putChar((char) v);
+    }
+
+    public void writeInt(int v) throws IOException {
+        require(4);
+        buffer.putInt(v);
+    }
+
+    public void writeLong(long v) throws IOException {
+        require(8);
+        buffer.putLong(v);
+    }
+
+    public void writeFloat(float v) throws IOException {
+        require(4);
+        buffer.putFloat(v);
+    }
+
+    public void writeDouble(double v) throws IOException {
+        require(8);
+        buffer.putDouble(v);
+    }
+
+    public void writeBytes(String s) throws IOException {
+        for(int i = 0; i < s.length(); i++) writeByte(s.charAt(i));
+    }
+
+    public void writeChars(String s) throws IOException {
+        for(int i = 0; i < s.length(); i++) writeChar(s.charAt(i));
+    }
+
+    public void writeUTF(String s) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeUTF(s);
+        write(bytes.toByteArray());
+    }
+}
@@ -1,13 +1,55 @@
 package drawshop.shapes.drawing.serialization;
 
+import drawshop.shapes.ColorPalette;
+import drawshop.shapes.Shape;
+import drawshop.shapes.ShapeRecordReader;
+import drawshop.shapes.ShapeRecordWriter;
+import drawshop.shapes.ShapeStorage;
 import drawshop.shapes.drawing.Drawing;
+import drawshop.shapes.factories.DrawingType;
 
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Cette classe permet d'enregistrer et de charger des dessins
  * depuis des fichiers au format .draw.
  *
+ * <p>Les dessins sont enregistrés dans un format binaire versionné, composé
+ * d'un en-tête (les octets "DRAW", la version du format, le
+ * type, la largeur et la hauteur du dessin), des tables des couleurs et des
+ * symboles, puis du stockage du dessin et de l'enregistrement de chacune de
+ * ses formes (voir {@link ShapeRecordWriter}). Les coordonnées y sont écrites
+ * en valeurs primitives, sans les descriptions de classes et les en-têtes
+ * d'objets de la sérialisation Java.</p>
+ *
+ * <p>Depuis la version 2, le fichier se termine par un index : le stockage
+ * du dessin, le nombre de ses formes, puis la position et le rectangle
+ * englobant de l'enregistrement de chacune d'elles. Il est suivi de sa
+ * position et des octets "DRAW". Il permet d'ouvrir le fichier sans le lire
+ * en entier (voir {@link IndexedDrawingFile}).</p>
+ *
+ * <p>Les fichiers enregistrés auparavant par sérialisation Java sont toujours
+ * chargés : ils sont reconnus à leurs premiers octets.</p>
+ *
+ * <p>Un dessin est d'abord écrit dans un fichier temporaire placé dans le même
+ * dossier, qui ne remplace le fichier d'origine qu'une fois complet : un
+ * enregistrement échoué ou interrompu laisse le fichier d'origine intact.</p>
+ *
+ * <p>Les couleurs des formes passent par une palette propre à chaque dessin :
+ * à l'enregistrement, chaque couleur n'est écrite qu'une seule fois dans la
+ * table des couleurs, les formes n'y faisant qu'une référence. Au chargement,
+ * les formes de couleurs égales partagent de même une seule instance, y
+ * compris pour les anciens fichiers enregistrés sans palette.</p>
+ *
  * @author Evan Lajusticia
  * @author Pauline Rugliano
  *
@@ -17,6 +59,23 @@ import java.io.*;
  */
 public final class DrawingSerializationHandler {
 
+    /** Les quatre premiers octets d'un fichier .draw, "DRAW" en ASCII. */
+    public static final int MAGIC = 0x44524157;
+
+    /** La version du format écrite par saveDrawing. */
+    public static final int VERSION = 2;
+
+    /** La taille de la fin du fichier : la position de l'index, puis les octets "DRAW". */
+    static final int TRAILER_SIZE = 12;
+
+    /**
+     * La taille de l'entrée de l'index décrivant une forme : sa position, puis
+     * les coins de son rectangle englobant, arrondis en float vers l'extérieur.
+     */
+    static final int INDEX_ENTRY_SIZE = 24;
+
+    private static final int BUFFER_SIZE = 64*1024;
+
     private DrawingSerializationHandler() {}
 
     /**
@@ -28,18 +87,78 @@ public final class DrawingSerializationHandler {
      * @throws ClassNotFoundException
      */
     public static Drawing loadDrawing(String fileName) throws IOException, ClassNotFoundException {
+        return loadDrawing(fileName, null);
+    }
+
+    /**
+     * Cette méthode permet de charger un dessin en suivant l'avancement de la
+     * lecture du fichier, qui peut être interrompue par le LoadListener.
+     *
+     * @param fileName le nom du fichier .draw qui va être chargé
+     * @param listener le LoadListener prévenu après la lecture de chaque bloc du fichier, ou null
+     * @return le dessin qui vient d'être chargé
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public static Drawing loadDrawing(String fileName, LoadListener listener) throws IOException, ClassNotFoundException {
+
+        FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+
+        try {
+            ChannelInput in = new ChannelInput(channel, BUFFER_SIZE);
+            if(channel.size() < 4 || in.readInt() != MAGIC) return loadLegacyDrawing(fileName, channel.size(), listener);
+
+            in.setListener(listener, channel.size());
+
+            checkVersion(in.readInt());
+
+            DrawingType type = type(in.readByte());
+            int width = in.readInt();
+            int height = in.readInt();
+
+            ShapeRecordReader reader = new ShapeRecordReader(in, channel.size());
+            reader.readTables();
+
+            ShapeStorage storage = ShapeRecordReader.storage(in.readByte());
+            if(storage == ShapeStorage.OBJECTS) return new Drawing(width, height, type, reader.readShapes());
+
+            // les formes simples sont copiées directement dans les colonnes du dessin
+            Drawing d = new Drawing(width, height, type);
+            d.setStorage(storage);
+            reader.readShapes(d);
+            return d;
+        } finally {
+            channel.close();
+        }
+    }
+
+    // Vérifie que la version du fichier peut être lue, l'index de la version 2 étant ignoré par loadDrawing.
+    static void checkVersion(int version) throws InvalidClassException {
+        if(version < 1 || version > VERSION) throw new InvalidClassException("Unsupported .draw version " + version);
+    }
+
+    static DrawingType type(int ordinal) throws StreamCorruptedException {
+        if(ordinal < 0 || ordinal >= DrawingType.values().length) throw new StreamCorruptedException("Unknown drawing type " + ordinal);
+        return DrawingType.values()[ordinal];
+    }
 
-        ObjectInputStream ois = null;
+    // Charge un dessin enregistré par sérialisation Java, avant le format binaire.
+    private static Drawing loadLegacyDrawing(String fileName, long size, LoadListener listener) throws IOException, ClassNotFoundException {
+        InputStream file = new FileInputStream(fileName);
+        if(listener != null) file = new ListenedInputStream(file, size, listener);
 
-        FileInputStream file = new FileInputStream(fileName);
-        ois = new ObjectInputStream(file);
-        Drawing d = (Drawing) ois.readObject();
-        ois.close();
-        return d;
+        ObjectInputStream ois = new PaletteInputStream(new BufferedInputStream(file, BUFFER_SIZE));
+
+        try {
+            return (Drawing) ois.readObject();
+        } finally {
+            ois.close();
+        }
     }
 
     /**
-     * Cette méthode permet de sauvegarder un dessin.
+     * Cette méthode permet de sauvegarder un dessin. Le fichier existant n'est
+     * remplacé qu'une fois le dessin entièrement écrit.
      *
      * @param drawing le dessin à sauvegarder
      * @param fileName le nom que l'on veut donner au fichier une fois sauvegardé
@@ -47,13 +166,149 @@ public final class DrawingSerializationHandler {
      */
     public static void saveDrawing(Drawing drawing, String fileName) throws IOException {
 
-        ObjectOutputStream oos = null;
+        Path target = Paths.get(fileName).toAbsolutePath();
+        Path temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        boolean saved = false;
+
+        try {
+            writeDrawing(drawing, temporary);
+            replace(temporary, target);
+            saved = true;
+        } finally {
+            if(!saved) Files.deleteIfExists(temporary);
+        }
+    }
+
+    // Remplace le fichier target par le fichier temporaire, en une seule opération lorsque le système de fichiers le permet.
+    private static void replace(Path temporary, Path target) throws IOException {
+        try {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Écrit le dessin dans le fichier entré en paramètre, qui doit exister.
+    private static void writeDrawing(Drawing drawing, Path file) throws IOException {
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+
+        try {
+            ChannelOutput out = new ChannelOutput(channel, BUFFER_SIZE);
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeByte(drawing.getType().ordinal());
+            out.writeInt(drawing.getWidth());
+            out.writeInt(drawing.getHeight());
+
+            // un dessin applique toujours ses déplacements à ses formes, il n'a pas de placement à écrire
+            ShapeRecordWriter writer = new ShapeRecordWriter(out);
+            writer.collect(drawing);
+            writer.writeTables();
+
+            out.writeByte(drawing.getStorage().ordinal());
+            writeIndexedShapes(out, writer, drawing);
+            out.flush();
+
+            // le fichier doit être complet sur le disque avant de remplacer l'ancien
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    // Écrit les formes du dessin, puis l'index de leurs enregistrements.
+    private static void writeIndexedShapes(final ChannelOutput out, ShapeRecordWriter writer, Drawing drawing) throws IOException {
+        final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        final DataOutputStream entries = new DataOutputStream(index);
+
+        writer.writeShapes(drawing, new ShapeRecordWriter.RecordListener() {
+            public void recordStarting(Shape s) throws IOException {
+                Rectangle2D bounds = s.getBounds();
+
+                entries.writeLong(out.position());
+                entries.writeFloat(floor(bounds.getMinX()));
+                entries.writeFloat(floor(bounds.getMinY()));
+                entries.writeFloat(ceil(bounds.getMaxX()));
+                entries.writeFloat(ceil(bounds.getMaxY()));
+            }
+        });
+
+        long indexPosition = out.position();
 
-        FileOutputStream file = new FileOutputStream(fileName);
-        oos = new ObjectOutputStream(file);
-        oos.writeObject(drawing);
-        oos.flush();
-        oos.close();
+        out.writeByte(drawing.getStorage().ordinal());
+        out.writeInt(entries.size()/INDEX_ENTRY_SIZE);
+        index.writeTo(new OutputStream() {
+            public void write(int b) throws IOException { out.writeByte(b); }
+            public void write(byte[] b, int off, int len) throws IOException { out.write(b, off, len); }
+        });
+
+        out.writeLong(indexPosition);
+        out.writeInt(MAGIC);
+    }
+
+    // Arrondit en float la valeur entrée en paramètre, sans la dépasser.
+    private static float floor(double v) {
+        float f = (float) v;
+        return f > v ? Math.nextDown(f) : f;
+    }
+
+    // Arrondit en float la valeur entrée en paramètre, sans être inférieure à celle-ci.
+    private static float ceil(double v) {
+        float f = (float) v;
+        return f < v ? Math.nextUp(f) : f;
     }
 
+    // Prévient le LoadListener après chaque bloc lu, le flux étant lu par blocs au travers d'un BufferedInputStream.
+    private static class ListenedInputStream extends FilterInputStream {
+
+        private final long total;
+        private final LoadListener listener;
+        private long read;
+
+        private ListenedInputStream(InputStream in, long total, LoadListener listener) {
+            super(in);
+            this.total = total;
+            this.listener = listener;
+        }
+
+        public int read() throws IOException {
+            int b = super.read();
+            if(b >= 0) bytesRead(1);
+            return b;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if(n > 0) bytesRead(n);
+            return n;
+        }
+
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            bytesRead(skipped);
+            return skipped;
+        }
+
+        private void bytesRead(long n) throws IOException {
+            read += n;
+            listener.bytesRead(read, total);
+        }
+    }
+
+    // Remplace chaque couleur lue par l'instance égale de la palette du dessin.
+    private static class PaletteInputStream extends ObjectInputStream {
+
+        private final ColorPalette palette = new ColorPalette();
+
+        private PaletteInputStream(InputStream in) throws IOException {
+            super(in);
+            enableResolveObject(true);
+        }
+
+        protected Object resolveObject(Object obj) {
+            return obj instanceof Color ? palette.intern((Color) obj) : obj;
+        }
+    }
 }
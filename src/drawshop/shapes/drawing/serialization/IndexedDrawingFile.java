@@ -0,0 +1,312 @@
+package drawshop.shapes.drawing.serialization;
+
+import drawshop.shapes.Shape;
+import drawshop.shapes.ShapeRecordReader;
+import drawshop.shapes.ShapeStorage;
+import drawshop.shapes.Shapes;
+import drawshop.shapes.drawing.Drawing;
+import drawshop.shapes.factories.DrawingType;
+
+import java.awt.geom.Rectangle2D;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cette classe permet de lire un fichier .draw sans le charger en entier.
+ * Seuls son en-tête et son index sont lus à l'ouverture : celle-ci ne dépend
+ * donc pas de la taille du dessin.
+ *
+ * <p>Chaque forme n'est lue que lors du premier accès à celle-ci, puis
+ * conservée. Le rectangle englobant de chaque forme étant écrit dans l'index,
+ * les formes d'une zone du dessin peuvent être lues sans lire les autres
+ * (voir {@link #getShapes(Rectangle2D)}).</p>
+ *
+ * <p>Le fichier est lu par positions, sans être projeté en mémoire : une
+ * projection ne peut pas être libérée avant le passage du ramasse-miettes, et
+ * empêche certains systèmes de remplacer le fichier, tandis qu'un fichier
+ * tronqué pendant sa lecture ferait échouer l'accès à la mémoire projetée au
+ * lieu de lever une IOException. Le fichier reste ouvert jusqu'à l'appel de
+ * {@link #close()}, mais peut être remplacé pendant ce temps par
+ * l'enregistrement d'un dessin.</p>
+ *
+ * <p>Seuls les fichiers enregistrés depuis la version 2 du format ont un
+ * index. Les autres doivent être chargés avec
+ * {@link DrawingSerializationHandler#loadDrawing(String)}.</p>
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ *
+ * @see DrawingSerializationHandler
+ */
+public final class IndexedDrawingFile implements Closeable {
+
+    private static final int HEADER_SIZE = 17; // nombre magique, version, type, largeur et hauteur
+    private static final int BUFFER_SIZE = 16*1024;
+
+    private final FileChannel channel;
+    private final ChannelInput in;
+    private final DrawingType type;
+    private final int width;
+    private final int height;
+    private final ShapeStorage storage;
+    private final int count;
+    private final long index; // position de l'index, qui suit le dernier enregistrement
+    private final long entries; // position de la première entrée de l'index
+
+    private ShapeRecordReader reader; // null tant que les tables n'ont pas été lues
+    private final Shape[] shapes; // les formes déjà lues
+
+    private IndexedDrawingFile(FileChannel channel, long size) throws IOException {
+        this.channel = channel;
+        this.in = new ChannelInput(channel, BUFFER_SIZE);
+
+        in.seek(8);
+        this.type = DrawingSerializationHandler.type(in.readByte());
+        this.width = in.readInt();
+        this.height = in.readInt();
+
+        // un fichier tronqué n'a plus les octets "DRAW" à la fin
+        long end = size - DrawingSerializationHandler.TRAILER_SIZE;
+
+        in.seek(end);
+        long position = in.readLong();
+        if(in.readInt() != DrawingSerializationHandler.MAGIC) throw new StreamCorruptedException("Missing .draw trailer");
+
+        // l'index commence par le stockage et le nombre de formes
+        if(position < HEADER_SIZE || position + 5 > end) throw new StreamCorruptedException("Invalid index position " + position);
+        this.index = position;
+
+        in.seek(index);
+        this.storage = ShapeRecordReader.storage(in.readByte());
+        this.count = in.readInt();
+        this.entries = in.position();
+
+        if(count < 0 || (long) count*DrawingSerializationHandler.INDEX_ENTRY_SIZE > end - entries)
+            throw new StreamCorruptedException("Invalid index size " + count);
+
+        this.shapes = new Shape[count];
+    }
+
+    /**
+     * Ouvre le fichier .draw entré en paramètre, en ne lisant que son en-tête
+     * et son index. Le fichier ouvert doit être fermé avec close().
+     *
+     * @param fileName le nom du fichier .draw à ouvrir
+     * @return le fichier ouvert, ou null si le fichier n'a pas d'index
+     * @throws IOException
+     */
+    public static IndexedDrawingFile open(String fileName) throws IOException {
+
+        FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+        IndexedDrawingFile file = null;
+
+        try {
+            long size = channel.size();
+            if(size < HEADER_SIZE + DrawingSerializationHandler.TRAILER_SIZE) return null;
+
+            ChannelInput header = new ChannelInput(channel, 8);
+            if(header.readInt() != DrawingSerializationHandler.MAGIC) return null;
+
+            int version = header.readInt();
+            DrawingSerializationHandler.checkVersion(version);
+            if(version < 2) return null;
+
+            file = new IndexedDrawingFile(channel, size);
+            return file;
+        } finally {
+            if(file == null) channel.close();
+        }
+    }
+
+    /**
+     * Ferme le fichier. Les formes déjà lues restent utilisables.
+     *
+     * @throws IOException
+     */
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     *
+     * @return le type du dessin
+     */
+    public DrawingType getType() { return type; }
+
+    /**
+     *
+     * @return la largeur du dessin
+     */
+    public int getWidth() { return width; }
+
+    /**
+     *
+     * @return la hauteur du dessin
+     */
+    public int getHeight() { return height; }
+
+    /**
+     *
+     * @return la façon dont le dessin stocke ses formes
+     */
+    public ShapeStorage getStorage() { return storage; }
+
+    /**
+     *
+     * @return le nombre de formes du dessin, sans compter celles de ses groupes
+     */
+    public int getShapeCount() { return count; }
+
+    /**
+     * Retourne le rectangle englobant d'une forme, lu dans l'index sans lire
+     * la forme. Il peut être légèrement plus grand que celui de la forme.
+     *
+     * @param i l'indice de la forme dans le dessin
+     * @return le rectangle englobant de la forme
+     * @throws IOException
+     */
+    public synchronized Rectangle2D getShapeBounds(int i) throws IOException {
+        checkIndex(i);
+
+        in.seek(entry(i) + 8);
+
+        double minX = in.readFloat(), minY = in.readFloat();
+        double maxX = in.readFloat(), maxY = in.readFloat();
+
+        return new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    /**
+     * Retourne une forme du dessin, en la lisant lors du premier appel. La
+     * même forme est ensuite retournée à chaque appel.
+     *
+     * @param i l'indice de la forme dans le dessin
+     * @return la forme d'indice i
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public synchronized Shape getShape(int i) throws IOException, ClassNotFoundException {
+        checkIndex(i);
+
+        if(shapes[i] == null) {
+            in.seek(entry(i));
+            shapes[i] = readShape(in.readLong());
+        }
+
+        return shapes[i];
+    }
+
+    /**
+     * Retourne les formes du dessin dont le rectangle englobant touche la zone
+     * entrée en paramètre, dans leur ordre d'affichage. Seules ces formes sont lues.
+     *
+     * @param area la zone du dessin
+     * @return les formes touchant la zone
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public synchronized List<Shape> getShapes(Rectangle2D area) throws IOException, ClassNotFoundException {
+        List<Shape> found = new ArrayList<Shape>();
+        List<Integer> touched = new ArrayList<Integer>();
+
+        // l'index est parcouru en entier avant de lire les formes, qui déplacent la lecture
+        in.seek(entries);
+
+        for(int i = 0; i < count; i++) {
+            in.skipBytes(8);
+
+            float minX = in.readFloat(), minY = in.readFloat();
+            float maxX = in.readFloat(), maxY = in.readFloat();
+
+            if(maxX >= area.getMinX() && minX <= area.getMaxX() && maxY >= area.getMinY() && minY <= area.getMaxY()) touched.add(i);
+        }
+
+        for(int i : touched) found.add(getShape(i));
+        return found;
+    }
+
+    /**
+     * Lit les formes dont l'indice est compris entre from inclus et to exclu,
+     * sans les conserver : chaque appel retourne de nouvelles formes. Cela
+     * permet de charger le dessin par morceaux, sans garder une seconde copie
+     * de ses formes.
+     *
+     * @param from l'indice de la première forme à lire
+     * @param to l'indice suivant celui de la dernière forme à lire
+     * @return les formes lues, dans leur ordre d'affichage
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public synchronized List<Shape> readShapes(int from, int to) throws IOException, ClassNotFoundException {
+        if(from < 0 || to > count || from > to) throw new IndexOutOfBoundsException("From: " + from + ", To: " + to + ", Size: " + count);
+
+        // les positions sont lues d'abord, les enregistrements qui se suivent étant ensuite lus sans vider le buffer
+        long[] positions = new long[to - from];
+        in.seek(entry(from));
+
+        for(int k = 0; k < positions.length; k++) {
+            positions[k] = in.readLong();
+            in.skipBytes(DrawingSerializationHandler.INDEX_ENTRY_SIZE - 8);
+        }
+
+        List<Shape> read = new ArrayList<Shape>(positions.length);
+        for(long position : positions) read.add(readShape(position));
+        return read;
+    }
+
+    /**
+     * Lit toutes les formes et retourne le dessin qu'elles forment, comme
+     * {@link DrawingSerializationHandler#loadDrawing(String)}. Les formes du
+     * dessin sont des copies, et ne sont pas conservées par le fichier.
+     *
+     * @return le dessin du fichier
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public synchronized Drawing toDrawing() throws IOException, ClassNotFoundException {
+        List<Shape> all = readShapes(0, count);
+
+        for(int i = 0; i < count; i++)
+            if(shapes[i] != null) all.set(i, Shapes.copyOf(shapes[i]));
+
+        Drawing d = new Drawing(width, height, type, all);
+        d.setStorage(storage);
+        return d;
+    }
+
+    // Lit l'enregistrement commençant à la position entrée en paramètre, après les tables du fichier.
+    private Shape readShape(long position) throws IOException, ClassNotFoundException {
+        if(reader == null) {
+            in.seek(HEADER_SIZE);
+            ShapeRecordReader tables = new ShapeRecordReader(in, index);
+            tables.readTables();
+            reader = tables;
+        }
+
+        in.seek(checkPosition(position));
+        return reader.readShape(storage);
+    }
+
+    // Retourne la position de l'entrée de l'index décrivant la forme d'indice i.
+    private long entry(int i) {
+        return entries + (long) i*DrawingSerializationHandler.INDEX_ENTRY_SIZE;
+    }
+
+    // Vérifie la position d'un enregistrement, qui doit se trouver entre l'en-tête et l'index.
+    private long checkPosition(long position) throws StreamCorruptedException {
+        if(position < HEADER_SIZE || position >= index) throw new StreamCorruptedException("Invalid position " + position);
+        return position;
+    }
+
+    private void checkIndex(int i) {
+        if(i < 0 || i >= count) throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + count);
+    }
+}
@@ -0,0 +1,28 @@
+package drawshop.shapes.drawing.serialization;
+
+import java.io.IOException;
+
+/**
+ * Cette interface permet d'être prévenu de l'avancement de la lecture d'un
+ * fichier .draw. Elle est appelée depuis le thread effectuant le chargement.
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ *
+ * @see DrawingSerializationHandler#loadDrawing(String, LoadListener)
+ */
+public interface LoadListener {
+
+    /**
+     * Appelée après la lecture de chaque bloc du fichier. Le chargement peut
+     * être interrompu en levant une exception, par exemple une
+     * InterruptedIOException lorsqu'il a été annulé.
+     *
+     * @param read le nombre d'octets déjà lus
+     * @param total la taille du fichier, en octets
+     * @throws IOException pour interrompre le chargement
+     */
+    public void bytesRead(long read, long total) throws IOException;
+}
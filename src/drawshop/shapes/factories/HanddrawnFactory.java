@@ -1,5 +1,6 @@
 package drawshop.shapes.factories;
 
+import drawshop.noise.Noise;
 import drawshop.shapes.HanddrawnCircle;
 import drawshop.shapes.HanddrawnLine;
 import drawshop.shapes.HanddrawnRectangle;
@@ -17,6 +18,12 @@ import java.awt.*;
  *     <li>La ligne</li>
  * </ul>
  *
+ * <p>Les déformations des formes sont tirées de la suite de valeurs aléatoires
+ * du thread courant, ou de la suite entrée en paramètre. Pour créer en
+ * parallèle des formes identiques d'une exécution à l'autre, chaque forme
+ * peut utiliser sa propre suite, par exemple {@code noise.stream(i)} pour
+ * la i-ème forme (voir {@link Noise#stream(long)}).</p>
+ *
  * @author Evan Lajusticia
  * @author Pauline Rugliano
  *
@@ -45,4 +52,66 @@ public class HanddrawnFactory implements ShapeFactory {
 		return new HanddrawnLine(x0, y0, x1, y1, c);
 	}
 
+	/**
+	 * Instancie un cercle dont les déformations sont tirées de la suite entrée en paramètre.
+	 *
+	 * @param cx la coordonnée x du centre du cercle
+	 * @param cy la coordonnée y du centre du cercle
+	 * @param rad le rayon du cercle
+	 * @param c la couleur du cercle
+	 * @param noise la suite de valeurs aléatoires à utiliser
+	 * @return le cercle créé
+	 */
+	public HanddrawnCircle createCircle(double cx, double cy, double rad, Color c, Noise noise) {
+		return new HanddrawnCircle(cx, cy, rad, c, noise);
+	}
+
+	/**
+	 * Instancie un rectangle dont les déformations sont tirées de la suite entrée en paramètre.
+	 *
+	 * @param x0 la coordonnée x du coin supérieur gauche du rectangle
+	 * @param y0 la coordonnée y du coin supérieur gauche du rectangle
+	 * @param x1 la coordonnée x du coin inférieur droit du rectangle
+	 * @param y1 la coordonnée y du coin inférieur droit du rectangle
+	 * @param c la couleur du rectangle
+	 * @param noise la suite de valeurs aléatoires à utiliser
+	 * @return le rectangle créé
+	 */
+	public HanddrawnRectangle createRectangle(double x0, double y0, double x1, double y1, Color c, Noise noise) {
+		return new HanddrawnRectangle(x0, y0, x1, y1, c, noise);
+	}
+
+	/**
+	 * Instancie un rectangle ne conservant que ses coins de base et la graine
+	 * de ses déformations, qui occupe moins de mémoire mais dont les
+	 * coordonnées sont recalculées à chaque lecture.
+	 *
+	 * @param x0 la coordonnée x du coin supérieur gauche du rectangle
+	 * @param y0 la coordonnée y du coin supérieur gauche du rectangle
+	 * @param x1 la coordonnée x du coin inférieur droit du rectangle
+	 * @param y1 la coordonnée y du coin inférieur droit du rectangle
+	 * @param c la couleur du rectangle
+	 * @param seed la graine des déformations du rectangle
+	 * @return le rectangle créé
+	 * @see HanddrawnRectangle#isCompact()
+	 */
+	public HanddrawnRectangle createRectangle(double x0, double y0, double x1, double y1, Color c, long seed) {
+		return new HanddrawnRectangle(x0, y0, x1, y1, c, seed);
+	}
+
+	/**
+	 * Instancie une ligne dont les déformations sont tirées de la suite entrée en paramètre.
+	 *
+	 * @param x0 la coordonnée x du premier point de la ligne
+	 * @param y0 la coordonnée y du premier point de la ligne
+	 * @param x1 la coordonnée x du second point de la ligne
+	 * @param y1 la coordonnée y du second point de la ligne
+	 * @param c la couleur de la ligne
+	 * @param noise la suite de valeurs aléatoires à utiliser
+	 * @return la ligne créée
+	 */
+	public HanddrawnLine createLine(double x0, double y0, double x1, double y1, Color c, Noise noise) {
+		return new HanddrawnLine(x0, y0, x1, y1, c, noise);
+	}
+
 }
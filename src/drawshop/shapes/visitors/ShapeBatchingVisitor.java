@@ -0,0 +1,219 @@
+package drawshop.shapes.visitors;
+
+import drawshop.shapes.*;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Cette classe est un Visitor permettant de préparer le dessin d'un grand
+ * nombre de formes sur un Graphics2D.
+ *
+ * <p>Au lieu de dessiner les formes au fur et à mesure, le visitor regroupe
+ * les formes consécutives d'une même couleur dans un seul Path2D, appelé lot.
+ * L'ordre des formes est conservé : une forme d'une autre couleur commence
+ * un nouveau lot. Les lots sont ensuite dessinés grâce à la méthode
+ * {@link #draw(Graphics2D)}, avec un seul appel à Graphics2D.draw par lot.</p>
+ *
+ * <p>Les lots sont conservés et peuvent être dessinés autant de fois que
+ * nécessaire tant que les formes visitées ne sont pas modifiées. De nouvelles
+ * formes peuvent être visitées pour être ajoutées par dessus.</p>
+ *
+ * Les formes actuellement supportées sont :
+ * <ul>
+ *     <li>Le rectangle parfait</li>
+ *     <li>Le cercle parfait</li>
+ *     <li>La ligne parfaite</li>
+ *     <li>Le rectangle fait à la main</li>
+ *     <li>Le cercle fait à la main</li>
+ *     <li>La ligne faite à la main</li>
+ *     <li>L'instance d'un symbole</li>
+ * </ul>
+ *
+ * @author Evan Lajusticia
+ * @author Pauline Rugliano
+ *
+ * @version 1.0
+ *
+ * @see ShapeDrawingVisitor
+ */
+public class ShapeBatchingVisitor implements ShapeVisitor {
+
+	private final List<Color> colors;
+	private final List<Path2D.Double> paths;
+
+	private Path2D.Double batch;
+
+	private AffineTransform transform; // placement de l'instance visitée, null en dehors d'une instance
+	private final Path2D.Double shape = new Path2D.Double();
+	private Color shapeColor;
+
+	private final Ellipse2D.Double ellipse = new Ellipse2D.Double();
+
+	/**
+	 * Instancie un ShapeBatchingVisitor sans aucun lot.
+	 */
+	public ShapeBatchingVisitor() {
+		this.colors = new ArrayList<Color>();
+		this.paths = new ArrayList<Path2D.Double>();
+	}
+
+	/**
+	 * Dessine tous les lots sur le canvas, dans l'ordre dans lequel les formes
+	 * ont été visitées.
+	 *
+	 * @param canvas le Graphics2D sur lequel dessiner les formes.
+	 */
+	public void draw(Graphics2D canvas) {
+		for(int i = 0; i < paths.size(); i++) {
+			canvas.setColor(colors.get(i));
+			canvas.draw(paths.get(i));
+		}
+	}
+
+	/**
+	 *
+	 * @return le nombre de lots, et donc d'appels à Graphics2D.draw, nécessaires
+	 * pour dessiner les formes visitées
+	 */
+	public int getBatchCount() { return paths.size(); }
+
+	/**
+	 * Supprime tous les lots.
+	 */
+	public void clear() {
+		colors.clear();
+		paths.clear();
+		batch = null;
+	}
+
+	/* Retourne le lot dans lequel ajouter une forme de la couleur entrée en
+	 * paramètre, en commençant un nouveau lot si la couleur change.
+	 */
+	private Path2D.Double batchFor(Color c) {
+		if(batch == null || !Objects.equals(colors.get(colors.size()-1), c)) {
+			batch = new Path2D.Double();
+			colors.add(c);
+			paths.add(batch);
+		}
+
+		return batch;
+	}
+
+	/* Retourne le chemin dans lequel ajouter une forme de la couleur entrée en
+	 * paramètre. Dans une instance, la forme est d'abord construite à part pour
+	 * être placée lors de l'appel à commit().
+	 */
+	private Path2D.Double pathFor(Color c) {
+		if(transform == null) return batchFor(c);
+
+		shape.reset();
+		shapeColor = c;
+		return shape;
+	}
+
+	// Ajoute aux lots la forme construite à part, une fois placée.
+	private void commit() {
+		if(transform != null) batchFor(shapeColor).append(shape.getPathIterator(transform), false);
+	}
+
+	/**
+	 *  Ajoute un cercle fait à la main aux lots.
+	 * @param circle le cercle à ajouter.
+	 */
+	public void visit(HanddrawnCircle circle) {
+		ellipse.setFrame(
+				circle.getCenterX()-circle.getRadius(),
+				circle.getCenterY()-circle.getRadius(),
+				circle.getWidth()*2, circle.getHeight()*2);
+		pathFor(circle.getColor()).append(ellipse, false);
+		commit();
+	}
+
+	/**
+	 *  Ajoute une ligne faite à la main aux lots.
+	 * @param line la ligne à ajouter.
+	 */
+	public void visit(HanddrawnLine line) {
+		Path2D.Double path = pathFor(line.getColor());
+		path.moveTo(line.getX0(), line.getY0());
+		path.quadTo(line.getX2(), line.getY2(), line.getX1(), line.getY1());
+		commit();
+	}
+
+	/**
+	 *  Ajoute un rectangle fait à la main aux lots.
+	 * @param rectangle le rectangle à ajouter.
+	 */
+	public void visit(HanddrawnRectangle rectangle) {
+		Path2D.Double path = pathFor(rectangle.getColor());
+		path.moveTo(rectangle.getX(0), rectangle.getY(0));
+
+		for(int i = 0; i < 4; i++)
+			path.quadTo(
+					rectangle.getMidX(i),
+					rectangle.getMidY(i),
+					rectangle.getX((i+1)%4),
+					rectangle.getY((i+1)%4));
+		commit();
+	}
+
+	/**
+	 *  Ajoute un cercle parfait aux lots.
+	 * @param circle le cercle à ajouter.
+	 */
+	public void visit(PerfectCircle circle) {
+		ellipse.setFrame(
+				circle.getCenterX()-circle.getRadius(),
+				circle.getCenterY()-circle.getRadius(),
+				circle.getRadius()*2, circle.getRadius()*2);
+		pathFor(circle.getColor()).append(ellipse, false);
+		commit();
+	}
+
+	/**
+	 *  Ajoute une ligne parfaite aux lots.
+	 * @param line la ligne à ajouter.
+	 */
+	public void visit(PerfectLine line) {
+		Path2D.Double path = pathFor(line.getColor());
+		path.moveTo(line.getX0(), line.getY0());
+		path.lineTo(line.getX1(), line.getY1());
+		commit();
+	}
+
+	/**
+	 *  Ajoute un rectangle parfait aux lots.
+	 * @param rectangle le rectangle à ajouter.
+	 */
+	public void visit(PerfectRectangle rectangle) {
+		Path2D.Double path = pathFor(rectangle.getColor());
+		path.moveTo(rectangle.getX0(), rectangle.getY0());
+		path.lineTo(rectangle.getX1(), rectangle.getY0());
+		path.lineTo(rectangle.getX1(), rectangle.getY1());
+		path.lineTo(rectangle.getX0(), rectangle.getY1());
+		path.closePath();
+		commit();
+	}
+
+	/**
+	 *  Ajoute aux lots les formes du symbole d'une instance, placées selon
+	 *  le placement de l'instance.
+	 * @param instance l'instance à ajouter.
+	 */
+	public void visit(ShapeInstance instance) {
+		AffineTransform saved = transform;
+
+		transform = instance.getTransform().toAffineTransform();
+		if(saved != null) transform.preConcatenate(saved);
+
+		instance.getSymbol().acceptVisitor(this);
+		transform = saved;
+	}
+
+}
@@ -3,6 +3,7 @@ package drawshop.shapes.visitors;
 import drawshop.shapes.*;
 
 import java.awt.*;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Line2D;
 import java.awt.geom.QuadCurve2D;
@@ -19,8 +20,23 @@ import java.awt.geom.Rectangle2D;
  *     <li>Le rectangle fait à la main</li>
  *     <li>Le cercle fait à la main</li>
  *     <li>La ligne faite à la main</li>
+ *     <li>L'instance d'un symbole</li>
  * </ul>
  *
+ * <p>Les formes se trouvant entièrement en dehors de la zone de clip du
+ * Graphics2D ne sont pas dessinées.</p>
+ *
+ * <p>Afin de ne pas générer de déchets lors du dessin d'un grand nombre de
+ * formes, le visitor réutilise les mêmes objets géométriques d'une forme à
+ * l'autre et ne change la couleur du Graphics2D que lorsque c'est nécessaire.
+ * Il ne doit donc pas être partagé entre plusieurs threads.</p>
+ *
+ * <p>Lorsque le dessin est affiché réduit, la taille d'un pixel dans le dessin
+ * peut être donnée au visitor : les formes plus petites que
+ * {@value #MIN_PROJECTED_SIZE} pixel ne sont alors pas dessinées, et les courbes
+ * dont l'écart avec leur corde est inférieur à un pixel sont dessinées comme
+ * des segments.</p>
+ *
  * @author Evan Lajusticia
  * @author Pauline Rugliano
  *
@@ -28,15 +44,99 @@ import java.awt.geom.Rectangle2D;
  */
 public class ShapeDrawingVisitor implements ShapeVisitor {
 
+	/**
+	 * La taille, en pixels, en dessous de laquelle une forme n'est pas dessinée
+	 * lorsque la taille d'un pixel est donnée au visitor.
+	 */
+	public static final double MIN_PROJECTED_SIZE = 1;
+
 	private Graphics2D canvas;
+	private Color color;
+
+	private double pixelSize;
+	private double minSize;
+
+	private boolean clipped;
+	private double clipMinX, clipMinY, clipMaxX, clipMaxY;
+
+	private final Ellipse2D.Double ellipse = new Ellipse2D.Double();
+	private final QuadCurve2D.Double curve = new QuadCurve2D.Double();
+	private final Line2D.Double line = new Line2D.Double();
+	private final Rectangle2D.Double rectangle = new Rectangle2D.Double();
 
 	/**
 	 * Instancie un ShapeDrawingVisitor avec le canvas entré en paramètre.
+	 * La zone de clip du canvas est récupérée à l'instanciation.
 	 *
 	 * @param canvas le Graphics2D sur lequel dessiner les formes.
 	 */
 	public ShapeDrawingVisitor(Graphics2D canvas) {
+		this(canvas, 0);
+	}
+
+	/**
+	 * Instancie un ShapeDrawingVisitor avec le canvas entré en paramètre, en
+	 * simplifiant les formes selon la taille d'un pixel dans le dessin.
+	 * Une taille nulle désactive la simplification.
+	 *
+	 * @param canvas le Graphics2D sur lequel dessiner les formes.
+	 * @param pixelSize la taille d'un pixel du canvas dans le dessin.
+	 */
+	public ShapeDrawingVisitor(Graphics2D canvas, double pixelSize) {
 		this.canvas = canvas;
+		this.color = canvas.getColor();
+		this.pixelSize = pixelSize;
+		this.minSize = pixelSize*MIN_PROJECTED_SIZE;
+
+		Rectangle2D clipBounds = canvas.getClipBounds();
+
+		// le trait déborde d'un pixel autour de la forme
+		if(clipBounds != null) {
+			double margin = Math.max(1, pixelSize);
+
+			this.clipped = true;
+			this.clipMinX = clipBounds.getMinX()-margin;
+			this.clipMinY = clipBounds.getMinY()-margin;
+			this.clipMaxX = clipBounds.getMaxX()+margin;
+			this.clipMaxY = clipBounds.getMaxY()+margin;
+		}
+	}
+
+	/* Indique si le rectangle entré en paramètre touche la zone de clip du canvas
+	 * et est assez grand pour être vu. Les rectangles d'épaisseur nulle, comme
+	 * ceux des lignes horizontales, sont acceptés.
+	 */
+	private boolean isVisible(double minX, double minY, double maxX, double maxY) {
+		if(maxX - minX < minSize && maxY - minY < minSize) return false;
+
+		return !clipped || (maxX >= clipMinX && minX <= clipMaxX && maxY >= clipMinY && minY <= clipMaxY);
+	}
+
+	/* Dessine la courbe de Bézier entrée en paramètre, ou sa corde si la courbe
+	 * s'en écarte de moins d'un pixel. Le point le plus éloigné de la corde est
+	 * atteint au milieu de la courbe, à la moitié de la distance entre le
+	 * point de contrôle et le milieu de la corde.
+	 */
+	private void drawCurve(double x0, double y0, double cx, double cy, double x1, double y1) {
+		double dx = cx - (x0 + x1)/2;
+		double dy = cy - (y0 + y1)/2;
+
+		if((dx*dx + dy*dy)/4 < pixelSize*pixelSize) {
+			line.setLine(x0, y0, x1, y1);
+			canvas.draw(line);
+			return;
+		}
+
+		curve.setCurve(x0, y0, cx, cy, x1, y1);
+		canvas.draw(curve);
+	}
+
+	// Ne change la couleur du canvas que si elle est différente de la couleur actuelle.
+	private void useColor(Color c) {
+		if(c == color || (c != null && c.equals(color))) return;
+
+		color = c;
+		canvas.setColor(c);
 	}
 
 	/**
@@ -44,21 +144,35 @@ public class ShapeDrawingVisitor implements ShapeVisitor {
 	 * @param circle le cercle à dessiner.
 	 */
 	public void visit(HanddrawnCircle circle) {
-		canvas.setColor(circle.getColor());
-		canvas.draw(
-				new Ellipse2D.Double(
-						circle.getCenterX()-circle.getRadius(),
-						circle.getCenterY()-circle.getRadius(),
-						circle.getWidth()*2, circle.getHeight()*2));
+		double x = circle.getCenterX()-circle.getRadius();
+		double y = circle.getCenterY()-circle.getRadius();
+		double w = circle.getWidth()*2;
+		double h = circle.getHeight()*2;
+
+		if(!isVisible(x, y, x+w, y+h)) return;
+
+		useColor(circle.getColor());
+		ellipse.setFrame(x, y, w, h);
+		canvas.draw(ellipse);
 	}
 
 	/**
 	 *  Dessine sur le canvas une ligne faite à la main.
+	 *  La courbe est contenue dans le triangle formé par ses points de contrôle,
+	 *  qui sert donc à vérifier si elle est visible.
 	 * @param line la ligne à dessiner.
 	 */
 	public void visit(HanddrawnLine line) {
-		canvas.setColor(line.getColor());
-		canvas.draw(new QuadCurve2D.Double(line.getX0(), line.getY0(), line.getX2(), line.getY2(), line.getX1(), line.getY1()));
+		double x0 = line.getX0(), y0 = line.getY0();
+		double x1 = line.getX1(), y1 = line.getY1();
+		double x2 = line.getX2(), y2 = line.getY2();
+
+		if(!isVisible(
+				Math.min(x0, Math.min(x1, x2)), Math.min(y0, Math.min(y1, y2)),
+				Math.max(x0, Math.max(x1, x2)), Math.max(y0, Math.max(y1, y2)))) return;
+
+		useColor(line.getColor());
+		drawCurve(x0, y0, x2, y2, x1, y1);
 	}
 
 	/**
@@ -66,17 +180,29 @@ public class ShapeDrawingVisitor implements ShapeVisitor {
 	 * @param rectangle le rectangle à dessiner.
 	 */
 	public void visit(HanddrawnRectangle rectangle) {
-		canvas.setColor(rectangle.getColor());
-		
-		for(int i = 0; i < 4; i++)
-			canvas.draw(
-					new QuadCurve2D.Double(
-							rectangle.getX(i), 
-							rectangle.getY(i), 
-							rectangle.getMidX(i), 
-							rectangle.getMidY(i), 
-							rectangle.getX((i+1)%4), 
-							rectangle.getY((i+1)%4)));
+		double minX = rectangle.getX(0), minY = rectangle.getY(0);
+		double maxX = minX, maxY = minY;
+
+		for(int i = 0; i < 4; i++) {
+			minX = Math.min(minX, Math.min(rectangle.getX(i), rectangle.getMidX(i)));
+			minY = Math.min(minY, Math.min(rectangle.getY(i), rectangle.getMidY(i)));
+			maxX = Math.max(maxX, Math.max(rectangle.getX(i), rectangle.getMidX(i)));
+			maxY = Math.max(maxY, Math.max(rectangle.getY(i), rectangle.getMidY(i)));
+		}
+
+		if(!isVisible(minX, minY, maxX, maxY)) return;
+
+		useColor(rectangle.getColor());
+
+		for(int i = 0; i < 4; i++) {
+			drawCurve(
+					rectangle.getX(i), 
+					rectangle.getY(i), 
+					rectangle.getMidX(i), 
+					rectangle.getMidY(i), 
+					rectangle.getX((i+1)%4), 
+					rectangle.getY((i+1)%4));
+		}
 	}
 
 	/**
@@ -84,12 +210,15 @@ public class ShapeDrawingVisitor implements ShapeVisitor {
 	 * @param circle le cercle à dessiner.
 	 */
 	public void visit(PerfectCircle circle) {
-		canvas.setColor(circle.getColor());
-		canvas.draw(
-				new Ellipse2D.Double(
-						circle.getCenterX()-circle.getRadius(),
-						circle.getCenterY()-circle.getRadius(),
-						circle.getRadius()*2, circle.getRadius()*2));
+		double x = circle.getCenterX()-circle.getRadius();
+		double y = circle.getCenterY()-circle.getRadius();
+		double d = circle.getRadius()*2;
+
+		if(!isVisible(x, y, x+d, y+d)) return;
+
+		useColor(circle.getColor());
+		ellipse.setFrame(x, y, d, d);
+		canvas.draw(ellipse);
 	}
 
 	/**
@@ -97,8 +226,14 @@ public class ShapeDrawingVisitor implements ShapeVisitor {
 	 * @param line la ligne à dessiner.
 	 */
 	public void visit(PerfectLine line) {
-		canvas.setColor(line.getColor());
-		canvas.draw(new Line2D.Double(line.getX0(), line.getY0(), line.getX1(), line.getY1()));
+		double x0 = line.getX0(), y0 = line.getY0();
+		double x1 = line.getX1(), y1 = line.getY1();
+
+		if(!isVisible(Math.min(x0, x1), Math.min(y0, y1), Math.max(x0, x1), Math.max(y0, y1))) return;
+
+		useColor(line.getColor());
+		this.line.setLine(x0, y0, x1, y1);
+		canvas.draw(this.line);
 	}
 
 	/**
@@ -106,13 +241,47 @@ public class ShapeDrawingVisitor implements ShapeVisitor {
 	 * @param rectangle le rectangle à dessiner.
 	 */
 	public void visit(PerfectRectangle rectangle) {
-		canvas.setColor(rectangle.getColor());
-		canvas.draw(
-				new Rectangle2D.Double(
-						rectangle.getX0(), 
-						rectangle.getY0(), 
-						rectangle.getX1()-rectangle.getX0(), 
-						rectangle.getY1()-rectangle.getY0()));
+		double x0 = rectangle.getX0(), y0 = rectangle.getY0();
+		double x1 = rectangle.getX1(), y1 = rectangle.getY1();
+
+		if(!isVisible(Math.min(x0, x1), Math.min(y0, y1), Math.max(x0, x1), Math.max(y0, y1))) return;
+
+		useColor(rectangle.getColor());
+		this.rectangle.setRect(x0, y0, x1-x0, y1-y0);
+		canvas.draw(this.rectangle);
+	}
+
+	/**
+	 *  Dessine sur le canvas l'instance d'un symbole. Les formes du symbole
+	 *  sont dessinées en plaçant le canvas selon le placement de l'instance.
+	 * @param instance l'instance à dessiner.
+	 */
+	public void visit(ShapeInstance instance) {
+		Rectangle2D bounds = instance.getBounds();
+
+		if(!isVisible(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY())) return;
+
+		ShapeTransform t = instance.getTransform();
+		AffineTransform saved = canvas.getTransform();
+		double minX = clipMinX, minY = clipMinY, maxX = clipMaxX, maxY = clipMaxY;
+
+		// la zone de clip est ramenée dans le repère du symbole
+		clipMinX = t.isFlippedX() ? t.getTranslateX() - maxX : minX - t.getTranslateX();
+		clipMaxX = t.isFlippedX() ? t.getTranslateX() - minX : maxX - t.getTranslateX();
+		clipMinY = t.isFlippedY() ? t.getTranslateY() - maxY : minY - t.getTranslateY();
+		clipMaxY = t.isFlippedY() ? t.getTranslateY() - minY : maxY - t.getTranslateY();
+
+		// le canvas et la zone de clip sont rétablis même si le dessin du symbole échoue
+		try {
+			canvas.transform(t.toAffineTransform());
+			instance.getSymbol().acceptVisitor(this);
+		} finally {
+			canvas.setTransform(saved);
+			clipMinX = minX;
+			clipMinY = minY;
+			clipMaxX = maxX;
+			clipMaxY = maxY;
+		}
 	}
 
 }
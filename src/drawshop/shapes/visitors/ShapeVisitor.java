@@ -14,6 +14,7 @@ import drawshop.shapes.*;
  *     <li>Le rectangle fait à la main</li>
  *     <li>Le cercle fait à la main</li>
  *     <li>La ligne faite à la main</li>
+ *     <li>L'instance d'un symbole</li>
  * </ul>
  *
  * @author Evan Lajusticia
@@ -30,5 +31,7 @@ public interface ShapeVisitor {
 	public void visit(PerfectCircle circle);
 	public void visit(PerfectLine line);
 	public void visit(PerfectRectangle rectangle);
+
+	public void visit(ShapeInstance instance);
 	
 }